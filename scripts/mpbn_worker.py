@@ -0,0 +1,56 @@
+#!/usr/bin/env python3
+"""Persistent mpbn attractor worker for drabme (attractor_worker_command config parameter).
+
+Reads models from the standard input and writes their minimal trapspaces to the standard
+output, with the line protocol of drabme's AttractorWorkerPool:
+
+    MODEL n         followed by n BoolNet equations ("A, ( B ) & ! ( C )")
+                    -> ATTRACTORS m, followed by m lines of 0/1/- (one per node, in equation order)
+                    -> ERROR message, if the model cannot be solved
+    PING            -> PONG
+    HELLO           -> HELLO mpbn_trapspaces (the attractor tool of the worker, checked by drabme)
+"""
+import sys
+
+import mpbn
+
+
+def read_model(equations_number):
+    nodes = []
+    equations = {}
+    for _ in range(equations_number):
+        target, function = sys.stdin.readline().split(",", 1)
+        nodes.append(target.strip())
+        equations[target.strip()] = function.strip()
+    return nodes, equations
+
+
+def main():
+    for line in sys.stdin:
+        request = line.split()
+        if not request:
+            continue
+
+        if request[0] == "PING":
+            print("PONG", flush=True)
+        elif request[0] == "HELLO":
+            print("HELLO mpbn_trapspaces", flush=True)
+        elif request[0] == "MODEL":
+            nodes, equations = read_model(int(request[1]))
+            try:
+                attractors = [
+                    "".join("-" if attractor[node] == "*" else str(attractor[node]) for node in nodes)
+                    for attractor in mpbn.MPBooleanNetwork(equations).attractors()
+                ]
+                print("ATTRACTORS %d" % len(attractors))
+                for attractor in attractors:
+                    print(attractor)
+            except Exception as e:
+                print("ERROR %s" % str(e).replace("\n", " "))
+            sys.stdout.flush()
+        else:
+            print("ERROR unknown request: %s" % line.strip(), flush=True)
+
+
+if __name__ == "__main__":
+    main()
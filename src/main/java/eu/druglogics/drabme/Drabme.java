@@ -5,8 +5,10 @@ import eu.druglogics.drabme.drug.DrugPanel;
 import eu.druglogics.drabme.drug.DrugResponseAnalyzer;
 import eu.druglogics.drabme.input.Config;
 import eu.druglogics.drabme.perturbation.ModelPredictions;
+import eu.druglogics.drabme.perturbation.ModelPredictionsWriter;
 import eu.druglogics.drabme.perturbation.Perturbation;
 import eu.druglogics.drabme.perturbation.PerturbationPanel;
+import eu.druglogics.drabme.perturbation.SequentialSampling;
 import eu.druglogics.gitsbe.input.ModelOutputs;
 import eu.druglogics.gitsbe.model.BooleanModel;
 import eu.druglogics.gitsbe.util.FileDeleter;
@@ -19,6 +21,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import static eu.druglogics.gitsbe.util.FileDeleter.cleanDirectory;
@@ -50,6 +53,7 @@ public class Drabme implements Runnable {
 	private String directoryModels;
 	private String directoryOutput;
 	private String directoryTmp;
+	private boolean resume;
 
 	private Logger logger;
 
@@ -57,6 +61,19 @@ public class Drabme implements Runnable {
 				  String filenamePerturbations, String filenameModelOutputs,
 				  String filenameConfig, String directoryModels,
 				  String directoryOutput, String directoryTmp) {
+		this(projectName, filenameDrugs, filenamePerturbations, filenameModelOutputs,
+			filenameConfig, directoryModels, directoryOutput, directoryTmp, false);
+	}
+
+	/**
+	 * @param resume if true, <i>directoryOutput</i> is the output directory of an
+	 *               interrupted run, whose finished models are not simulated again
+	 *               (see {@link eu.druglogics.drabme.perturbation.ResponseCheckpoint})
+	 */
+	public Drabme(String projectName, String filenameDrugs,
+				  String filenamePerturbations, String filenameModelOutputs,
+				  String filenameConfig, String directoryModels,
+				  String directoryOutput, String directoryTmp, boolean resume) {
 
 		// Set variables
 		this.projectName = projectName;
@@ -67,6 +84,7 @@ public class Drabme implements Runnable {
 		this.directoryModels = directoryModels;
 		this.directoryOutput = directoryOutput;
 		this.directoryTmp = directoryTmp;
+		this.resume = resume;
 	}
 
 	@Override
@@ -109,14 +127,33 @@ public class Drabme implements Runnable {
 		// Run simulations and compute Statistics
 		DrugResponseAnalyzer dra = new DrugResponseAnalyzer(perturbationPanel, booleanModels,
 			directoryTmp, logger, directoryLog);
+		if (!useHierarchicalScreening())
+			dra.enableCheckpoint(directoryOutput, directoryModels, resume);
+		dra.enableSnapshots(directoryOutput, projectName);
 		runDrugResponseAnalyzer(dra, directoryLog);
 
+		// Simulate the screened drug combinations of every next level
+		if (useHierarchicalScreening()) {
+			for (int size = 3; size <= Config.getInstance().getCombinationSize(); size++) {
+				PerturbationPanel nextLevel = screenCombinations(drugPanel, perturbationPanel, size);
+				if (nextLevel == null)
+					break;
+
+				perturbationPanel = nextLevel;
+				dra = new DrugResponseAnalyzer(perturbationPanel, booleanModels, directoryTmp, logger, directoryLog);
+				dra.enableSnapshots(directoryOutput, projectName);
+				runDrugResponseAnalyzer(dra, directoryLog);
+			}
+		}
+
 		// Generate Summary Reports for Drabme
 		generateModelWiseResponses(perturbationPanel);
 		generateModelWiseSynergies(perturbationPanel, booleanModels);
 		generateEnsembleWiseResponses(perturbationPanel);
 		generateEnsembleWiseSynergies(perturbationPanel);
 		generateModelPredictions(dra.modelPredictionsList, perturbationPanel);
+		if (dra.getSequentialSampling() != null)
+			generateSamplingSummary(perturbationPanel, dra.getSequentialSampling());
 
 		// Clean tmp directory
 		cleanDirectory(logger);
@@ -147,6 +184,9 @@ public class Drabme implements Runnable {
     }
 
 	private void createOutputDirectory() {
+		if (isResumedDirectory(directoryOutput))
+			return;
+
 		try {
 			createDirectory(directoryOutput);
 		} catch (Exception e) {
@@ -155,6 +195,9 @@ public class Drabme implements Runnable {
 	}
 
 	private void createLogDirectory(String logDirectory) {
+		if (isResumedDirectory(logDirectory))
+			return;
+
 		try {
 			createDirectory(logDirectory);
 		} catch (Exception e) {
@@ -163,6 +206,9 @@ public class Drabme implements Runnable {
 	}
 
 	private void createTmpDirectory() {
+		if (isResumedDirectory(directoryTmp))
+			return;
+
 		try {
 			createDirectory(directoryTmp, logger);
 
@@ -177,6 +223,14 @@ public class Drabme implements Runnable {
 		}
 	}
 
+	/**
+	 * The directories of a resumed run are kept as they are (with the checkpoint and
+	 * the logs of the finished models).
+	 */
+	private boolean isResumedDirectory(String directory) {
+		return resume && new File(directory).isDirectory();
+	}
+
     /**
 	 * Each model's predicted synergies, non-synergies and NA results for each drug
 	 * combination tested
@@ -189,41 +243,15 @@ public class Drabme implements Runnable {
 		String filename = new File(directoryOutput, projectName + "_model_predictions.tab")
 				.getAbsolutePath();
 
-		ArrayList<String> drugCombinationsList = getDrugCombinationsList(perturbationPanel);
-
-		StringBuilder headerString = new StringBuilder("ModelName");
-		for (String drugCombination : drugCombinationsList) {
-			String str = "\t" + drugCombination;
-			headerString.append(str);
-		}
-
 		logger.outputHeader(1, "Model Predictions");
-		logger.outputStringMessageToFile(filename, headerString.toString());
-
-		for (ModelPredictions modelPredictions : modelPredictionsList) {
-			String modelPredictionsString =
-					modelPredictions.getModelPredictionsVerbose(drugCombinationsList);
-			logger.outputStringMessageToFile(filename, modelPredictionsString);
-		}
-	}
 
-	/**
-	 * Returns a list of Strings that represent the drug combinations (not the
-	 * single drugs)
-	 * 
-	 * @param perturbationPanel
-	 * @return
-	 */
-	private ArrayList<String> getDrugCombinationsList(PerturbationPanel perturbationPanel) {
-		ArrayList<String> drugCombinationsList = new ArrayList<>();
-		for (int i = 0; i < perturbationPanel.getNumberOfPerturbations(); i++) {
-			Perturbation perturbation = perturbationPanel.getPerturbations()[i];
-
-			if (perturbation.getDrugs().length >= 2) {
-				drugCombinationsList.add(perturbation.getName());
+		try (ModelPredictionsWriter writer = new ModelPredictionsWriter(filename, perturbationPanel)) {
+			for (ModelPredictions modelPredictions : modelPredictionsList) {
+				writer.write(modelPredictions);
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		return drugCombinationsList;
 	}
 
 	private void activateFileDeleter() {
@@ -365,13 +393,108 @@ public class Drabme implements Runnable {
 		}
 	}
 
+	/**
+	 * How many models back the estimates of every perturbation when the models are
+	 * sampled sequentially, with the half-width of the 95% confidence intervals of the
+	 * mean normalized response and of the synergy fraction (NA for a single drug)
+	 *
+	 * @param perturbationPanel
+	 * @param sequentialSampling
+	 */
+	private void generateSamplingSummary(PerturbationPanel perturbationPanel,
+										 SequentialSampling sequentialSampling) {
+		String filename = new File(directoryOutput, projectName + "_sampling_summary.tab")
+			.getAbsolutePath();
+
+		logger.outputHeader(1, "Sequential sampling summary");
+		logger.outputStringMessageToFile(filename, "Perturbation" + "\t" + "Responses" + "\t"
+			+ "Response interval" + "\t" + "Synergy predictions" + "\t" + "Synergy fraction" + "\t"
+			+ "Synergy fraction interval" + "\t" + "Confident");
+
+		for (int i = 0; i < perturbationPanel.getNumberOfPerturbations(); i++) {
+			Perturbation perturbation = perturbationPanel.getPerturbations()[i];
+
+			String synergies = "NA\tNA\tNA";
+			if (perturbation.getDrugs().length >= 2) {
+				synergies = sequentialSampling.getSynergyPredictions(i) + "\t"
+					+ sequentialSampling.getSynergyFraction(i) + "\t"
+					+ sequentialSampling.getSynergyFractionInterval(i);
+			}
+
+			logger.outputStringMessageToFile(filename, perturbation.getName() + "\t"
+				+ sequentialSampling.getResponses(i) + "\t"
+				+ sequentialSampling.getResponseInterval(i) + "\t"
+				+ synergies + "\t"
+				+ sequentialSampling.isConfident(i));
+		}
+	}
+
+	/**
+	 * The hierarchical screening is only used for the drug combinations of the drug panel
+	 * (not with a perturbations file). It is rejected when the config file is loaded
+	 * together with sequential sampling or when resuming a run.
+	 */
+	private boolean useHierarchicalScreening() {
+		if (!Config.getInstance().useHierarchicalScreening())
+			return false;
+
+		return filenamePerturbations == null || filenamePerturbations.trim().isEmpty();
+	}
+
+	/**
+	 * Hierarchical screening: the drug combinations with the given number of drugs are
+	 * screened with the responses of the current level (see
+	 * {@link PerturbationPanel#screenCombinations(Drug[][], float, List)}) and the
+	 * ones left out are written to the <i>screened_out_combinations</i> file.
+	 *
+	 * @param drugPanel
+	 * @param perturbationPanel the current level, with calculated statistics
+	 * @param size
+	 * @return the next level, or <code>null</code> if no drug combination is selected
+	 */
+	private PerturbationPanel screenCombinations(DrugPanel drugPanel, PerturbationPanel perturbationPanel,
+												 int size) {
+		logger.outputHeader(1, "Hierarchical screening: combinations of " + size + " drugs");
+
+		ArrayList<Drug[]> screenedOut = new ArrayList<>();
+		Drug[][] combinations = perturbationPanel.screenCombinations(drugPanel.getDrugCombinations(size, size),
+			Config.getInstance().getScreeningThreshold(), screenedOut);
+
+		File file = new File(directoryOutput, projectName + "_screened_out_combinations.tab");
+		String filename = file.getAbsolutePath();
+		if (!file.exists())
+			logger.outputStringMessageToFile(filename, "Perturbation" + "\t" + "Drugs");
+		for (Drug[] combination : screenedOut) {
+			logger.outputStringMessageToFile(filename,
+				PerturbationPanel.getCombinationName(combination) + "\t" + size);
+		}
+
+		logger.outputStringMessage(1, "Selected " + combinations.length + " out of "
+			+ (combinations.length + screenedOut.size()) + " drug combinations of " + size
+			+ " drugs (screening threshold: " + Config.getInstance().getScreeningThreshold() + ")");
+		if (combinations.length == 0)
+			return null;
+
+		try {
+			return new PerturbationPanel(perturbationPanel, combinations, logger);
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+			abort();
+			return null;
+		}
+	}
+
 	private PerturbationPanel loadPerturbationPanel(DrugPanel drugPanel) {
 		logger.outputHeader(2, "Defining perturbations");
 
 		Drug[][] drugPerturbations = null;
 
 		if (filenamePerturbations == null || filenamePerturbations.trim().isEmpty()) {
-			drugPerturbations = drugPanel.getDrugCombinations(Config.getInstance().getCombinationSize());
+			// the first level of a hierarchical screening has the single drugs and the pairs
+			int combinationSize = Config.getInstance().getCombinationSize();
+			if (useHierarchicalScreening())
+				combinationSize = Math.min(combinationSize, 2);
+			drugPerturbations = drugPanel.getDrugCombinations(combinationSize);
 		} else {
 			try {
 				drugPerturbations = drugPanel.loadCombinationsFromFile(filenamePerturbations);
@@ -449,6 +572,12 @@ public class Drabme implements Runnable {
 			abort();
 		}
 
+		// There is no checkpoint of the later levels of a hierarchical screening
+		if (resume && Config.getInstance().useHierarchicalScreening()) {
+			System.out.println("Resuming a run is not supported with hierarchical screening");
+			abort();
+		}
+
 		// Now that we have the verbosity from the config, we can re-set it in the logger
 		logger.setVerbosity(Config.getInstance().getVerbosity());
 		logger.outputHeader(1, "Config options");
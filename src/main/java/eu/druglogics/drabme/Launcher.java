@@ -41,10 +41,17 @@ public class Launcher {
 
 			directoryModels = makeDirectoryPathAbsolute(directoryModels);
 
-			DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
-			String directoryOutput = new File(directoryInput,
-					projectName + "_" + dateFormat.format(Calendar.getInstance().getTime()))
-					.getAbsolutePath();
+			// A resumed run writes to the output directory of the interrupted run
+			boolean resume = (arguments.getDirectoryResume() != null);
+			String directoryOutput;
+			if (resume) {
+				directoryOutput = makeDirectoryPathAbsolute(arguments.getDirectoryResume());
+			} else {
+				DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
+				directoryOutput = new File(directoryInput,
+						projectName + "_" + dateFormat.format(Calendar.getInstance().getTime()))
+						.getAbsolutePath();
+			}
 			String directoryTmp = new File(directoryOutput, "drabme_tmp").getAbsolutePath();
 
 			Thread thread = new Thread(new Drabme(
@@ -55,7 +62,8 @@ public class Launcher {
 					filenameConfig,
 					directoryModels,
 					directoryOutput,
-					directoryTmp
+					directoryTmp,
+					resume
 			));
 			thread.start();
 			try {
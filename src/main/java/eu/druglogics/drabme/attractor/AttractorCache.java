@@ -0,0 +1,160 @@
+package eu.druglogics.drabme.attractor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent cache of attractors shared by all the (perturbed) models of a drabme
+ * run. The key of a model is a hash of its attractor tool and its equations in BoolNet
+ * format (see {@link #getKey(String, List)}), so models from different Gitsbe runs
+ * that become identical after their drug targets are fixed share a single entry.
+ *
+ * <br/><br/>
+ * The cache has single-flight semantics: when several threads ask for the same key,
+ * only the first one computes the attractors and the others wait for its result.
+ * The least recently used entries are evicted when the cache grows beyond its
+ * maximum size. Failed computations are not cached.
+ */
+public class AttractorCache {
+
+	private final int maxSize;
+	private final LinkedHashMap<String, FutureTask<ArrayList<String>>> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize the maximum number of models whose attractors are kept
+	 */
+	public AttractorCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, FutureTask<ArrayList<String>>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FutureTask<ArrayList<String>>> eldest) {
+				if (size() > AttractorCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param attractorTool
+	 * @param boolNet the model equations in BoolNet format, in equation order (as
+	 *                the attractor strings depend on it)
+	 * @return a canonical key (SHA-256 hex digest) for the attractors of the model
+	 */
+	public static String getKey(String attractorTool, List<String> boolNet) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform implementation supports SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		digest.update(attractorTool.getBytes(StandardCharsets.UTF_8));
+		for (String line : boolNet) {
+			digest.update((byte) '\n');
+			digest.update(line.getBytes(StandardCharsets.UTF_8));
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached attractors for the given key, computing them first if they
+	 * are neither cached nor being computed by another thread.
+	 *
+	 * @param key see {@link #getKey(String, List)}
+	 * @param computation calculates the attractors of the model
+	 * @return a copy of the attractors
+	 * @throws Exception the exception thrown by the computation
+	 */
+	public ArrayList<String> getAttractors(String key, Callable<ArrayList<String>> computation)
+		throws Exception {
+		FutureTask<ArrayList<String>> task;
+		boolean computeHere = false;
+
+		synchronized (entries) {
+			task = entries.get(key);
+			if (task == null) {
+				task = new FutureTask<>(computation);
+				entries.put(key, task);
+				computeHere = true;
+			}
+		}
+
+		if (computeHere) {
+			misses.incrementAndGet();
+			task.run();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			return new ArrayList<>(task.get());
+		} catch (ExecutionException e) {
+			synchronized (entries) {
+				entries.remove(key, task);
+			}
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return true if the attractors of the model are cached or being calculated (does
+	 * not count as a lookup)
+	 */
+	public boolean contains(String key) {
+		synchronized (entries) {
+			return entries.containsKey(key);
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return a one line summary of the cache usage, e.g. for the main log
+	 */
+	public String getStatistics() {
+		long lookups = getHits() + getMisses();
+		float hitPercentage = (lookups == 0) ? 0 : (100f * getHits() / lookups);
+		return "Attractor cache: " + getHits() + " hits, " + getMisses() + " misses ("
+			+ String.format("%.1f", hitPercentage) + "% hits), " + getEvictions() + " evictions";
+	}
+}
@@ -0,0 +1,345 @@
+package eu.druglogics.drabme.attractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent store of attractors that can be reused across drabme runs, e.g. when
+ * only the drug panel, the model outputs or the synergy method change. Attractors are
+ * stored by the key of {@link AttractorCache#getKey(String, java.util.List)}, which
+ * covers both the attractor tool and the equations of the perturbed model.
+ *
+ * <br/><br/>
+ * All records are appended to a single binary file in the store directory:
+ * <pre>
+ * header: "DRABMEAS" (8 bytes), format version (int)
+ * record: key (32 bytes), number of attractors (int), attractor length (int),
+ *         attractors packed with 2 bits per node ('0' = 0, '1' = 1, '-' = 2)
+ * </pre>
+ * When the store is opened, the existing file is memory-mapped and scanned once to
+ * index the offsets of its records, which are decoded from the mapping on lookup.
+ * Records added by this run are indexed by their offset as well and read back from
+ * the file. A record that was not written completely (e.g. an interrupted run) is
+ * discarded. The file is locked while the store is open, so that two runs cannot use
+ * (and append to) the same store at the same time.
+ */
+public class AttractorStore {
+
+	public static final String FILENAME = "attractors.store";
+
+	private static final byte[] MAGIC = "DRABMEAS".getBytes();
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+	private static final int KEY_SIZE = 32;
+
+	private final File file;
+	private final FileChannel channel;
+	private final MappedByteBuffer mappedRecords;
+	private final ConcurrentHashMap<String, Long> recordOffsets;
+	private final AtomicInteger addedRecords = new AtomicInteger();
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong found = new AtomicLong();
+
+	/**
+	 * Opens the store in the given directory (creating the directory and the store
+	 * file if they do not exist).
+	 *
+	 * @param directory
+	 * @throws IOException if the store file cannot be read or written, it is not an
+	 * attractor store file or it is used by another run
+	 */
+	public AttractorStore(String directory) throws IOException {
+		File storeDirectory = new File(directory);
+		if (!storeDirectory.isDirectory() && !storeDirectory.mkdirs())
+			throw new IOException("Cannot create attractor store directory `" + directory + "`");
+
+		this.file = new File(storeDirectory, FILENAME);
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.recordOffsets = new ConcurrentHashMap<>();
+		lock();
+
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException("Attractor store file `" + file.getAbsolutePath() + "` is too large");
+		}
+
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.put(MAGIC).putInt(VERSION).flip();
+			writeFully(header, 0);
+			size = HEADER_SIZE;
+		}
+
+		this.mappedRecords = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		checkHeader();
+
+		long validSize = indexRecords();
+		if (validSize < size) {
+			// drop an incomplete last record so that new records are appended after valid data
+			channel.truncate(validSize);
+		}
+		channel.position(validSize);
+	}
+
+	/**
+	 * Locks the whole store file until the store is closed, or fails right away if it is
+	 * already locked (by another process or in this one).
+	 */
+	private void lock() throws IOException {
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+
+		if (lock == null) {
+			channel.close();
+			throw new IOException("Attractor store file `" + file.getAbsolutePath()
+				+ "` is used by another run");
+		}
+	}
+
+	private void checkHeader() throws IOException {
+		boolean valid = mappedRecords.capacity() >= HEADER_SIZE;
+		for (int i = 0; valid && i < MAGIC.length; i++) {
+			valid = (mappedRecords.get(i) == MAGIC[i]);
+		}
+		if (!valid || mappedRecords.getInt(MAGIC.length) != VERSION) {
+			channel.close();
+			throw new IOException("File `" + file.getAbsolutePath() + "` is not an attractor store "
+				+ "(version " + VERSION + ")");
+		}
+	}
+
+	/**
+	 * @return the size of the file up to the end of the last complete record
+	 */
+	private long indexRecords() {
+		int offset = HEADER_SIZE;
+		int capacity = mappedRecords.capacity();
+
+		while (offset + KEY_SIZE + 2 * Integer.BYTES <= capacity) {
+			int count = mappedRecords.getInt(offset + KEY_SIZE);
+			int length = mappedRecords.getInt(offset + KEY_SIZE + Integer.BYTES);
+			if (count < 0 || length < 0)
+				break;
+
+			long end = offset + KEY_SIZE + 2L * Integer.BYTES + packedSize(count, length);
+			if (end > capacity)
+				break;
+
+			byte[] key = new byte[KEY_SIZE];
+			for (int i = 0; i < KEY_SIZE; i++) {
+				key[i] = mappedRecords.get(offset + i);
+			}
+			recordOffsets.put(toHex(key), (long) offset);
+			offset = (int) end;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * @param key see {@link AttractorCache#getKey(String, java.util.List)}
+	 * @return the stored attractors or <code>null</code> if the store has no record
+	 * for the given key
+	 */
+	public ArrayList<String> getAttractors(String key) {
+		lookups.incrementAndGet();
+
+		Long offset = recordOffsets.get(key);
+		if (offset == null)
+			return null;
+
+		ArrayList<String> attractors;
+		try {
+			attractors = (offset < mappedRecords.capacity())
+				? decode(mappedRecords, offset.intValue())
+				: decode(readRecord(offset), 0);
+		} catch (IOException e) {
+			// a record that cannot be read is as good as a missing one
+			return null;
+		}
+
+		found.incrementAndGet();
+		return attractors;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the attractors of the model are stored (does not count as a lookup)
+	 */
+	public boolean contains(String key) {
+		return recordOffsets.containsKey(key);
+	}
+
+	/**
+	 * Appends the attractors of a model to the store file (unless the key is already
+	 * stored).
+	 *
+	 * @param key see {@link AttractorCache#getKey(String, java.util.List)}
+	 * @param attractors attractor strings of equal length
+	 * @throws IOException
+	 */
+	public synchronized void addAttractors(String key, ArrayList<String> attractors) throws IOException {
+		if (recordOffsets.containsKey(key))
+			return;
+
+		int length = attractors.isEmpty() ? 0 : attractors.get(0).length();
+		ByteBuffer record = ByteBuffer.allocate(
+			KEY_SIZE + 2 * Integer.BYTES + (int) packedSize(attractors.size(), length));
+		record.put(fromHex(key)).putInt(attractors.size()).putInt(length);
+
+		int bit = 0;
+		byte current = 0;
+		for (String attractor : attractors) {
+			if (attractor.length() != length)
+				throw new IOException("Attractors of different lengths cannot be stored: " + attractors);
+			for (int i = 0; i < length; i++) {
+				current |= encode(attractor.charAt(i)) << bit;
+				bit += 2;
+				if (bit == 8) {
+					record.put(current);
+					current = 0;
+					bit = 0;
+				}
+			}
+		}
+		if (bit > 0)
+			record.put(current);
+		record.flip();
+
+		long offset = channel.position();
+		writeFully(record, offset);
+		recordOffsets.put(key, offset);
+		addedRecords.incrementAndGet();
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		channel.position(position);
+	}
+
+	/**
+	 * @return a record added by this run, read from the store file
+	 */
+	private ByteBuffer readRecord(long offset) throws IOException {
+		ByteBuffer sizes = ByteBuffer.allocate(2 * Integer.BYTES);
+		readFully(sizes, offset + KEY_SIZE);
+		int count = sizes.getInt(0);
+		int length = sizes.getInt(Integer.BYTES);
+
+		ByteBuffer record = ByteBuffer.allocate(KEY_SIZE + 2 * Integer.BYTES + (int) packedSize(count, length));
+		readFully(record, offset);
+		return record;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0)
+				throw new IOException("Unexpected end of attractor store file `" + file.getAbsolutePath() + "`");
+		}
+	}
+
+	private static ArrayList<String> decode(ByteBuffer records, int offset) {
+		int count = records.getInt(offset + KEY_SIZE);
+		int length = records.getInt(offset + KEY_SIZE + Integer.BYTES);
+		int dataOffset = offset + KEY_SIZE + 2 * Integer.BYTES;
+
+		ArrayList<String> attractors = new ArrayList<>(count);
+		long position = 0;
+		for (int a = 0; a < count; a++) {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++, position++) {
+				int value = (records.get(dataOffset + (int) (position >> 2)) >> ((position & 3) * 2)) & 3;
+				chars[i] = (value == 2) ? '-' : (char) ('0' + value);
+			}
+			attractors.add(new String(chars));
+		}
+		return attractors;
+	}
+
+	private static int encode(char state) throws IOException {
+		switch (state) {
+			case '0':
+				return 0;
+			case '1':
+				return 1;
+			case '-':
+				return 2;
+			default:
+				throw new IOException("Attractor state `" + state + "` cannot be stored");
+		}
+	}
+
+	private static long packedSize(int count, int length) {
+		return ((long) count * length + 3) / 4;
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static byte[] fromHex(String hex) throws IOException {
+		if (hex.length() != 2 * KEY_SIZE)
+			throw new IOException("Key `" + hex + "` is not a SHA-256 hex digest");
+
+		byte[] bytes = new byte[KEY_SIZE];
+		for (int i = 0; i < KEY_SIZE; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the number of models whose attractors are stored
+	 */
+	public int size() {
+		return recordOffsets.size();
+	}
+
+	public String getFilename() {
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * @return a one line summary of the store usage, e.g. for the main log
+	 */
+	public String getStatistics() {
+		return "Attractor store: " + found.get() + " of " + lookups.get() + " lookups found, "
+			+ addedRecords.get() + " models added (" + size() + " models in " + getFilename() + ")";
+	}
+
+	/**
+	 * Forces the added records to the storage device and closes the store file (which
+	 * releases its lock)
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			channel.force(true);
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package eu.druglogics.drabme.attractor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent attractor tool process (see {@link AttractorWorkerPool} for the protocol).
+ * The lines of the standard output of the process are read by a separate thread, so
+ * that a crashed or hanging process is detected instead of blocking the caller forever.
+ * Not thread-safe: a worker serves one request at a time.
+ */
+class AttractorWorker {
+
+	private static final String END_OF_OUTPUT = new String("END_OF_OUTPUT");
+
+	private final Process process;
+	private final BufferedWriter input;
+	private final BlockingQueue<String> outputLines = new LinkedBlockingQueue<>();
+	private long lastUsed;
+	private String lastError;
+
+	/**
+	 * Starts the worker process.
+	 *
+	 * @param command the command and its arguments
+	 * @throws IOException if the process cannot be started
+	 */
+	AttractorWorker(List<String> command) throws IOException {
+		process = new ProcessBuilder(command)
+			.redirectError(ProcessBuilder.Redirect.INHERIT)
+			.start();
+		input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+		Thread outputReader = new Thread(this::readOutput, "drabme-attractor-worker-output");
+		outputReader.setDaemon(true);
+		outputReader.start();
+
+		lastUsed = System.currentTimeMillis();
+	}
+
+	private void readOutput() {
+		try (BufferedReader output = new BufferedReader(
+			new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = output.readLine()) != null) {
+				outputLines.add(line);
+			}
+		} catch (IOException e) {
+			// the process is gone: signalled below
+		} finally {
+			outputLines.add(END_OF_OUTPUT);
+		}
+	}
+
+	/**
+	 * @param boolNet the model equations in BoolNet format
+	 * @return the attractors of the model (one character per node, in equation order)
+	 * @throws IOException if the worker crashed or did not follow the protocol
+	 * @throws Exception if the worker reported an error for the model
+	 */
+	ArrayList<String> calculateAttractors(List<String> boolNet) throws Exception {
+		send(getRequest(boolNet));
+
+		ArrayList<String> attractors = readAttractors(boolNet.size());
+		if (attractors == null)
+			throw new Exception("Attractor worker failed: " + lastError);
+		return attractors;
+	}
+
+	/**
+	 * Sends all the models at once and then reads their attractors, so that the worker
+	 * does not wait for drabme between the models.
+	 *
+	 * @param boolNets the equations of the models in BoolNet format
+	 * @param results the attractors of every model are added here, in model order
+	 *                (<code>null</code> for a model the worker reported an error for)
+	 * @throws IOException if the worker crashed or did not follow the protocol (the
+	 * results of the models answered so far are kept)
+	 */
+	void calculateAttractors(List<? extends List<String>> boolNets, List<ArrayList<String>> results)
+		throws IOException {
+		StringBuilder requests = new StringBuilder();
+		for (List<String> boolNet : boolNets) {
+			requests.append(getRequest(boolNet));
+		}
+		send(requests.toString());
+
+		for (List<String> boolNet : boolNets) {
+			results.add(readAttractors(boolNet.size()));
+		}
+	}
+
+	private String getRequest(List<String> boolNet) {
+		StringBuilder request = new StringBuilder("MODEL ").append(boolNet.size()).append('\n');
+		for (String equation : boolNet) {
+			request.append(equation).append('\n');
+		}
+		return request.toString();
+	}
+
+	/**
+	 * @param nodesNumber
+	 * @return the attractors or <code>null</code> if the worker reported an error
+	 * (saved in {@link #lastError})
+	 */
+	private ArrayList<String> readAttractors(int nodesNumber) throws IOException {
+		String header = readLine(0);
+		if (header.startsWith("ERROR")) {
+			lastError = header.substring("ERROR".length()).trim();
+			return null;
+		}
+		if (!header.startsWith("ATTRACTORS "))
+			throw new IOException("Unexpected attractor worker response: " + header);
+
+		int attractorsNumber;
+		try {
+			attractorsNumber = Integer.parseInt(header.substring("ATTRACTORS ".length()).trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Unexpected attractor worker response: " + header);
+		}
+
+		ArrayList<String> attractors = new ArrayList<>();
+		for (int index = 0; index < attractorsNumber; index++) {
+			String attractor = readLine(0);
+			if (attractor.length() != nodesNumber)
+				throw new IOException("Attractor of wrong size from attractor worker: " + attractor);
+			attractors.add(attractor);
+		}
+
+		lastUsed = System.currentTimeMillis();
+		return attractors;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 * @return true if the worker answered the health check in time
+	 */
+	boolean ping(long timeoutMillis) {
+		try {
+			send("PING\n");
+			boolean healthy = readLine(timeoutMillis).equals("PONG");
+			lastUsed = System.currentTimeMillis();
+			return healthy;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param timeoutMillis
+	 * @return the attractor tool of the worker, or <code>null</code> if the worker did not
+	 * answer in time or did not follow the protocol
+	 */
+	String hello(long timeoutMillis) {
+		try {
+			send("HELLO\n");
+			String answer = readLine(timeoutMillis);
+			lastUsed = System.currentTimeMillis();
+			return answer.startsWith("HELLO ") ? answer.substring("HELLO ".length()).trim() : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	boolean isAlive() {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	void close() {
+		try {
+			input.close();
+		} catch (IOException e) {
+			// the process is stopped anyway
+		}
+		process.destroy();
+	}
+
+	private void send(String message) throws IOException {
+		input.write(message);
+		input.flush();
+	}
+
+	/**
+	 * @param timeoutMillis 0 to wait until the worker answers or exits
+	 */
+	private String readLine(long timeoutMillis) throws IOException {
+		String line;
+		try {
+			line = (timeoutMillis > 0)
+				? outputLines.poll(timeoutMillis, TimeUnit.MILLISECONDS)
+				: outputLines.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the attractor worker");
+		}
+
+		if (line == null)
+			throw new IOException("Attractor worker did not answer in " + timeoutMillis + " ms");
+		if (line == END_OF_OUTPUT) {
+			outputLines.add(END_OF_OUTPUT);
+			throw new IOException("Attractor worker exited");
+		}
+		return line;
+	}
+}
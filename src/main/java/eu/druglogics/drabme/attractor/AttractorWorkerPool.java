@@ -0,0 +1,213 @@
+package eu.druglogics.drabme.attractor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of persistent attractor tool processes (workers), so that the start-up cost of
+ * an external tool (e.g. the Python interpreter of mpbn or Macaulay2 of BNReduction) is
+ * paid once per worker instead of once per perturbed model. The workers live until the
+ * pool is {@link #close() closed}.
+ *
+ * <br/><br/>
+ * A worker reads requests from its standard input and writes the answers to its standard
+ * output, one item per line:
+ * <ul>
+ *     <li><code>MODEL n</code> followed by the n equations of a model in BoolNet format
+ *     (e.g. <code>A, ( B ) &amp; ! ( C )</code>) is answered with <code>ATTRACTORS m</code>
+ *     followed by the m attractors, each one as a line of 0, 1 or - per node in equation
+ *     order, or with <code>ERROR message</code> if the model cannot be solved.</li>
+ *     <li><code>PING</code> is answered with <code>PONG</code> (health check).</li>
+ *     <li><code>HELLO</code> is answered with <code>HELLO tool</code>, the attractor tool
+ *     whose attractors the worker calculates (e.g. <code>mpbn_trapspaces</code>). Every
+ *     worker is asked when it starts and must calculate the attractors of the attractor
+ *     tool of the pool, so that a worker of another tool is not used by mistake.</li>
+ * </ul>
+ * A worker that has been idle for a while is health checked before it is used and a worker
+ * that crashed or failed the health check is restarted.
+ */
+public class AttractorWorkerPool {
+
+	static final long HEALTH_CHECK_IDLE_MILLIS = 30000;
+	static final long HEALTH_CHECK_TIMEOUT_MILLIS = 10000;
+
+	private final List<String> command;
+	private final String attractorTool;
+	private final int size;
+	private final BlockingQueue<AttractorWorker> idleWorkers;
+	private final ArrayList<AttractorWorker> workers = new ArrayList<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger batches = new AtomicInteger();
+	private final AtomicInteger restarts = new AtomicInteger();
+	private boolean closed = false;
+
+	/**
+	 * Starts the workers and checks that they answer for the given attractor tool.
+	 *
+	 * @param command the command (and its arguments) that starts a worker
+	 * @param attractorTool the attractor tool whose attractors the workers calculate
+	 * @param size the number of workers
+	 * @throws IOException if a worker cannot be started, does not answer or calculates
+	 * the attractors of another tool
+	 */
+	public AttractorWorkerPool(List<String> command, String attractorTool, int size) throws IOException {
+		this.command = new ArrayList<>(command);
+		this.attractorTool = attractorTool;
+		this.size = size;
+		this.idleWorkers = new LinkedBlockingQueue<>();
+
+		try {
+			for (int index = 0; index < size; index++) {
+				idleWorkers.add(startWorker());
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends the model to an idle worker (waiting for one if all are busy). If the worker
+	 * crashes, it is restarted and the model is sent once more. If the calling thread is
+	 * interrupted (e.g. the request timed out), the worker is restarted and the request
+	 * is given up.
+	 *
+	 * @param boolNet the model equations in BoolNet format
+	 * @return the attractors of the model
+	 * @throws Exception if the model cannot be solved
+	 */
+	public ArrayList<String> calculateAttractors(List<String> boolNet) throws Exception {
+		requests.incrementAndGet();
+		AttractorWorker worker = borrowWorker();
+		try {
+			try {
+				return worker.calculateAttractors(boolNet);
+			} catch (IOException e) {
+				// also stops a worker that hangs on a timed out (interrupted) request
+				worker = restartWorker(worker);
+				if (Thread.currentThread().isInterrupted())
+					throw new InterruptedException("Attractor worker request interrupted");
+				return worker.calculateAttractors(boolNet);
+			}
+		} finally {
+			returnWorker(worker);
+		}
+	}
+
+	/**
+	 * Batch version of {@link #calculateAttractors(List)}: all the models are sent to one
+	 * worker in a single request. If the worker crashes, it is restarted and the models
+	 * without attractors are left to the caller (e.g. to be sent one by one).
+	 *
+	 * @param boolNets the equations of the models in BoolNet format
+	 * @return the attractors of every model, in model order (<code>null</code> for the
+	 * models that could not be solved)
+	 * @throws Exception if no worker can be (re)started
+	 */
+	public ArrayList<ArrayList<String>> calculateAttractors(Collection<? extends List<String>> boolNets)
+		throws Exception {
+		requests.addAndGet(boolNets.size());
+		batches.incrementAndGet();
+		ArrayList<ArrayList<String>> results = new ArrayList<>();
+
+		AttractorWorker worker = borrowWorker();
+		try {
+			worker.calculateAttractors(new ArrayList<>(boolNets), results);
+		} catch (IOException e) {
+			worker = restartWorker(worker);
+		} finally {
+			returnWorker(worker);
+		}
+
+		while (results.size() < boolNets.size()) {
+			results.add(null);
+		}
+		return results;
+	}
+
+	private AttractorWorker borrowWorker() throws IOException, InterruptedException {
+		AttractorWorker worker = idleWorkers.take();
+		try {
+			boolean idleForLong = System.currentTimeMillis() - worker.getLastUsed() > HEALTH_CHECK_IDLE_MILLIS;
+			if (!worker.isAlive() || (idleForLong && !worker.ping(HEALTH_CHECK_TIMEOUT_MILLIS)))
+				worker = restartWorker(worker);
+			return worker;
+		} catch (IOException e) {
+			returnWorker(worker);
+			throw e;
+		}
+	}
+
+	/**
+	 * A worker that cannot be restarted is still returned to the pool, so that the
+	 * restart is tried again by the next request instead of losing the worker.
+	 */
+	private void returnWorker(AttractorWorker worker) {
+		synchronized (this) {
+			if (closed) {
+				worker.close();
+				return;
+			}
+		}
+		idleWorkers.add(worker);
+	}
+
+	private AttractorWorker restartWorker(AttractorWorker worker) throws IOException {
+		worker.close();
+		synchronized (this) {
+			workers.remove(worker);
+		}
+		restarts.incrementAndGet();
+		return startWorker();
+	}
+
+	private AttractorWorker startWorker() throws IOException {
+		AttractorWorker worker = new AttractorWorker(command);
+		synchronized (this) {
+			workers.add(worker);
+		}
+
+		String workerTool = worker.hello(HEALTH_CHECK_TIMEOUT_MILLIS);
+		if (workerTool == null || !workerTool.equals(attractorTool)) {
+			worker.close();
+			synchronized (this) {
+				workers.remove(worker);
+			}
+			throw new IOException((workerTool == null)
+				? "Attractor worker `" + String.join(" ", command) + "` does not answer"
+				: "Attractor worker `" + String.join(" ", command) + "` calculates the attractors of `"
+				+ workerTool + "`, not of the attractor tool `" + attractorTool + "`");
+		}
+		return worker;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getRestarts() {
+		return restarts.get();
+	}
+
+	public String getStatistics() {
+		return "Attractor workers: " + requests.get() + " models sent to " + size
+			+ " workers (" + batches.get() + " batches), " + restarts.get() + " restarts";
+	}
+
+	/**
+	 * Stops the workers.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (AttractorWorker worker : workers) {
+			worker.close();
+		}
+		workers.clear();
+		idleWorkers.clear();
+	}
+}
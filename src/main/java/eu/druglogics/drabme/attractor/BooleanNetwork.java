@@ -0,0 +1,436 @@
+package eu.druglogics.drabme.attractor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * An in-memory, compiled representation of a Boolean model. Every node gets a
+ * dense integer id (its index in the model's equation list, which is also the
+ * position of the node in an attractor string) and its Boolean function is
+ * compiled to a postfix program over these ids, so that the attractor solvers
+ * can evaluate it without any parsing or file I/O.
+ *
+ * <br/><br/>
+ * Node states are stored in <code>byte</code> arrays with the values {@link #ZERO},
+ * {@link #ONE} and {@link #FREE} (a node that is not fixed, i.e. a '-' in a
+ * trapspace), and evaluation follows three-valued (Kleene) logic.
+ */
+public class BooleanNetwork {
+
+	public static final byte ZERO = 0;
+	public static final byte ONE = 1;
+	public static final byte FREE = 2;
+
+	// postfix program opcodes (non-negative values are node ids)
+	private static final int CONST_ZERO = -1;
+	private static final int CONST_ONE = -2;
+	private static final int NOT = -3;
+	private static final int AND = -4;
+	private static final int OR = -5;
+
+	// functions with repeated regulators are evaluated exactly by enumeration
+	// when they do not have more than this number of free regulators
+	private static final int EXACT_EVALUATION_LIMIT = 12;
+
+	private final String[] nodeNames;
+	private final HashMap<String, Integer> nodeIndex;
+	private final int[][] programs;
+	private final int[][] regulators;
+	private final int[][] targets;
+	private final boolean[] readOnce;
+	private final int maxProgramLength;
+
+	/**
+	 * Compiles a model given in the BoolNet format, i.e. one <i>target, function</i>
+	 * line per node as returned by {@link eu.druglogics.gitsbe.model.BooleanModel#getModelBoolNet()}
+	 *
+	 * @param boolNet
+	 * @throws Exception if a line cannot be parsed or a function refers to a node
+	 * that has no equation
+	 */
+	public BooleanNetwork(List<String> boolNet) throws Exception {
+		int size = boolNet.size();
+		this.nodeNames = new String[size];
+		this.nodeIndex = new HashMap<>();
+		this.programs = new int[size][];
+		this.regulators = new int[size][];
+		this.readOnce = new boolean[size];
+
+		for (int i = 0; i < size; i++) {
+			String line = boolNet.get(i);
+			int comma = line.indexOf(',');
+			if (comma < 0)
+				throw new Exception("BoolNet line `" + line + "` has no target");
+			nodeNames[i] = line.substring(0, comma).trim();
+			nodeIndex.put(nodeNames[i], i);
+		}
+
+		int maxLength = 1;
+		for (int i = 0; i < size; i++) {
+			String line = boolNet.get(i);
+			programs[i] = new Parser(line.substring(line.indexOf(',') + 1)).parse();
+			maxLength = Math.max(maxLength, programs[i].length);
+
+			LinkedHashSet<Integer> nodeRegulators = new LinkedHashSet<>();
+			int references = 0;
+			for (int code : programs[i]) {
+				if (code >= 0) {
+					nodeRegulators.add(code);
+					references++;
+				}
+			}
+			regulators[i] = nodeRegulators.stream().mapToInt(Integer::intValue).toArray();
+			readOnce[i] = (references == regulators[i].length);
+		}
+		this.maxProgramLength = maxLength;
+
+		this.targets = computeTargets();
+	}
+
+	private int[][] computeTargets() {
+		int size = nodeNames.length;
+		int[] count = new int[size];
+		for (int[] nodeRegulators : regulators) {
+			for (int regulator : nodeRegulators) {
+				count[regulator]++;
+			}
+		}
+
+		int[][] result = new int[size][];
+		for (int i = 0; i < size; i++) {
+			result[i] = new int[count[i]];
+			count[i] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			for (int regulator : regulators[i]) {
+				result[regulator][count[regulator]++] = i;
+			}
+		}
+
+		return result;
+	}
+
+	public int size() {
+		return nodeNames.length;
+	}
+
+	public String getNodeName(int node) {
+		return nodeNames[node];
+	}
+
+	/**
+	 * @param nodeName
+	 * @return the id of the node or -1 if there is no such node in the network
+	 */
+	public int getIndexOfNode(String nodeName) {
+		Integer index = nodeIndex.get(nodeName);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * Finds the cone of influence of the given nodes, i.e. the nodes themselves and all
+	 * their ancestors (the nodes that have a path to any of them). The Boolean functions
+	 * of the nodes in the cone only depend on nodes of the cone.
+	 *
+	 * @param nodeNames nodes that are not in the network are ignored
+	 * @return a flag per node, true for the nodes in the cone of influence
+	 */
+	public boolean[] getConeOfInfluence(Collection<String> nodeNames) {
+		boolean[] inCone = new boolean[size()];
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+		for (String nodeName : nodeNames) {
+			int node = getIndexOfNode(nodeName);
+			if (node >= 0 && !inCone[node]) {
+				inCone[node] = true;
+				queue.add(node);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			for (int regulator : regulators[queue.poll()]) {
+				if (!inCone[regulator]) {
+					inCone[regulator] = true;
+					queue.add(regulator);
+				}
+			}
+		}
+
+		return inCone;
+	}
+
+	int[] getRegulators(int node) {
+		return regulators[node];
+	}
+
+	int[] getTargets(int node) {
+		return targets[node];
+	}
+
+	/**
+	 * @return a scratch stack large enough to evaluate any function of the network
+	 * with {@link #evaluate(int, byte[], byte[])}
+	 */
+	byte[] newStack() {
+		return new byte[maxProgramLength];
+	}
+
+	/**
+	 * Evaluates the Boolean function of the given node over the (sub)space described
+	 * by <code>state</code>.
+	 *
+	 * @param node
+	 * @param state
+	 * @param stack a scratch array from {@link #newStack()}
+	 * @return {@link #ZERO} or {@link #ONE} if the function is constant over the
+	 * given space, {@link #FREE} otherwise
+	 */
+	byte evaluate(int node, byte[] state, byte[] stack) {
+		byte value = evaluateKleene(programs[node], state, stack);
+		if (value != FREE || readOnce[node])
+			return value;
+
+		// a regulator appears more than once: three-valued logic might miss
+		// that the function is constant (e.g. `A | !A`), so enumerate
+		int[] free = Arrays.stream(regulators[node]).filter(r -> state[r] == FREE).toArray();
+		if (free.length > EXACT_EVALUATION_LIMIT)
+			return FREE;
+
+		byte result = FREE;
+		for (long assignment = 0; assignment < (1L << free.length); assignment++) {
+			for (int i = 0; i < free.length; i++) {
+				state[free[i]] = (byte) ((assignment >> i) & 1);
+			}
+			byte current = evaluateKleene(programs[node], state, stack);
+			if (result == FREE) {
+				result = current;
+			} else if (result != current) {
+				result = FREE;
+				break;
+			}
+		}
+		for (int regulator : free) {
+			state[regulator] = FREE;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fixes (in place) every free node of <code>state</code> whose function is
+	 * constant over the subspace, until no more nodes can be fixed.
+	 *
+	 * @param state
+	 * @param excluded nodes that must stay free (can be <code>null</code>)
+	 * @param stack a scratch array from {@link #newStack()}
+	 * @return false if a fixed node's function evaluates to the opposite value or
+	 * an excluded node would have to be fixed, true otherwise
+	 */
+	boolean percolate(byte[] state, boolean[] excluded, byte[] stack) {
+		int size = size();
+		int[] queue = new int[size];
+		boolean[] queued = new boolean[size];
+		int head = 0, count = size;
+		for (int i = 0; i < size; i++) {
+			queue[i] = i;
+			queued[i] = true;
+		}
+
+		while (count > 0) {
+			int node = queue[head];
+			head = (head + 1) % size;
+			count--;
+			queued[node] = false;
+
+			byte value = evaluate(node, state, stack);
+			if (value == FREE)
+				continue;
+
+			if (state[node] == FREE) {
+				if (excluded != null && excluded[node])
+					return false;
+
+				state[node] = value;
+				for (int target : targets[node]) {
+					if (!queued[target]) {
+						queue[(head + count) % size] = target;
+						queued[target] = true;
+						count++;
+					}
+				}
+			} else if (state[node] != value) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Propagates the constants of the network (e.g. fixed nodes) through its functions,
+	 * starting from the whole state space. Every stable state and every minimal trapspace
+	 * of the network lies within the resulting subspace.
+	 *
+	 * @return the subspace where every node whose function became constant is fixed
+	 */
+	public byte[] propagateConstants() {
+		byte[] state = newFreeState();
+		// cannot fail: no node is excluded and nodes are only fixed to constant values
+		percolate(state, null, newStack());
+		return state;
+	}
+
+	private static byte evaluateKleene(int[] program, byte[] state, byte[] stack) {
+		int top = -1;
+		for (int code : program) {
+			switch (code) {
+				case CONST_ZERO:
+					stack[++top] = ZERO;
+					break;
+				case CONST_ONE:
+					stack[++top] = ONE;
+					break;
+				case NOT:
+					if (stack[top] != FREE)
+						stack[top] = (byte) (1 - stack[top]);
+					break;
+				case AND: {
+					byte b = stack[top--];
+					byte a = stack[top];
+					stack[top] = (a == ZERO || b == ZERO) ? ZERO : ((a == ONE && b == ONE) ? ONE : FREE);
+					break;
+				}
+				case OR: {
+					byte b = stack[top--];
+					byte a = stack[top];
+					stack[top] = (a == ONE || b == ONE) ? ONE : ((a == ZERO && b == ZERO) ? ZERO : FREE);
+					break;
+				}
+				default:
+					stack[++top] = state[code];
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * @param state
+	 * @return the attractor string of the given state, i.e. a character ('0', '1'
+	 * or '-') per node in equation order
+	 */
+	public static String toAttractorString(byte[] state) {
+		char[] chars = new char[state.length];
+		for (int i = 0; i < state.length; i++) {
+			chars[i] = (state[i] == FREE) ? '-' : (char) ('0' + state[i]);
+		}
+		return new String(chars);
+	}
+
+	public byte[] newFreeState() {
+		byte[] state = new byte[size()];
+		Arrays.fill(state, FREE);
+		return state;
+	}
+
+	/**
+	 * Recursive descent parser for BoolNet functions (operators <code>!</code>,
+	 * <code>&</code>, <code>|</code> in decreasing precedence) producing a postfix
+	 * program.
+	 */
+	private class Parser {
+		private final String function;
+		private int position = 0;
+		private final ArrayList<Integer> program = new ArrayList<>();
+
+		Parser(String function) {
+			this.function = function;
+		}
+
+		int[] parse() throws Exception {
+			parseOr();
+			skipWhitespace();
+			if (position != function.length())
+				throw new Exception("Unexpected `" + function.charAt(position) + "` in function `"
+					+ function.trim() + "`");
+			return program.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		private void parseOr() throws Exception {
+			parseAnd();
+			while (accept('|')) {
+				parseAnd();
+				program.add(OR);
+			}
+		}
+
+		private void parseAnd() throws Exception {
+			parseNot();
+			while (accept('&')) {
+				parseNot();
+				program.add(AND);
+			}
+		}
+
+		private void parseNot() throws Exception {
+			if (accept('!')) {
+				parseNot();
+				program.add(NOT);
+			} else {
+				parseAtom();
+			}
+		}
+
+		private void parseAtom() throws Exception {
+			if (accept('(')) {
+				parseOr();
+				if (!accept(')'))
+					throw new Exception("Missing `)` in function `" + function.trim() + "`");
+				return;
+			}
+
+			skipWhitespace();
+			int start = position;
+			while (position < function.length() && isNameCharacter(function.charAt(position))) {
+				position++;
+			}
+			String name = function.substring(start, position);
+
+			if (name.isEmpty())
+				throw new Exception("Missing operand in function `" + function.trim() + "`");
+			else if (name.equals("0") || name.equals("false"))
+				program.add(CONST_ZERO);
+			else if (name.equals("1") || name.equals("true"))
+				program.add(CONST_ONE);
+			else if (nodeIndex.containsKey(name))
+				program.add(nodeIndex.get(name));
+			else
+				throw new Exception("Node `" + name + "` in function `" + function.trim()
+					+ "` has no equation");
+		}
+
+		private boolean accept(char symbol) {
+			skipWhitespace();
+			if (position < function.length() && function.charAt(position) == symbol) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipWhitespace() {
+			while (position < function.length() && Character.isWhitespace(function.charAt(position))) {
+				position++;
+			}
+		}
+
+		private boolean isNameCharacter(char c) {
+			return !Character.isWhitespace(c) && "&|!(),".indexOf(c) < 0;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package eu.druglogics.drabme.attractor;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Finds all the stable states (fixpoints) of a {@link BooleanNetwork}, i.e. the
+ * same set of states that the <i>biolqm_stable_states</i> attractor tool returns.
+ *
+ * <br/><br/>
+ * Every node <i>v</i> is treated as the constraint <code>v = f(v)</code> over the
+ * integer node ids and the solver runs a backtracking search on a single state
+ * array with a trail of assignments (so no state is copied while branching). After
+ * each assignment only the constraints of the assigned node and of its targets are
+ * propagated:
+ * <ul>
+ *     <li>forward: a free node whose function became constant is fixed to it</li>
+ *     <li>backward: for a fixed node whose function is not constant yet, a free
+ *     regulator value that would make the function equal to the opposite value
+ *     is ruled out</li>
+ * </ul>
+ * Drug targets fixed by a perturbation are constants in the network, so most of the
+ * model is usually resolved by propagation before any branching happens.
+ */
+public class StableStateSolver {
+
+	private final BooleanNetwork network;
+	private final byte[] stack;
+	private final byte[] state;
+	private final int[] trail;
+	private int trailSize;
+	private final int[] queue;
+	private final boolean[] queued;
+	private int queueHead;
+	private int queueSize;
+	private final ArrayList<String> stableStates;
+
+	public StableStateSolver(BooleanNetwork network) {
+		this.network = network;
+		this.stack = network.newStack();
+		this.state = network.newFreeState();
+		this.trail = new int[network.size()];
+		this.queue = new int[network.size()];
+		this.queued = new boolean[network.size()];
+		this.stableStates = new ArrayList<>();
+	}
+
+	/**
+	 * @return the stable states as attractor strings (one character per node, in
+	 * equation order) or an empty list if the network has no stable states
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public ArrayList<String> solve() {
+		stableStates.clear();
+		undo(0);
+		for (int node = 0; node < network.size(); node++) {
+			enqueue(node);
+		}
+
+		if (propagate())
+			search();
+
+		return new ArrayList<>(stableStates);
+	}
+
+	private void search() {
+		// a timed out search is interrupted (see TimeLimits)
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException("Attractor search interrupted");
+
+		int node = selectFreeNode();
+		if (node < 0) {
+			// every node is fixed and consistent with its function
+			stableStates.add(BooleanNetwork.toAttractorString(state));
+			return;
+		}
+
+		for (byte value = BooleanNetwork.ZERO; value <= BooleanNetwork.ONE; value++) {
+			int mark = trailSize;
+			assign(node, value);
+			if (propagate())
+				search();
+			undo(mark);
+		}
+	}
+
+	private boolean propagate() {
+		while (queueSize > 0) {
+			int node = queue[queueHead];
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+			queued[node] = false;
+
+			byte value = network.evaluate(node, state, stack);
+			if (value != BooleanNetwork.FREE) {
+				if (state[node] == BooleanNetwork.FREE) {
+					assign(node, value);
+				} else if (state[node] != value) {
+					clearQueue();
+					return false;
+				}
+			} else if (state[node] != BooleanNetwork.FREE && !propagateBackward(node)) {
+				clearQueue();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rules out the values of the free regulators of a fixed node that would make its
+	 * function constant and different from the node's value.
+	 *
+	 * @return false if a regulator has no allowed value left
+	 */
+	private boolean propagateBackward(int node) {
+		for (int regulator : network.getRegulators(node)) {
+			if (state[regulator] != BooleanNetwork.FREE)
+				continue;
+
+			boolean[] allowed = new boolean[2];
+			for (byte value = BooleanNetwork.ZERO; value <= BooleanNetwork.ONE; value++) {
+				state[regulator] = value;
+				byte result = network.evaluate(node, state, stack);
+				allowed[value] = (result == BooleanNetwork.FREE || result == state[node]);
+			}
+			state[regulator] = BooleanNetwork.FREE;
+
+			if (!allowed[0] && !allowed[1])
+				return false;
+
+			if (allowed[0] != allowed[1]) {
+				assign(regulator, allowed[0] ? BooleanNetwork.ZERO : BooleanNetwork.ONE);
+				// the node's function has to be checked again with the new constant
+				enqueue(node);
+				return true;
+			}
+		}
+		return true;
+	}
+
+	private void assign(int node, byte value) {
+		state[node] = value;
+		trail[trailSize++] = node;
+		enqueue(node);
+		for (int target : network.getTargets(node)) {
+			enqueue(target);
+		}
+	}
+
+	private void undo(int mark) {
+		while (trailSize > mark) {
+			state[trail[--trailSize]] = BooleanNetwork.FREE;
+		}
+	}
+
+	private void enqueue(int node) {
+		if (!queued[node]) {
+			queue[(queueHead + queueSize) % queue.length] = node;
+			queued[node] = true;
+			queueSize++;
+		}
+	}
+
+	private void clearQueue() {
+		while (queueSize > 0) {
+			queued[queue[queueHead]] = false;
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+		}
+	}
+
+	private int selectFreeNode() {
+		int selected = -1;
+		for (int node = 0; node < state.length; node++) {
+			if (state[node] == BooleanNetwork.FREE
+				&& (selected < 0 || network.getTargets(node).length > network.getTargets(selected).length)) {
+				selected = node;
+			}
+		}
+		return selected;
+	}
+}
@@ -0,0 +1,155 @@
+package eu.druglogics.drabme.attractor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Finds the minimal trapspaces of a {@link BooleanNetwork}, i.e. the same
+ * attractors that the <i>biolqm_trapspaces</i> attractor tool returns.
+ *
+ * <br/><br/>
+ * The search visits subspaces where every node is either fixed to 0, fixed to 1,
+ * excluded from fixing (it has to stay free) or not decided yet. After every
+ * branching step constants are propagated and a subspace is pruned when:
+ * <ul>
+ *     <li>a fixed node's function is constant and has the opposite value</li>
+ *     <li>an excluded node's function is constant (a minimal trapspace never has
+ *     a free node whose function is constant over it)</li>
+ *     <li>a fixed node's function is not constant yet, but all its free regulators
+ *     are excluded (so it will never become constant)</li>
+ * </ul>
+ * A fixed node whose function is not constant yet drives the branching on one of
+ * its regulators, otherwise the subspace is a trapspace and a candidate. The
+ * minimal ones among the candidates are returned.
+ */
+public class TrapSpaceSolver {
+
+	private final BooleanNetwork network;
+	private final byte[] stack;
+	private final LinkedHashSet<String> trapSpaces;
+
+	public TrapSpaceSolver(BooleanNetwork network) {
+		this.network = network;
+		this.stack = network.newStack();
+		this.trapSpaces = new LinkedHashSet<>();
+	}
+
+	/**
+	 * @return the minimal trapspaces as attractor strings (one character per node,
+	 * in equation order, with '-' for the free nodes)
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public ArrayList<String> solve() {
+		trapSpaces.clear();
+		search(network.newFreeState(), new boolean[network.size()]);
+		return getMinimalTrapSpaces();
+	}
+
+	private void search(byte[] state, boolean[] parentExcluded) {
+		// a timed out search is interrupted (see TimeLimits)
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException("Attractor search interrupted");
+
+		boolean[] excluded = parentExcluded.clone();
+		if (!network.percolate(state, excluded, stack))
+			return;
+
+		while (true) {
+			int node = selectUnsupportedRegulator(state, excluded);
+			if (node == PRUNE)
+				return;
+
+			if (node == NONE) {
+				// every fixed node agrees with its function: this is a trapspace
+				trapSpaces.add(BooleanNetwork.toAttractorString(state));
+				node = selectFreeNode(state, excluded);
+				if (node == NONE)
+					return;
+			}
+
+			for (byte value = BooleanNetwork.ZERO; value <= BooleanNetwork.ONE; value++) {
+				byte[] branch = state.clone();
+				branch[node] = value;
+				search(branch, excluded);
+			}
+
+			// last branch: the node stays free
+			excluded[node] = true;
+		}
+	}
+
+	private static final int NONE = -1;
+	private static final int PRUNE = -2;
+
+	/**
+	 * @return a free, not excluded regulator of the fixed node with the fewest such
+	 * regulators among the ones whose function is not constant yet, {@link #NONE} if
+	 * there is no such fixed node or {@link #PRUNE} if one of them cannot become
+	 * constant anymore
+	 */
+	private int selectUnsupportedRegulator(byte[] state, boolean[] excluded) {
+		int selected = NONE;
+		int fewestCandidates = Integer.MAX_VALUE;
+
+		for (int node = 0; node < state.length; node++) {
+			if (state[node] == BooleanNetwork.FREE || network.evaluate(node, state, stack) != BooleanNetwork.FREE)
+				continue;
+
+			int candidates = 0;
+			int candidate = NONE;
+			for (int regulator : network.getRegulators(node)) {
+				if (state[regulator] == BooleanNetwork.FREE && !excluded[regulator]) {
+					candidates++;
+					if (candidate == NONE || network.getTargets(regulator).length > network.getTargets(candidate).length)
+						candidate = regulator;
+				}
+			}
+
+			if (candidates == 0)
+				return PRUNE;
+
+			if (candidates < fewestCandidates) {
+				fewestCandidates = candidates;
+				selected = candidate;
+			}
+		}
+
+		return selected;
+	}
+
+	private int selectFreeNode(byte[] state, boolean[] excluded) {
+		int selected = NONE;
+		for (int node = 0; node < state.length; node++) {
+			if (state[node] == BooleanNetwork.FREE && !excluded[node]
+				&& (selected == NONE || network.getTargets(node).length > network.getTargets(selected).length)) {
+				selected = node;
+			}
+		}
+		return selected;
+	}
+
+	private ArrayList<String> getMinimalTrapSpaces() {
+		ArrayList<String> minimal = new ArrayList<>();
+		for (String trapSpace : trapSpaces) {
+			boolean isMinimal = true;
+			for (String other : trapSpaces) {
+				if (!other.equals(trapSpace) && isSubspace(other, trapSpace)) {
+					isMinimal = false;
+					break;
+				}
+			}
+			if (isMinimal)
+				minimal.add(trapSpace);
+		}
+		return minimal;
+	}
+
+	private static boolean isSubspace(String subspace, String space) {
+		for (int i = 0; i < space.length(); i++) {
+			if (space.charAt(i) != '-' && space.charAt(i) != subspace.charAt(i))
+				return false;
+		}
+		return true;
+	}
+}
@@ -13,6 +13,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import static eu.druglogics.gitsbe.util.Util.readLinesFromFile;
 
@@ -20,14 +24,40 @@ public class DrugPanel {
 
 	// Panel of single drugs to be used
 	protected ArrayList<Drug> drugs;
+	private HashMap<String, Drug> drugsByName;
+	// dense ids of the drug names in panel order, for the drug set masks (see getDrugSetMask)
+	private HashMap<String, Integer> drugIds;
 	private Logger logger;
 
 	public DrugPanel(String filename, Logger logger) throws IOException, ConfigurationException {
 		this.logger = logger;
 		this.drugs = new ArrayList<>();
+		this.drugsByName = new HashMap<>();
+		this.drugIds = new HashMap<>();
 		loadDrugPanelFile(filename);
 	}
 
+	/**
+	 * A panel of the given drugs (e.g. the drugs of the perturbations of a
+	 * {@link PerturbationPanel}), in the given order. Drugs with the name of a previous
+	 * drug are not added.
+	 *
+	 * @param drugs
+	 * @param logger
+	 */
+	public DrugPanel(List<Drug> drugs, Logger logger) {
+		this.logger = logger;
+		this.drugs = new ArrayList<>();
+		this.drugsByName = new HashMap<>();
+		this.drugIds = new HashMap<>();
+		for (Drug drug : drugs) {
+			if (drugsByName.putIfAbsent(drug.getName(), drug) == null) {
+				drugIds.put(drug.getName(), this.drugs.size());
+				this.drugs.add(drug);
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * @param drugNames
@@ -50,7 +80,7 @@ public class DrugPanel {
 	 *
 	 */
 	boolean isDrugInPanel(String name) {
-		return(getDrugNames().contains(name));
+		return drugsByName.containsKey(name);
 	}
 
 	/**
@@ -64,7 +94,7 @@ public class DrugPanel {
 		if (!isDrugInPanel(name))
 			throw new Exception("Drug `" + name + "` was not found in drug panel");
 		else {
-			return drugs.get(getDrugNames().indexOf(name));
+			return drugsByName.get(name);
 		}
 	}
 
@@ -98,7 +128,10 @@ public class DrugPanel {
 		for (int i = 0; i < lines.size(); i++) {
 			// Add drug name
 			String drugName = lines.get(i).split("\t")[0];
-			drugs.add(new Drug(drugName, logger));
+			Drug drug = new Drug(drugName, logger);
+			drugs.add(drug);
+			drugsByName.putIfAbsent(drugName, drug);
+			drugIds.putIfAbsent(drugName, drugIds.size());
 
 			// Add perturbation effect
 			String effect = lines.get(i).split("\t")[1];
@@ -176,28 +209,16 @@ public class DrugPanel {
 	 * @param perturbations
 	 */
 	private void checkDrugCombinationConsistency(ArrayList<Drug[]> perturbations) throws ConfigurationException {
-		boolean foundSubset;
+		// the drug sets of the perturbations defined before the checked one
+		HashSet<BitSet> previousPerturbations = new HashSet<>();
 
-		for (int index = 0; index < perturbations.size(); index++) {
-			Drug[] combination = perturbations.get(index);
+		for (Drug[] combination : perturbations) {
 			logger.debug("Combination: " + PerturbationPanel.getCombinationName(combination));
 			if (combination.length > 1) { // pairs of drugs, triplets, etc.
-				// generate the subsets
-				Drug[][] subsets = getCombinationSubsets(combination);
-
 				// for every subset check that there is a defined perturbation in the file
-				for (Drug[] subset : subsets) {
-					foundSubset = false;
-					for (int k = 0; k < index; k++) {
-						logger.debug("Checking subset: " + PerturbationPanel.getCombinationName(subset)
-								+ " with perturbation: " + PerturbationPanel.getCombinationName(perturbations.get(k)));
-						if (Arrays.equals(perturbations.get(k), subset)) {
-							logger.debug("FOUND!");
-							foundSubset = true;
-							break;
-						}
-					}
-					if (!foundSubset) {
+				for (Drug[] subset : getCombinationSubsets(combination)) {
+					logger.debug("Checking subset: " + PerturbationPanel.getCombinationName(subset));
+					if (!previousPerturbations.contains(getDrugSetMask(subset))) {
 						throw new ConfigurationException("The drug combination `"
 							+ PerturbationPanel.getCombinationName(combination)
 							+ "` does not have the subset `" + PerturbationPanel.getCombinationName(subset)
@@ -205,6 +226,7 @@ public class DrugPanel {
 					}
 				}
 			}
+			previousPerturbations.add(getDrugSetMask(combination));
 		}
 	}
 
@@ -234,6 +256,17 @@ public class DrugPanel {
 		return getCombinations(lowerLimit, size);
 	}
 
+	/**
+	 * Get all Drug combinations with <i>minSize</i> up to <i>maxSize</i> drugs, e.g.
+	 * the next level of a hierarchical screening
+	 *
+	 * @param minSize
+	 * @param maxSize
+	 */
+	public Drug[][] getDrugCombinations(int minSize, int maxSize) {
+		return getCombinations(minSize, maxSize);
+	}
+
 	/**
 	 * 
 	 * @return array of drug arrays, where each drug array is a perturbation
@@ -318,23 +351,33 @@ public class DrugPanel {
 	}
 
 	/**
-	 * 
-	 * @param drugs
-	 *            in drugset for which unique id will be generated. Hash will be
-	 *            name-based, so each drug must have unique name
-	 * @return hash
+	 * The drugs of the panel have dense ids in panel order (0, 1, ...), so that the drug
+	 * set masks are small. Drugs with the same name have the same id.
+	 *
+	 * @param drugName
+	 * @return the id of the drug, or -1 if it is not in the panel
 	 */
-	public static int getDrugSetHash(Drug[] drugs) {
-		StringBuilder drugStr = new StringBuilder();
+	public int getDrugId(String drugName) {
+		return drugIds.getOrDefault(drugName, -1);
+	}
 
+	/**
+	 * The identity of a drug set: the set of the ids of its drugs (see
+	 * {@link #getDrugId(String)}). It does not depend on the order of the drugs and two
+	 * different drug sets never have the same mask.
+	 *
+	 * @param drugs of this panel
+	 * @return the mask of the drug ids
+	 * @throws IllegalArgumentException if a drug is not in the panel
+	 */
+	public BitSet getDrugSetMask(Drug[] drugs) {
+		BitSet mask = new BitSet();
 		for (Drug drug : drugs) {
-			drugStr.append(drug.getName());
-
-			for (int j = 0; j < drug.getTargets().size(); j++) {
-				drugStr.append(drug.getTargets().get(j));
-			}
+			int id = getDrugId(drug.getName());
+			if (id < 0)
+				throw new IllegalArgumentException("Drug `" + drug.getName() + "` is not in the drug panel");
+			mask.set(id);
 		}
-
-		return drugStr.toString().hashCode();
+		return mask;
 	}
 }
@@ -1,16 +1,42 @@
 package eu.druglogics.drabme.drug;
 
 import eu.druglogics.drabme.Drabme;
+import eu.druglogics.drabme.attractor.AttractorCache;
+import eu.druglogics.drabme.attractor.AttractorStore;
+import eu.druglogics.drabme.attractor.AttractorWorkerPool;
+import eu.druglogics.drabme.perturbation.EnsembleSnapshot;
 import eu.druglogics.drabme.input.Config;
 import eu.druglogics.drabme.perturbation.ModelPredictions;
+import eu.druglogics.drabme.perturbation.ModelResponses;
+import eu.druglogics.drabme.perturbation.PerturbationModel;
 import eu.druglogics.drabme.perturbation.PerturbationPanel;
+import eu.druglogics.drabme.perturbation.ResponseCheckpoint;
 import eu.druglogics.drabme.perturbation.ResponseModel;
+import eu.druglogics.drabme.perturbation.SequentialSampling;
+import eu.druglogics.drabme.util.IoExecutors;
+import eu.druglogics.drabme.util.TimeLimits;
+import eu.druglogics.gitsbe.input.ModelOutputs;
+import eu.druglogics.gitsbe.input.OutputWeight;
 import eu.druglogics.gitsbe.model.BooleanModel;
 import eu.druglogics.gitsbe.util.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.stream.IntStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
 import static eu.druglogics.gitsbe.util.Util.abort;
 
@@ -21,6 +47,30 @@ public class DrugResponseAnalyzer {
 	private String directoryTmp;
 	private Logger logger;
 	private String logDirectory;
+	private AttractorCache attractorCache;
+	private AttractorStore attractorStore;
+	private int[] modelOrder;
+	private int[] representativeModels;
+	private final AtomicInteger perturbationsResolvedByPropagation = new AtomicInteger();
+	private final AtomicInteger perturbationsSimulated = new AtomicInteger();
+	private final AtomicInteger naCombinations = new AtomicInteger();
+	private int timedOutPerturbations = 0;
+	private int timeoutFallbacks = 0;
+	private final ArrayList<String> timeouts = new ArrayList<>();
+	private boolean[] hasIdenticalModels;
+	private ArrayList<ModelResponses> representativeResponses;
+	private String checkpointDirectory = null;
+	private String modelDirectory = null;
+	private boolean resume = false;
+	private ResponseCheckpoint checkpoint = null;
+	private HashMap<String, ModelResponses> restoredResponses = new HashMap<>();
+	private Semaphore externalProcesses = null;
+	private Semaphore cpuSlots = null;
+	private AttractorWorkerPool attractorWorkers = null;
+	private SequentialSampling sequentialSampling = null;
+	private EnsembleSnapshot snapshot = null;
+	private int finishedModels = 0;
+	private long lastSnapshotMillis;
 	public ArrayList<String> simulationFileList;
 	public ArrayList<ModelPredictions> modelPredictionsList;
 
@@ -33,48 +83,634 @@ public class DrugResponseAnalyzer {
 		this.logDirectory = logDirectory;
 		this.simulationFileList = new ArrayList<>();
 		this.modelPredictionsList = new ArrayList<>();
+
+		int attractorCacheSize = Config.getInstance().getAttractorCacheSize();
+		this.attractorCache = (attractorCacheSize > 0) ? new AttractorCache(attractorCacheSize) : null;
+	}
+
+	/**
+	 * The responses of every finished model are saved to a {@link ResponseCheckpoint}
+	 * in the given directory.
+	 *
+	 * @param checkpointDirectory
+	 * @param modelDirectory the directory the models were loaded from (a checkpoint is
+	 *                       only resumed with the same models)
+	 * @param resume if true, the models found in an existing checkpoint are not
+	 *               simulated again, but their responses are taken from the checkpoint
+	 */
+	public void enableCheckpoint(String checkpointDirectory, String modelDirectory, boolean resume) {
+		this.checkpointDirectory = checkpointDirectory;
+		this.modelDirectory = modelDirectory;
+		this.resume = resume;
+	}
+
+	/**
+	 * @return the settings of the run that change the responses of the models, so that
+	 * a checkpoint is not resumed with other settings
+	 */
+	private String getCheckpointSettings() {
+		StringBuilder modelOutputs = new StringBuilder();
+		for (OutputWeight outputWeight : ModelOutputs.getInstance().getModelOutputs()) {
+			modelOutputs.append(outputWeight.getNodeName()).append(':').append(outputWeight.getWeight()).append(' ');
+		}
+
+		Config config = Config.getInstance();
+		return "synergy_method: " + config.getSynergyMethod()
+			+ "\nattractor_tool: " + config.getAttractorTool()
+			+ "\nattractor_timeout: " + config.getAttractorTimeout()
+			+ "\nmodel_timeout: " + config.getModelTimeout()
+			+ "\ntimeout_fallback: " + config.getTimeoutFallback()
+			+ "\nskip_na_combinations: " + config.skipNACombinations()
+			+ "\nskipped_combination_responses: " + config.calculateSkippedCombinationResponses()
+			+ "\nmodel_slicing: " + config.useModelSlicing()
+			+ "\nsequential_sampling: " + config.useSequentialSampling()
+			+ "\nsampling_seed: " + config.getSamplingSeed()
+			+ "\nsampling_tolerance: " + config.getSamplingTolerance()
+			+ "\nsampling_min_models: " + config.getSamplingMinModels()
+			+ "\nmodel_outputs: " + modelOutputs.toString().trim()
+			+ "\nmodel_directory: " + new File(modelDirectory).getAbsolutePath();
+	}
+
+	/**
+	 * Snapshots of the ensemble-wise results are written to the given directory while
+	 * the models are simulated, every <i>snapshot_models</i> models and/or every
+	 * <i>snapshot_interval</i> seconds (see {@link EnsembleSnapshot}).
+	 *
+	 * @param directory
+	 * @param projectName
+	 */
+	public void enableSnapshots(String directory, String projectName) {
+		if (Config.getInstance().getSnapshotModels() > 0 || Config.getInstance().getSnapshotInterval() > 0)
+			this.snapshot = new EnsembleSnapshot(directory, projectName);
 	}
 
 	public void analyze() {
+		perturbationPanel.allocateResponses(booleanModels.size(), Config.getInstance().useOffHeapResponses());
+		openCheckpoint();
+		openAttractorStore();
+		startAttractorWorkers();
+		initializeModelOrder();
+		findIdenticalModels();
+		lastSnapshotMillis = System.currentTimeMillis();
+
+		if (Config.getInstance().useModelSlicing()
+			&& !PerturbationModel.isTrapSpaceTool(Config.getInstance().getAttractorTool())) {
+			logger.outputStringMessage(1, "\nmodel_slicing is ignored: it is only used with the trapspace "
+				+ "attractor tools, the stable states of " + Config.getInstance().getAttractorTool()
+				+ " are calculated on the whole models");
+		}
+
+		if ((Config.getInstance().getAttractorTimeout() > 0 || Config.getInstance().getModelTimeout() > 0)
+			&& PerturbationModel.usesExternalProcess(Config.getInstance().getAttractorTool())
+			&& !TimeLimits.canDestroyProcesses()) {
+			logger.outputStringMessage(1, "\nWarning: the attractor tool processes that run out of time cannot "
+				+ "be stopped on Java " + System.getProperty("java.specification.version")
+				+ " (Java 9 or later is needed), they keep running in the background until they finish");
+		}
+
 		if (Config.getInstance().useParallelSimulations()) {
 			logger.outputStringMessage(1, "\nRunning simulations in parallel");
-			setNumberOfAllowedParallelSimulations();
-			IntStream.range(0, booleanModels.size()).parallel()
-				.forEach(this::runSimulation);
+			runSimulationsInParallel();
 		} else {
 			logger.outputStringMessage(1, "\nRunning simulations serially");
-			IntStream.range(0, booleanModels.size())
-				.forEach(this::runSimulation);
+			for (int modelIndex : modelOrder) {
+				if (isSamplingFinished())
+					break;
+				finishSimulation(startSimulation(modelIndex, null));
+			}
+		}
+
+		if (sequentialSampling != null) {
+			logger.outputStringMessage(1, "\n" + sequentialSampling.getStatistics()
+				+ " (out of " + booleanModels.size() + " models)");
+		}
+
+		if (Config.getInstance().useConstantPropagation()) {
+			logger.outputStringMessage(1, "\nPerturbed models resolved by constant propagation: "
+				+ perturbationsResolvedByPropagation.get() + " out of " + perturbationsSimulated.get()
+				+ " simulated perturbed models");
+		}
+
+		if (Config.getInstance().skipNACombinations()) {
+			logger.outputStringMessage(1, "Drug combinations with a subset without response: "
+				+ naCombinations.get() + (Config.getInstance().calculateSkippedCombinationResponses()
+				? " (responses calculated, synergy NA)" : " (skipped, synergy NA)"));
+		}
+
+		if (attractorCache != null) {
+			logger.outputStringMessage(1, "\n" + attractorCache.getStatistics());
+		}
+
+		logTimeouts();
+
+		if (snapshot != null && snapshot.getSnapshots() > 0) {
+			logger.outputStringMessage(1, "\nSnapshots of the ensemble-wise results: " + snapshot.getSnapshots()
+				+ " (latest in " + snapshot.getResponsesFile().getName() + " and "
+				+ snapshot.getSynergiesFile().getName() + ")");
+		}
+
+		stopAttractorWorkers();
+		closeAttractorStore();
+		closeCheckpoint();
+	}
+
+	private void openCheckpoint() {
+		if (checkpointDirectory == null)
+			return;
+
+		try {
+			String settings = getCheckpointSettings();
+			if (resume) {
+				// the restored models stay in the checkpoint, the next ones are appended
+				checkpoint = ResponseCheckpoint.resume(checkpointDirectory, perturbationPanel, settings);
+				for (ModelResponses modelResponses : checkpoint.getRestoredResponses()) {
+					restoredResponses.put(modelResponses.getModelName(), modelResponses);
+				}
+				logger.outputStringMessage(1, "\nResuming from checkpoint: " + restoredResponses.size()
+					+ " finished models will not be simulated again");
+			} else {
+				checkpoint = new ResponseCheckpoint(checkpointDirectory, perturbationPanel, settings);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			abort();
+		}
+	}
+
+	private void closeCheckpoint() {
+		if (checkpoint == null)
+			return;
+
+		try {
+			checkpoint.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void openAttractorStore() {
+		String attractorStoreDirectory = Config.getInstance().getAttractorStoreDirectory();
+		if (attractorStoreDirectory.isEmpty())
+			return;
+
+		try {
+			attractorStore = new AttractorStore(attractorStoreDirectory);
+			logger.outputStringMessage(1, "\nUsing attractor store: " + attractorStore.getFilename()
+				+ " (" + attractorStore.size() + " models)");
+		} catch (IOException e) {
+			e.printStackTrace();
+			abort();
+		}
+	}
+
+	private void closeAttractorStore() {
+		if (attractorStore == null)
+			return;
+
+		logger.outputStringMessage(1, attractorStore.getStatistics());
+		try {
+			attractorStore.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void startAttractorWorkers() {
+		String attractorWorkerCommand = Config.getInstance().getAttractorWorkerCommand().trim();
+		if (attractorWorkerCommand.isEmpty()
+			|| !PerturbationModel.usesExternalProcess(Config.getInstance().getAttractorTool()))
+			return;
+
+		int workersNumber = 1;
+		if (Config.getInstance().useParallelSimulations()) {
+			workersNumber = (Config.getInstance().getMaxExternalProcesses() > 0)
+				? Config.getInstance().getMaxExternalProcesses()
+				: Config.getInstance().parallelSimulationsNumber();
+		}
+
+		try {
+			attractorWorkers = new AttractorWorkerPool(Arrays.asList(attractorWorkerCommand.split("\\s+")),
+				Config.getInstance().getAttractorTool(), workersNumber);
+			logger.outputStringMessage(1, "\nStarted " + workersNumber + " attractor workers: "
+				+ attractorWorkerCommand);
+		} catch (IOException e) {
+			e.printStackTrace();
+			abort();
+		}
+	}
+
+	private void stopAttractorWorkers() {
+		if (attractorWorkers == null)
+			return;
+
+		logger.outputStringMessage(1, attractorWorkers.getStatistics());
+		attractorWorkers.close();
+	}
+
+	/**
+	 * Every (model, perturbation) pair is simulated as a separate task of a work-stealing
+	 * pool (see {@link ResponseModel#simulateResponsesAsync(String, Executor)}), so that
+	 * the cores are kept busy even with few models or a slow model. The results of the
+	 * models are added in the same order as in the serial mode, and only a limited
+	 * number of models is simulated at the same time, to bound memory usage.
+	 *
+	 * The pool is owned by drabme and has exactly <i>parallel_sim_num</i> threads. Its
+	 * utilisation and queue depth are sampled every time the results of a model are added.
+	 * When the attractor tool runs as an external process and <i>max_external_processes</i>
+	 * is set, an I/O executor (see {@link IoExecutors}) is used instead: the number of
+	 * concurrent external processes is limited separately, and the CPU-bound parts of the
+	 * tasks are still limited to <i>parallel_sim_num</i> (see
+	 * {@link ResponseModel#setCpuLimit(Semaphore)}). The usage of both limits is sampled
+	 * instead of the pool's.
+	 */
+	private void runSimulationsInParallel() {
+		int parallelSimulationsNumber = Config.getInstance().parallelSimulationsNumber();
+		logger.outputStringMessage(1, "\nSetting number of parallel simulations to: "
+			+ parallelSimulationsNumber);
+
+		ExecutorService executor;
+		ArrayList<PoolUsage> poolUsages = new ArrayList<>();
+		int maxModelsInProgress = 2 * parallelSimulationsNumber;
+
+		int maxExternalProcesses = Config.getInstance().getMaxExternalProcesses();
+		if (maxExternalProcesses > 0
+			&& PerturbationModel.usesExternalProcess(Config.getInstance().getAttractorTool())) {
+			// the simulations mostly wait on the external processes of the attractor tool
+			externalProcesses = new Semaphore(maxExternalProcesses);
+			cpuSlots = new Semaphore(parallelSimulationsNumber);
+			poolUsages.add(new PoolUsage("CPU slots", cpuSlots, parallelSimulationsNumber));
+			poolUsages.add(new PoolUsage("External processes", externalProcesses, maxExternalProcesses));
+			executor = IoExecutors.newIoExecutor(parallelSimulationsNumber + maxExternalProcesses);
+			maxModelsInProgress = 2 * Math.max(parallelSimulationsNumber, maxExternalProcesses);
+			logger.outputStringMessage(1, "Running the simulations on "
+				+ (IoExecutors.hasVirtualThreads() ? "virtual threads" : "an elastic thread pool")
+				+ " with at most " + maxExternalProcesses + " external attractor tool processes");
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelSimulationsNumber);
+			poolUsages.add(new PoolUsage(pool));
+			executor = pool;
+		}
+
+		ArrayDeque<Simulation> simulations = new ArrayDeque<>();
+		try {
+			for (int modelIndex : modelOrder) {
+				if (isSamplingFinished())
+					break;
+				simulations.add(startSimulation(modelIndex, executor));
+				if (simulations.size() >= maxModelsInProgress) {
+					samplePoolUsage(poolUsages);
+					finishSimulation(simulations.poll());
+				}
+			}
+			while (!simulations.isEmpty()) {
+				samplePoolUsage(poolUsages);
+				finishSimulation(simulations.poll());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (PoolUsage poolUsage : poolUsages) {
+			logger.outputStringMessage(1, "\n" + poolUsage.getStatistics());
+		}
+	}
+
+	private static void samplePoolUsage(List<PoolUsage> poolUsages) {
+		for (PoolUsage poolUsage : poolUsages) {
+			poolUsage.sample();
+		}
+	}
+
+	/**
+	 * Samples of the utilisation (active threads of the simulation pool, or permits in
+	 * use of a limit of the I/O mode) and the queue depth (queued tasks and submissions,
+	 * or tasks waiting for a permit).
+	 */
+	private class PoolUsage {
+		private final String name;
+		private final int capacity;
+		private final String units;
+		private final IntSupplier inUse;
+		private final LongSupplier queued;
+		private final LongSupplier steals;
+		private int samples;
+		private long inUseSum;
+		private long queuedTasksSum;
+		private long maxQueuedTasks;
+
+		PoolUsage(ForkJoinPool pool) {
+			this("Simulation pool", pool.getParallelism(), "threads", pool::getActiveThreadCount,
+				() -> pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount(), pool::getStealCount);
+		}
+
+		PoolUsage(String name, Semaphore limit, int permits) {
+			this(name, permits, "permits", () -> permits - limit.availablePermits(),
+				limit::getQueueLength, null);
+		}
+
+		private PoolUsage(String name, int capacity, String units, IntSupplier inUse, LongSupplier queued,
+						  LongSupplier steals) {
+			this.name = name;
+			this.capacity = capacity;
+			this.units = units;
+			this.inUse = inUse;
+			this.queued = queued;
+			this.steals = steals;
+		}
+
+		void sample() {
+			int used = inUse.getAsInt();
+			long queuedTasks = queued.getAsLong();
+
+			samples++;
+			inUseSum += used;
+			queuedTasksSum += queuedTasks;
+			maxQueuedTasks = Math.max(maxQueuedTasks, queuedTasks);
+
+			logger.outputStringMessage(3, name + ": " + used + " of " + capacity + " " + units + " in use, "
+				+ queuedTasks + " queued tasks");
+		}
+
+		String getStatistics() {
+			if (samples == 0)
+				return name + ": no samples";
+
+			return String.format("%s: %.1f%% mean utilisation of %d %s, %.1f mean and %d max queued tasks",
+				name, 100.0 * inUseSum / (samples * (long) capacity), capacity, units,
+				(double) queuedTasksSum / samples, maxQueuedTasks)
+				+ ((steals != null) ? ", " + steals.getAsLong() + " steals" : "");
+		}
+	}
+
+	/**
+	 * The simulation of a model: its response model (<code>null</code> if the model reuses
+	 * the responses of a model with identical equations or was restored from the
+	 * checkpoint) and the future of its responses (<code>null</code> if the model was
+	 * simulated serially).
+	 */
+	private static class Simulation {
+		final int modelIndex;
+		final Logger simulationLogger;
+		final ResponseModel responseModel;
+		final CompletableFuture<Void> responses;
+
+		Simulation(int modelIndex, Logger simulationLogger, ResponseModel responseModel,
+				   CompletableFuture<Void> responses) {
+			this.modelIndex = modelIndex;
+			this.simulationLogger = simulationLogger;
+			this.responseModel = responseModel;
+			this.responses = responses;
 		}
 	}
 
-	private void runSimulation(int modelIndex) {
+	/**
+	 * @param modelIndex
+	 * @param executor runs the perturbation tasks of the model, or <code>null</code> to
+	 *                 simulate the model serially in the calling thread
+	 */
+	private Simulation startSimulation(int modelIndex, Executor executor) {
 		try {
 			String modelName = booleanModels.get(modelIndex).getModelName();
 			String filenameOutput = (modelName.contains("_run_"))
 				? Drabme.appName + modelName.substring(modelName.lastIndexOf("_run_")) + ".txt"
 				: Drabme.appName + modelName + ".txt";
 
+			if (restoredResponses.containsKey(modelName)) {
+				// keep the log of the interrupted run
+				File logFile = new File(logDirectory, filenameOutput);
+				if (logFile.exists())
+					addFileToSimulationFileList(logFile.getAbsolutePath());
+				return new Simulation(modelIndex, null, null, null);
+			}
+
 			addFileToSimulationFileList(new File(logDirectory, filenameOutput).getAbsolutePath());
 
 			// create new logger for each (parallel) simulation
 			Logger simulationLogger = new Logger(filenameOutput, logDirectory, logger.getVerbosity(), true);
 			simulationLogger.outputHeader(2, "Adding model " + modelName);
 
-			ResponseModel responseModel =
-				new ResponseModel(booleanModels.get(modelIndex), perturbationPanel, simulationLogger);
+			int representativeIndex = representativeModels[modelIndex];
+			if (representativeIndex != modelIndex) {
+				simulationLogger.outputStringMessage(2, "Model has the same equations as "
+					+ booleanModels.get(representativeIndex).getModelName() + ": reusing its responses");
+				return new Simulation(modelIndex, simulationLogger, null, null);
+			}
+
+			ResponseModel responseModel = new ResponseModel(booleanModels.get(modelIndex),
+				perturbationPanel, attractorCache, attractorStore, simulationLogger);
+			responseModel.setExternalProcessLimit(externalProcesses);
+			responseModel.setCpuLimit(cpuSlots);
+			responseModel.setAttractorWorkers(attractorWorkers);
+			responseModel.setModelIndex(modelIndex);
+			if (sequentialSampling != null)
+				responseModel.setStoppedPerturbations(sequentialSampling.getStoppedPerturbations());
 			responseModel.initializeResponseModel();
-			responseModel.simulateResponses(directoryTmp);
 
-			addModelPredictionsToList(responseModel.getModelPredictions());
+			if (executor == null) {
+				responseModel.simulateResponses(directoryTmp);
+				return new Simulation(modelIndex, simulationLogger, responseModel, null);
+			}
 
-			simulationLogger.finish();
+			return new Simulation(modelIndex, simulationLogger, responseModel,
+				responseModel.simulateResponsesAsync(directoryTmp, executor));
 		} catch (Exception e) {
 			e.printStackTrace();
 			abort();
+			return null;
 		}
 	}
 
+	/**
+	 * Waits for the responses of the simulation and adds them to the results. Must be
+	 * called in the order of {@link #initializeModelOrder()}.
+	 */
+	private void finishSimulation(Simulation simulation) {
+		try {
+			int modelIndex = simulation.modelIndex;
+			String modelName = booleanModels.get(modelIndex).getModelName();
+			int representativeIndex = representativeModels[modelIndex];
+			ModelResponses modelResponses;
+
+			boolean restored = restoredResponses.containsKey(modelName);
+			if (restored) {
+				modelResponses = restoredResponses.get(modelName).replay(perturbationPanel, modelIndex, modelName);
+				addModelPredictionsToList(modelResponses.getModelPredictions());
+			} else if (representativeIndex != modelIndex) {
+				modelResponses = representativeResponses.get(representativeIndex)
+					.replay(perturbationPanel, modelIndex, modelName);
+				addModelPredictionsToList(modelResponses.getModelPredictions());
+			} else {
+				ResponseModel responseModel = simulation.responseModel;
+				if (simulation.responses != null) {
+					simulation.responses.join();
+					responseModel.addPredictions();
+				}
+
+				addModelPredictionsToList(responseModel.getModelPredictions());
+				perturbationsResolvedByPropagation.addAndGet(responseModel.getPerturbationsResolvedByPropagation());
+				perturbationsSimulated.addAndGet(responseModel.getSimulatedPerturbationModels());
+				naCombinations.addAndGet(responseModel.getNACombinations());
+				addTimeouts(modelName, responseModel);
+				modelResponses = responseModel.getModelResponses();
+			}
+
+			if (hasIdenticalModels[modelIndex])
+				representativeResponses.set(modelIndex, modelResponses);
+			if (sequentialSampling != null)
+				sequentialSampling.addModel(modelResponses);
+			finishedModels++;
+			writeSnapshotIfDue();
+			if (checkpoint != null && !restored)
+				checkpoint.write(modelResponses);
+
+			if (simulation.simulationLogger != null)
+				simulation.simulationLogger.finish();
+		} catch (Exception e) {
+			e.printStackTrace();
+			abort();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the ensemble-wise results after every <i>snapshot_models</i>
+	 * finished models, or when <i>snapshot_interval</i> seconds have passed since the
+	 * previous one (checked when a model finishes, since the results only change then).
+	 * A snapshot that cannot be written is skipped, the run goes on.
+	 */
+	private void writeSnapshotIfDue() {
+		if (snapshot == null)
+			return;
+
+		int snapshotModels = Config.getInstance().getSnapshotModels();
+		long snapshotIntervalMillis = 1000L * Config.getInstance().getSnapshotInterval();
+		boolean due = (snapshotModels > 0 && finishedModels % snapshotModels == 0)
+			|| (snapshotIntervalMillis > 0 && System.currentTimeMillis() - lastSnapshotMillis >= snapshotIntervalMillis);
+		if (!due)
+			return;
+
+		try {
+			snapshot.write(perturbationPanel, finishedModels, booleanModels.size());
+			logger.outputStringMessage(2, "Snapshot of the ensemble-wise results after "
+				+ finishedModels + " out of " + booleanModels.size() + " models");
+		} catch (IOException e) {
+			logger.outputStringMessage(1, "Snapshot of the ensemble-wise results failed: " + e.getMessage());
+		}
+		lastSnapshotMillis = System.currentTimeMillis();
+	}
+
+	private void addTimeouts(String modelName, ResponseModel responseModel) {
+		List<String> timedOut = responseModel.getTimedOutPerturbations();
+		if (timedOut.isEmpty())
+			return;
+
+		timedOutPerturbations += timedOut.size();
+		timeoutFallbacks += responseModel.getTimeoutFallbacks();
+		synchronized (timedOut) {
+			timeouts.add(modelName + ": " + String.join(", ", timedOut));
+		}
+	}
+
+	/**
+	 * Summary of the perturbed models that ran out of time, to help tuning the
+	 * <i>attractor_timeout</i> and <i>model_timeout</i>.
+	 */
+	private void logTimeouts() {
+		if (Config.getInstance().getAttractorTimeout() <= 0 && Config.getInstance().getModelTimeout() <= 0)
+			return;
+
+		logger.outputStringMessage(1, "\nPerturbed models that ran out of time: " + timedOutPerturbations
+			+ " (" + timeoutFallbacks + " resolved by the timeout fallback, "
+			+ (timedOutPerturbations - timeoutFallbacks) + " without response) in " + timeouts.size()
+			+ " models");
+		for (String timeout : timeouts) {
+			logger.outputStringMessage(2, timeout);
+		}
+	}
+
+	/**
+	 * The models are simulated in the order of the ensemble or, with
+	 * <i>sequential_sampling</i>, in a random order (a reproducible permutation, given the
+	 * <i>sampling_seed</i>), so that every prefix of the order is a random sample of the
+	 * ensemble and the simulations can stop once the estimates are confident (see
+	 * {@link SequentialSampling}).
+	 */
+	private void initializeModelOrder() {
+		modelOrder = new int[booleanModels.size()];
+		for (int modelIndex = 0; modelIndex < modelOrder.length; modelIndex++) {
+			modelOrder[modelIndex] = modelIndex;
+		}
+
+		if (!Config.getInstance().useSequentialSampling())
+			return;
+
+		Random random = new Random(Config.getInstance().getSamplingSeed());
+		for (int position = modelOrder.length - 1; position > 0; position--) {
+			int other = random.nextInt(position + 1);
+			int modelIndex = modelOrder[position];
+			modelOrder[position] = modelOrder[other];
+			modelOrder[other] = modelIndex;
+		}
+
+		ModelOutputs modelOutputs = ModelOutputs.getInstance();
+		sequentialSampling = new SequentialSampling(perturbationPanel, Config.getInstance().getSamplingTolerance(),
+			Config.getInstance().getSamplingMinModels(), modelOutputs.getMaxOutput() - modelOutputs.getMinOutput());
+		logger.outputStringMessage(1, "\nSequential sampling of the models in random order (seed: "
+			+ Config.getInstance().getSamplingSeed() + "), until the confidence intervals are narrower than "
+			+ Config.getInstance().getSamplingTolerance() + " (at least "
+			+ Config.getInstance().getSamplingMinModels() + " models per estimate)");
+	}
+
+	private boolean isSamplingFinished() {
+		return sequentialSampling != null && sequentialSampling.isFinished();
+	}
+
+	/**
+	 * @return the sequential sampling of the models, or <code>null</code> if all the
+	 * models are simulated
+	 */
+	public SequentialSampling getSequentialSampling() {
+		return sequentialSampling;
+	}
+
+	/**
+	 * Groups the models with identical equations (and attractor tool), so that only
+	 * the first model of every group (the representative) in the simulation order is
+	 * simulated and the others reuse its responses (see
+	 * {@link ModelResponses#replay(PerturbationPanel, int, String)}).
+	 */
+	private void findIdenticalModels() {
+		int modelsNumber = booleanModels.size();
+		representativeModels = new int[modelsNumber];
+		hasIdenticalModels = new boolean[modelsNumber];
+		representativeResponses = new ArrayList<>(Collections.nCopies(modelsNumber, null));
+
+		if (!Config.getInstance().deduplicateModels()) {
+			for (int modelIndex = 0; modelIndex < modelsNumber; modelIndex++) {
+				representativeModels[modelIndex] = modelIndex;
+			}
+			return;
+		}
+
+		HashMap<String, Integer> representativeIndexes = new HashMap<>();
+		int duplicates = 0;
+		for (int modelIndex : modelOrder) {
+			BooleanModel booleanModel = booleanModels.get(modelIndex);
+			String key = AttractorCache.getKey(booleanModel.getAttractorTool(), booleanModel.getModelBoolNet());
+
+			Integer representativeIndex = representativeIndexes.putIfAbsent(key, modelIndex);
+			if (representativeIndex == null) {
+				representativeModels[modelIndex] = modelIndex;
+			} else {
+				representativeModels[modelIndex] = representativeIndex;
+				hasIdenticalModels[representativeIndex] = true;
+				duplicates++;
+			}
+		}
+
+		logger.outputStringMessage(1, "\nModels with identical equations are simulated once: "
+			+ (modelsNumber - duplicates) + " out of " + modelsNumber + " models will be simulated");
+	}
+
 	public void computeStatistics() {
 		logger.outputHeader(1, "Calculating Statistics");
 		for (int i = 0; i < perturbationPanel.getPerturbations().length; i++) {
@@ -90,11 +726,4 @@ public class DrugResponseAnalyzer {
 		modelPredictionsList.add(modelPredictions);
 	}
 
-	private void setNumberOfAllowedParallelSimulations() {
-		int parallelSimulationsNumber = Config.getInstance().parallelSimulationsNumber();
-		System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism",
-				Integer.toString(parallelSimulationsNumber - 1));
-		logger.outputStringMessage(1, "\nSetting number of parallel simulations to: "
-				+ parallelSimulationsNumber);
-	}
 }
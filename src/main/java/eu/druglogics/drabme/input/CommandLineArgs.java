@@ -36,6 +36,10 @@ public class CommandLineArgs {
             description = "Model outputs file", order = 5)
     private String filenameModelOutputs;
 
+    @Parameter(names = { "--resume", "-r" },
+            description = "Output directory of an interrupted run to resume", order = 6)
+    private String directoryResume;
+
     public String getProjectName() {
         return projectName;
     }
@@ -59,5 +63,8 @@ public class CommandLineArgs {
     public String getFilenameModelOutputs() {
         return filenameModelOutputs;
     }
-}
 
+    public String getDirectoryResume() {
+        return directoryResume;
+    }
+}
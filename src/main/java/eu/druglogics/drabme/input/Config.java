@@ -1,5 +1,6 @@
 package eu.druglogics.drabme.input;
 
+import eu.druglogics.drabme.util.AvailableProcessors;
 import eu.druglogics.gitsbe.util.Logger;
 
 import java.io.File;
@@ -20,6 +21,13 @@ public class Config extends ConfigParametersDrabme {
     private Config(String filename, Logger logger) throws Exception {
         this.logger = logger;
         loadConfigFile(filename);
+        checkHierarchicalScreening();
+
+        if (!parameterMap.containsKey("parallel_sim_num")) {
+            parallel_sim_num = AvailableProcessors.detect();
+            logger.outputStringMessage(3, "Number of parallel simulations not set, using the "
+                + "available processors: " + parallel_sim_num);
+        }
     }
 
     public static Config getInstance() {
@@ -91,6 +99,104 @@ public class Config extends ConfigParametersDrabme {
                     synergy_method = value;
                     checkSynergyMethod();
                     break;
+
+                case "attractor_cache_size":
+                    attractor_cache_size = Integer.parseInt(value);
+                    checkNonNegative(parameterName, attractor_cache_size);
+                    break;
+
+                case "attractor_store_dir":
+                    attractor_store_dir = value;
+                    break;
+
+                case "deduplicate_models":
+                    deduplicate_models = Boolean.parseBoolean(value);
+                    break;
+
+                case "model_slicing":
+                    model_slicing = Boolean.parseBoolean(value);
+                    break;
+
+                case "constant_propagation":
+                    constant_propagation = Boolean.parseBoolean(value);
+                    break;
+
+                case "max_external_processes":
+                    max_external_processes = Integer.parseInt(value);
+                    checkNonNegative(parameterName, max_external_processes);
+                    break;
+
+                case "attractor_worker_command":
+                    attractor_worker_command = value;
+                    break;
+
+                case "attractor_timeout":
+                    attractor_timeout = Integer.parseInt(value);
+                    checkNonNegative(parameterName, attractor_timeout);
+                    break;
+
+                case "model_timeout":
+                    model_timeout = Integer.parseInt(value);
+                    checkNonNegative(parameterName, model_timeout);
+                    break;
+
+                case "timeout_fallback":
+                    timeout_fallback = value;
+                    checkTimeoutFallback();
+                    break;
+
+                case "off_heap_responses":
+                    off_heap_responses = Boolean.parseBoolean(value);
+                    break;
+
+                case "deduplicate_perturbations":
+                    deduplicate_perturbations = Boolean.parseBoolean(value);
+                    break;
+
+                case "skip_na_combinations":
+                    skip_na_combinations = Boolean.parseBoolean(value);
+                    break;
+
+                case "skipped_combination_responses":
+                    skipped_combination_responses = Boolean.parseBoolean(value);
+                    break;
+
+                case "hierarchical_screening":
+                    hierarchical_screening = Boolean.parseBoolean(value);
+                    break;
+
+                case "screening_threshold":
+                    screening_threshold = Float.parseFloat(value);
+                    checkNonNegative(parameterName, screening_threshold);
+                    break;
+
+                case "sequential_sampling":
+                    sequential_sampling = Boolean.parseBoolean(value);
+                    break;
+
+                case "sampling_tolerance":
+                    sampling_tolerance = Float.parseFloat(value);
+                    checkSamplingTolerance();
+                    break;
+
+                case "sampling_min_models":
+                    sampling_min_models = Integer.parseInt(value);
+                    checkNonNegative(parameterName, sampling_min_models);
+                    break;
+
+                case "sampling_seed":
+                    sampling_seed = Integer.parseInt(value);
+                    break;
+
+                case "snapshot_models":
+                    snapshot_models = Integer.parseInt(value);
+                    checkNonNegative(parameterName, snapshot_models);
+                    break;
+
+                case "snapshot_interval":
+                    snapshot_interval = Integer.parseInt(value);
+                    checkNonNegative(parameterName, snapshot_interval);
+                    break;
             }
         }
     }
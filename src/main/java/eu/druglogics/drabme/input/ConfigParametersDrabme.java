@@ -10,6 +10,28 @@ public class ConfigParametersDrabme extends ConfigParametersGlobal {
 
     public int max_drug_comb_size;
     public String synergy_method = "hsa";
+    public int attractor_cache_size = 0;
+    public String attractor_store_dir = "";
+    public boolean deduplicate_models = false;
+    public boolean model_slicing = false;
+    public boolean constant_propagation = false;
+    public int max_external_processes = 0;
+    public String attractor_worker_command = "";
+    public int attractor_timeout = 0;
+    public int model_timeout = 0;
+    public String timeout_fallback = "NA";
+    public boolean off_heap_responses = false;
+    public boolean deduplicate_perturbations = false;
+    public boolean skip_na_combinations = false;
+    public boolean skipped_combination_responses = false;
+    public boolean hierarchical_screening = false;
+    public float screening_threshold = 0;
+    public boolean sequential_sampling = false;
+    public float sampling_tolerance = 0.05f;
+    public int sampling_min_models = 50;
+    public int sampling_seed = 0;
+    public int snapshot_models = 0;
+    public int snapshot_interval = 0;
 
     public int getCombinationSize() {
         return max_drug_comb_size;
@@ -19,12 +41,168 @@ public class ConfigParametersDrabme extends ConfigParametersGlobal {
         return synergy_method;
     }
 
+    public int getAttractorCacheSize() {
+        return attractor_cache_size;
+    }
+
+    public String getAttractorStoreDirectory() {
+        return attractor_store_dir;
+    }
+
+    public boolean deduplicateModels() {
+        return deduplicate_models;
+    }
+
+    public boolean useModelSlicing() {
+        return model_slicing;
+    }
+
+    public boolean useConstantPropagation() {
+        return constant_propagation;
+    }
+
+    public int getMaxExternalProcesses() {
+        return max_external_processes;
+    }
+
+    public String getAttractorWorkerCommand() {
+        return attractor_worker_command;
+    }
+
+    /**
+     * @return the time limit of an attractor calculation in seconds (0 for no limit)
+     */
+    public int getAttractorTimeout() {
+        return attractor_timeout;
+    }
+
+    /**
+     * @return the time limit of the simulation of a model in seconds (0 for no limit)
+     */
+    public int getModelTimeout() {
+        return model_timeout;
+    }
+
+    public String getTimeoutFallback() {
+        return timeout_fallback;
+    }
+
+    public boolean useOffHeapResponses() {
+        return off_heap_responses;
+    }
+
+    public boolean deduplicatePerturbations() {
+        return deduplicate_perturbations;
+    }
+
+    public boolean skipNACombinations() {
+        return skip_na_combinations;
+    }
+
+    public boolean calculateSkippedCombinationResponses() {
+        return skipped_combination_responses;
+    }
+
+    public boolean useHierarchicalScreening() {
+        return hierarchical_screening;
+    }
+
+    /**
+     * @return the minimum absolute ensemble-wise response excess of a drug combination
+     * for its supersets to be simulated in the hierarchical screening
+     */
+    public float getScreeningThreshold() {
+        return screening_threshold;
+    }
+
+    public boolean useSequentialSampling() {
+        return sequential_sampling;
+    }
+
+    /**
+     * @return the maximum width of the confidence interval of the mean (normalized)
+     * response and the synergy fraction of a perturbation, for its sampling to stop
+     */
+    public float getSamplingTolerance() {
+        return sampling_tolerance;
+    }
+
+    public int getSamplingMinModels() {
+        return sampling_min_models;
+    }
+
+    public int getSamplingSeed() {
+        return sampling_seed;
+    }
+
+    /**
+     * @return the number of models between two snapshots of the ensemble-wise results
+     * (0 for no snapshots by number of models)
+     */
+    public int getSnapshotModels() {
+        return snapshot_models;
+    }
+
+    /**
+     * @return the minimum time between two snapshots of the ensemble-wise results in
+     * seconds (0 for no snapshots by time)
+     */
+    public int getSnapshotInterval() {
+        return snapshot_interval;
+    }
+
     public String[] getParameters() {
         Field[] fields = ConfigParametersDrabme.class.getDeclaredFields();
 
         return Arrays.stream(fields).map(Field::getName).toArray(String[]::new);
     }
 
+    /**
+     * Besides the tools supported by Gitsbe, drabme's own pure-Java stable state
+     * solver can be selected with the <i>drabme_native_stable_states</i> value.
+     */
+    @Override
+    public void checkAttractorTool() throws ConfigurationException {
+        if (!attractor_tool.equals("drabme_native_stable_states")) {
+            super.checkAttractorTool();
+        }
+    }
+
+    public void checkTimeoutFallback() throws ConfigurationException {
+        if (!timeout_fallback.equals("NA") && !timeout_fallback.equals("trapspaces")
+            && !timeout_fallback.equals("stable_states")) {
+            throw new ConfigurationException("Timeout fallback `" + timeout_fallback + "` not " +
+                "recognised: it must be either `NA`, `trapspaces` or `stable_states`");
+        }
+    }
+
+    /**
+     * For the numeric parameters where 0 means no limit (or no cache, snapshots, etc.)
+     * and a negative value has no meaning.
+     *
+     * @param parameter the name of the parameter
+     * @param value
+     */
+    public void checkHierarchicalScreening() throws ConfigurationException {
+        if (hierarchical_screening && sequential_sampling) {
+            throw new ConfigurationException("Hierarchical screening cannot be used with sequential " +
+                "sampling: the responses of the next level need every model of the previous one");
+        }
+    }
+
+    public void checkNonNegative(String parameter, float value) throws ConfigurationException {
+        if (value < 0) {
+            throw new ConfigurationException("Parameter `" + parameter + "` cannot be negative: " + value);
+        }
+    }
+
+    public void checkSamplingTolerance() throws ConfigurationException {
+        if (!(sampling_tolerance > 0)) {
+            throw new ConfigurationException("Sampling tolerance `" + sampling_tolerance + "` must be " +
+                "a positive number");
+        }
+    }
+
     public void checkSynergyMethod() throws ConfigurationException {
         if (!synergy_method.equals("hsa") && !synergy_method.equals("bliss")) {
             throw new ConfigurationException("Synergy method `" + synergy_method + "` not " +
@@ -0,0 +1,30 @@
+package eu.druglogics.drabme.perturbation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Numbers the drug combinations (ordinals 0, 1, ...), so that the {@link ModelPredictions}
+ * of every model can be stored by ordinal instead of by combination name. The index of a
+ * {@link PerturbationPanel} holds its drug combinations in panel order. Immutable, so it
+ * can be shared by the models that are simulated in parallel.
+ */
+class CombinationIndex {
+
+	private final ArrayList<String> names;
+
+	/**
+	 * @param names the drug combinations, in ordinal order
+	 */
+	CombinationIndex(List<String> names) {
+		this.names = new ArrayList<>(names);
+	}
+
+	String getName(int ordinal) {
+		return names.get(ordinal);
+	}
+
+	int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,110 @@
+package eu.druglogics.drabme.perturbation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshots of the ensemble-wise reports (responses and synergies) from the partial
+ * results of a long run, so that they can be looked at before the run ends. The
+ * average responses are calculated from the responses stored so far in the
+ * {@link ResponseMatrix} of the panel (the models that are still simulated have none),
+ * taken from the statistics that every perturbation keeps up to date, so a snapshot
+ * costs the same for any number of models.
+ *
+ * <br/><br/>
+ * The snapshot files have the same columns as the final <i>ensemblewise_responses.tab</i>
+ * and <i>ensemblewise_synergies.tab</i> files, after a first line with the number of
+ * models covered. Every snapshot is written to a temporary file that then replaces the
+ * previous one atomically, so a reader never sees a partially written snapshot.
+ */
+public class EnsembleSnapshot {
+
+	private final File responsesFile;
+	private final File synergiesFile;
+	private int snapshots = 0;
+
+	/**
+	 * @param directory the output directory
+	 * @param projectName
+	 */
+	public EnsembleSnapshot(String directory, String projectName) {
+		this.responsesFile = new File(directory, projectName + "_ensemblewise_responses.snapshot.tab");
+		this.synergiesFile = new File(directory, projectName + "_ensemblewise_synergies.snapshot.tab");
+	}
+
+	/**
+	 * @param perturbationPanel
+	 * @param models the number of models whose results were added to the panel
+	 * @param totalModels the number of models of the ensemble
+	 * @throws IOException
+	 */
+	public void write(PerturbationPanel perturbationPanel, int models, int totalModels) throws IOException {
+		Perturbation[] perturbations = perturbationPanel.getPerturbations();
+		double[] averageResponses = new double[perturbations.length];
+		for (int index = 0; index < perturbations.length; index++) {
+			averageResponses[index] = perturbations[index].getCurrentAveragePredictedResponse();
+		}
+
+		String header = "# Snapshot " + (snapshots + 1) + ": " + models + " out of " + totalModels + " models\n";
+
+		StringBuilder responses = new StringBuilder(header);
+		responses.append("Perturbation\tEnsemble average response\n");
+		for (int index = 0; index < perturbations.length; index++) {
+			responses.append(perturbations[index].getName()).append('\t').append(averageResponses[index]).append('\n');
+		}
+
+		StringBuilder synergies = new StringBuilder(header);
+		synergies.append("Perturbation\tResponse excess over subset\n");
+		for (int index = 0; index < perturbations.length; index++) {
+			if (perturbations[index].getDrugs().length >= 2) {
+				synergies.append(perturbations[index].getName()).append('\t')
+					.append(perturbationPanel.getAverageResponseExcessOverSubsets(index, i -> averageResponses[i]))
+					.append('\n');
+			}
+		}
+
+		writeAtomically(responsesFile, responses.toString());
+		writeAtomically(synergiesFile, synergies.toString());
+		snapshots++;
+	}
+
+	private static void writeAtomically(File file, String content) throws IOException {
+		Path temporary = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+			file.getName(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+				writer.write(content);
+			}
+
+			try {
+				Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @return the number of snapshots written
+	 */
+	public int getSnapshots() {
+		return snapshots;
+	}
+
+	public File getResponsesFile() {
+		return responsesFile;
+	}
+
+	public File getSynergiesFile() {
+		return synergiesFile;
+	}
+}
@@ -1,6 +1,7 @@
 package eu.druglogics.drabme.perturbation;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,33 +9,100 @@ import java.util.Map;
  * This class stores for each (response) model its predictions for each drug
  * combination. The prediction can be either a synergy (1), a non-synergy (0),
  * or NA (the case where the respective perturbation drugs or any of the subset
- * drugs were applied to a model which resulted in no stable states)
- * 
+ * drugs were applied to a model which resulted in no stable states).
+ * The predictions of a model can be added from parallel simulation tasks.
+ *
+ * <br/><br/>
+ * The predictions are stored as 2 bits per drug combination, at the ordinal of the
+ * combination in a {@link CombinationIndex} (the one of the {@link PerturbationPanel}
+ * is shared by all the models).
+ *
  * @author john
  *
  */
 public class ModelPredictions {
+
+	// the 2-bit prediction codes, see getPrediction(int)
+	static final int NO_PREDICTION = 0;
+	static final int NON_SYNERGY = 1;
+	static final int SYNERGY = 2;
+	static final int NA = 3;
+	private static final String[] PREDICTIONS = { null, "0", "1", "NA" };
+
+	private static final int CELLS_PER_WORD = Long.SIZE / 2;
+
 	private String modelName;
-	private Map<String, String> drugPredictions;
+	private CombinationIndex combinationIndex;
+	private long[] predictions;
 
-	ModelPredictions(String modelName) {
+	ModelPredictions(String modelName, CombinationIndex combinationIndex) {
 		this.modelName = modelName;
-		drugPredictions = new HashMap<>();
+		this.combinationIndex = combinationIndex;
+		this.predictions = new long[getWords(combinationIndex.size())];
 	}
 
-	void addSynergyPrediction(String drugCombination) {
-		drugPredictions.put(drugCombination, "1");
+	private static int getWords(int cells) {
+		return (cells + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
 	}
 
-	void addNonSynergyPrediction(String drugCombination) {
-		drugPredictions.put(drugCombination, "0");
+	/**
+	 * @param ordinal the ordinal of the drug combination in the {@link CombinationIndex}
+	 *                of these predictions (see {@link PerturbationPanel#getCombinationOrdinal(int)})
+	 */
+	synchronized void addSynergyPrediction(int ordinal) {
+		setPrediction(ordinal, SYNERGY);
 	}
 
-	void addNAPrediction(String drugCombination) {
-		drugPredictions.put(drugCombination, "NA");
+	synchronized void addNonSynergyPrediction(int ordinal) {
+		setPrediction(ordinal, NON_SYNERGY);
 	}
 
-	public String getPredictions() {
+	synchronized void addNAPrediction(int ordinal) {
+		setPrediction(ordinal, NA);
+	}
+
+	private void setPrediction(int ordinal, int prediction) {
+		if (ordinal < 0 || ordinal >= combinationIndex.size())
+			throw new IllegalArgumentException("Drug combination ordinal " + ordinal
+				+ " is not in the combination index");
+
+		int word = ordinal / CELLS_PER_WORD;
+		int shift = 2 * (ordinal % CELLS_PER_WORD);
+		predictions[word] = (predictions[word] & ~(3L << shift)) | ((long) prediction << shift);
+	}
+
+	/**
+	 * @param ordinal the ordinal of the drug combination in the {@link CombinationIndex}
+	 *                of these predictions (see {@link PerturbationPanel#getCombinationOrdinal(int)})
+	 * @return {@link #SYNERGY}, {@link #NON_SYNERGY}, {@link #NA} or {@link #NO_PREDICTION}
+	 * (also for an ordinal that is not in the index, e.g. -1 for a single drug)
+	 */
+	synchronized int getPrediction(int ordinal) {
+		int word = ordinal / CELLS_PER_WORD;
+		if (ordinal < 0 || word >= predictions.length)
+			return NO_PREDICTION;
+
+		return (int) (predictions[word] >>> (2 * (ordinal % CELLS_PER_WORD))) & 3;
+	}
+
+	/**
+	 * @param modelName
+	 * @return a copy of these predictions for another model with the given name
+	 */
+	synchronized ModelPredictions copy(String modelName) {
+		ModelPredictions modelPredictions = new ModelPredictions(modelName, combinationIndex);
+		modelPredictions.predictions = predictions.clone();
+		return modelPredictions;
+	}
+
+	public synchronized String getPredictions() {
+		Map<String, String> drugPredictions = new HashMap<>();
+		for (int ordinal = 0; ordinal < combinationIndex.size(); ordinal++) {
+			int prediction = getPrediction(ordinal);
+			if (prediction != NO_PREDICTION)
+				drugPredictions.put(combinationIndex.getName(ordinal), PREDICTIONS[prediction]);
+		}
+
 		StringBuilder result = new StringBuilder();
 
 		for (Map.Entry<String, String> entry : drugPredictions.entrySet()) {
@@ -46,21 +114,27 @@ public class ModelPredictions {
 	}
 
 	/**
-	 * Return a tab-seperated String starting with the <i>modelName</i> and then the
-	 * prediction value for each drug combination as in the order specified in the
-	 * DrugCombinationsList
-	 * 
-	 * @param drugCombinationsList
+	 * Writes a tab-separated line starting with the <i>modelName</i> and then the
+	 * prediction for each of the given drug combinations ("1", "0", "NA" or "null").
+	 *
+	 * @param writer
+	 * @param ordinals the ordinals of the drug combinations to write, in column order
+	 * @throws IOException
 	 */
-	public String getModelPredictionsVerbose(ArrayList<String> drugCombinationsList) {
-		StringBuilder result = new StringBuilder(getModelName());
-
-		for (String drugCombination : drugCombinationsList) {
-			String str = "\t" + drugPredictions.get(drugCombination);
-			result.append(str);
+	synchronized void writeModelPredictions(Writer writer, int[] ordinals) throws IOException {
+		writer.write(getModelName());
+		for (int ordinal : ordinals) {
+			writer.write('\t');
+			writer.write(String.valueOf(PREDICTIONS[getPrediction(ordinal)]));
 		}
+		writer.write('\n');
+	}
 
-		return result.toString();
+	/**
+	 * @return the index that the predictions of this model are stored by
+	 */
+	CombinationIndex getCombinationIndex() {
+		return combinationIndex;
 	}
 
 	String getModelName() {
@@ -0,0 +1,75 @@
+package eu.druglogics.drabme.perturbation;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the <i>model_predictions.tab</i> file: a header with the drug combinations of
+ * the {@link PerturbationPanel} and a row per model with its predictions, streamed
+ * straight from the {@link ModelPredictions} of every model.
+ */
+public class ModelPredictionsWriter implements Closeable {
+
+	private final BufferedWriter writer;
+	private final CombinationIndex combinationIndex;
+	private final int[] ordinals;
+
+	/**
+	 * Creates the file and writes the header.
+	 *
+	 * @param filename
+	 * @param perturbationPanel
+	 * @throws IOException
+	 */
+	public ModelPredictionsWriter(String filename, PerturbationPanel perturbationPanel) throws IOException {
+		this.writer = new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(filename), StandardCharsets.UTF_8));
+		this.combinationIndex = perturbationPanel.getCombinationIndex();
+
+		// the columns are the drug combinations in panel order, which is also the
+		// ordinal order of the combination index of the panel
+		Perturbation[] perturbations = perturbationPanel.getPerturbations();
+		int[] columns = new int[perturbations.length];
+		int combinations = 0;
+		writer.write("ModelName");
+		for (int index = 0; index < perturbations.length; index++) {
+			int ordinal = perturbationPanel.getCombinationOrdinal(index);
+			if (ordinal < 0)
+				continue;
+
+			if (ordinal != combinations || !combinationIndex.getName(ordinal).equals(perturbations[index].getName()))
+				throw new IllegalStateException("Drug combination " + perturbations[index].getName()
+					+ " has ordinal " + ordinal + " instead of " + combinations);
+
+			writer.write("\t" + perturbations[index].getName());
+			columns[combinations++] = ordinal;
+		}
+		writer.write('\n');
+
+		this.ordinals = Arrays.copyOf(columns, combinations);
+	}
+
+	/**
+	 * Writes the row of a model.
+	 *
+	 * @param modelPredictions predictions stored by the combination index of the panel
+	 * @throws IOException
+	 */
+	public void write(ModelPredictions modelPredictions) throws IOException {
+		if (modelPredictions.getCombinationIndex() != combinationIndex)
+			throw new IllegalArgumentException("The predictions of " + modelPredictions.getModelName()
+				+ " are not stored by the combination index of the perturbation panel");
+
+		modelPredictions.writeModelPredictions(writer, ordinals);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,60 @@
+package eu.druglogics.drabme.perturbation;
+
+/**
+ * The results of a simulated model: the global output for every perturbation of the
+ * {@link PerturbationPanel} (in panel order, NaN when the perturbed model has no global
+ * output) and the synergy predictions. This is all that is needed to add the model to
+ * the results once more, without the {@link ResponseModel}: for a model with identical
+ * equations or for a model restored from a {@link ResponseCheckpoint}.
+ */
+public class ModelResponses {
+
+	private final float[] responses;
+	private final ModelPredictions modelPredictions;
+
+	ModelResponses(float[] responses, ModelPredictions modelPredictions) {
+		this.responses = responses;
+		this.modelPredictions = modelPredictions;
+	}
+
+	/**
+	 * Adds the responses and synergies to the perturbations of the panel on behalf of
+	 * the model with the given index and name.
+	 *
+	 * @param perturbationPanel the panel the model was simulated with
+	 * @param modelIndex the index of the model in the ensemble
+	 * @param modelName
+	 * @return the responses of the model with the given name (a copy of these)
+	 */
+	public ModelResponses replay(PerturbationPanel perturbationPanel, int modelIndex, String modelName) {
+		Perturbation[] perturbations = perturbationPanel.getPerturbations();
+		for (int index = 0; index < perturbations.length; index++) {
+			Perturbation perturbation = perturbations[index];
+
+			perturbation.setPrediction(modelIndex, responses[index]);
+
+			int prediction = modelPredictions.getPrediction(perturbationPanel.getCombinationOrdinal(index));
+			if (prediction == ModelPredictions.SYNERGY)
+				perturbation.addSynergyPrediction();
+			else if (prediction == ModelPredictions.NON_SYNERGY)
+				perturbation.addNonSynergyPrediction();
+		}
+
+		return new ModelResponses(responses, modelPredictions.copy(modelName));
+	}
+
+	public String getModelName() {
+		return modelPredictions.getModelName();
+	}
+
+	/**
+	 * @return the global output for every perturbation, NaN if there is none
+	 */
+	float[] getResponses() {
+		return responses;
+	}
+
+	public ModelPredictions getModelPredictions() {
+		return modelPredictions;
+	}
+}
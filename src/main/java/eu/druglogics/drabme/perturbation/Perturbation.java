@@ -5,18 +5,23 @@ import eu.druglogics.drabme.drug.DrugPanel;
 import eu.druglogics.gitsbe.input.ModelOutputs;
 import eu.druglogics.gitsbe.util.Logger;
 
-import java.util.ArrayList;
-
-import static eu.druglogics.gitsbe.util.Util.convertFloats;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Perturbation {
 
 	private Drug[] drugs;
-	private int perturbationHash;
-	private ArrayList<Float> predictedResponses;
+	private BitSet drugMask;
+	private ResponseMatrix responseMatrix;
+	private int responseIndex;
+	private final AtomicInteger appendedResponses = new AtomicInteger();
+
+	private final LongAdder predictedSynergies = new LongAdder();
+	private final LongAdder predictedNonSynergies = new LongAdder();
 
-	private int predictedSynergies;
-	private int predictedNonSynergies;
+	// statistics of the added responses, kept up to date as they are added
+	private ResponseStatistics statistics;
 
 	private double mean;
 	private double sd;
@@ -26,13 +31,21 @@ public class Perturbation {
 	protected Logger logger;
 
 	public Perturbation(Drug[] perturbation, Logger logger) {
+		this(perturbation, null, logger);
+	}
+
+	/**
+	 * @param perturbation
+	 * @param drugMask the identity of the drug set in its {@link PerturbationPanel} (see
+	 *                 {@link DrugPanel#getDrugSetMask(Drug[])})
+	 * @param logger
+	 */
+	Perturbation(Drug[] perturbation, BitSet drugMask, Logger logger) {
 
 		this.logger = logger;
+		this.drugMask = drugMask;
 		drugs = perturbation;
-		predictedResponses = new ArrayList<>();
-
-		predictedSynergies = 0;
-		predictedNonSynergies = 0;
+		this.statistics = new ResponseStatistics();
 
 		// Report if any drugs passed are without defined targets
 		for (Drug drug : drugs) {
@@ -41,32 +54,88 @@ public class Perturbation {
 					"Added drug `" + drug.getName() + "` which has no targets to perturbations");
 			}
 		}
-
-		perturbationHash = DrugPanel.getDrugSetHash(drugs);
 	}
 
-	synchronized void addSynergyPrediction() {
-		predictedSynergies++;
+	void addSynergyPrediction() {
+		predictedSynergies.increment();
 	}
 
-	synchronized void addNonSynergyPrediction() {
-		predictedNonSynergies++;
+	void addNonSynergyPrediction() {
+		predictedNonSynergies.increment();
 	}
 
 	public int getSynergyPredictions() {
-		return predictedSynergies;
+		return predictedSynergies.intValue();
 	}
 
 	public int getNonSynergyPredictions() {
-		return predictedNonSynergies;
+		return predictedNonSynergies.intValue();
 	}
 
-	synchronized void addPrediction(float response) {
-		predictedResponses.add(response);
+	/**
+	 * Stores the responses of this perturbation in the given column of a (shared)
+	 * response matrix, e.g. the one of its {@link PerturbationPanel}. The responses added
+	 * so far are discarded. A perturbation that is not in a panel gets a matrix of its own
+	 * when its first response is added.
+	 *
+	 * @param responseMatrix
+	 * @param responseIndex
+	 */
+	void setResponseMatrix(ResponseMatrix responseMatrix, int responseIndex) {
+		this.responseMatrix = responseMatrix;
+		this.responseIndex = responseIndex;
+
+		appendedResponses.set(0);
+		this.statistics = new ResponseStatistics();
 	}
 
+	/**
+	 * Adds the response of the next model (models are counted in the order their
+	 * responses are added). Use {@link #setPrediction(int, float)} when the index of
+	 * the model is known.
+	 *
+	 * @param response
+	 */
+	void addPrediction(float response) {
+		setPrediction(appendedResponses.getAndIncrement(), response);
+	}
+
+	/**
+	 * Stores the response of the given model, replacing the one stored before (if any)
+	 * also in the statistics. The responses are added by the thread that collects the
+	 * results of the models, in model order: the statistics are confined to it, so a
+	 * response added by another thread throws an {@link IllegalStateException} (see
+	 * {@link ResponseStatistics}).
+	 *
+	 * @param modelIndex
+	 * @param response the global output of the perturbed model (NaN for no response)
+	 */
+	void setPrediction(int modelIndex, float response) {
+		if (responseMatrix == null)
+			responseMatrix = new ResponseMatrix(1);
+
+		float previousResponse = responseMatrix.get(modelIndex, responseIndex);
+		if (!Float.isNaN(previousResponse))
+			statistics.remove(previousResponse);
+
+		responseMatrix.set(modelIndex, responseIndex, response);
+		if (!Float.isNaN(response))
+			statistics.add(response);
+	}
+
+	/**
+	 * @param modelIndex
+	 * @return the response of the given model, NaN if it has none
+	 */
+	public float getPrediction(int modelIndex) {
+		return (responseMatrix != null) ? responseMatrix.get(modelIndex, responseIndex) : Float.NaN;
+	}
+
+	/**
+	 * @return the responses of the models that have one, in model order
+	 */
 	public float[] getPredictions() {
-		return convertFloats(predictedResponses);
+		return (responseMatrix != null) ? responseMatrix.getResponses(responseIndex) : new float[0];
 	}
 
 	/**
@@ -76,38 +145,30 @@ public class Perturbation {
 	 * function. Only then the {@link #getAveragePredictedResponse()} and
 	 * {@link #getStandardDeviationPredictedResponse()} functions can be used.
 	 *
+	 * <br/><br/>
+	 * The statistics are kept up to date while the responses are added (see
+	 * {@link ResponseStatistics}), so this only takes their current values.
 	 */
 	public void calculateStatistics() {
-		float responseSum = 0;
-		int numPredictions = predictedResponses.size();
-
-		for (Float predictedResponse : predictedResponses) {
-			responseSum += predictedResponse;
-		}
-
-		double mean = 0;
-		double var = 0;
-		double sd = 0;
-
-		if (numPredictions > 0) {
-			mean = (double) responseSum / (double) numPredictions;
-
-			if (numPredictions > 1) {
-				for (float prediction : predictedResponses) {
-					var += (prediction - mean) * (prediction - mean);
-				}
-				sd = Math.sqrt(var / (numPredictions - 1));
-			}
-		}
-
-		this.mean = mean;
-		this.sd = sd;
+		this.mean = statistics.getMean();
+		this.sd = statistics.getStandardDeviation();
 
 		isStatisticsCalculated = true;
 		logger.outputStringMessage(1, "Statistics calculated for perturbation: "
 				+ PerturbationPanel.getCombinationName(drugs));
 	}
 
+	/**
+	 * Unlike {@link #getAveragePredictedResponse()}, this is the mean of the responses
+	 * added so far, also while the responses are still being added (e.g. for a
+	 * {@link EnsembleSnapshot}).
+	 *
+	 * @return the current mean of the responses (0 if there are none)
+	 */
+	double getCurrentAveragePredictedResponse() {
+		return statistics.getMean();
+	}
+
 	public double getAveragePredictedResponse() {
 		if (!isStatisticsCalculated)
 			calculateStatistics();
@@ -155,8 +216,13 @@ public class Perturbation {
 		return PerturbationPanel.getCombinationName(drugs);
 	}
 
-	int getPerturbationHash() {
-		return perturbationHash;
+	/**
+	 * @return the identity of the drug set of the perturbation in its panel (see
+	 * {@link DrugPanel#getDrugSetMask(Drug[])}), or <code>null</code> if it is not in a
+	 * {@link PerturbationPanel}. Not to be modified
+	 */
+	BitSet getDrugMask() {
+		return drugMask;
 	}
 
 }
@@ -1,5 +1,12 @@
 package eu.druglogics.drabme.perturbation;
 
+import eu.druglogics.drabme.attractor.AttractorCache;
+import eu.druglogics.drabme.attractor.AttractorStore;
+import eu.druglogics.drabme.attractor.AttractorWorkerPool;
+import eu.druglogics.drabme.attractor.BooleanNetwork;
+import eu.druglogics.drabme.attractor.StableStateSolver;
+import eu.druglogics.drabme.attractor.TrapSpaceSolver;
+import eu.druglogics.drabme.drug.Drug;
 import eu.druglogics.gitsbe.input.ModelOutputs;
 import eu.druglogics.gitsbe.input.OutputWeight;
 import eu.druglogics.gitsbe.model.BooleanEquation;
@@ -7,6 +14,11 @@ import eu.druglogics.gitsbe.model.BooleanModel;
 import eu.druglogics.gitsbe.util.Logger;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Similar to the BooleanModel in Gitsbe, but adds drugs
@@ -20,7 +32,13 @@ public class PerturbationModel extends BooleanModel {
 	private Perturbation perturbation;
 	private float globalOutput;
 	private boolean hasGlobalOutput = false;
+	private ArrayList<String> inMemoryAttractors = null;
+	private boolean[] modelSlice = null;
+	private Semaphore externalProcesses = null;
+	private AttractorWorkerPool attractorWorkers = null;
+	private ArrayList<String> batchAttractors = null;
 	private Logger logger;
+	private static final AtomicLong timedCopies = new AtomicLong();
 
 	/**
 	 * Constructor for building a {@link PerturbationModel} out of a
@@ -54,6 +72,412 @@ public class PerturbationModel extends BooleanModel {
 		}
 	}
 
+	/**
+	 * Copy of an already perturbed model, see {@link #copyForTimedCalculation()}.
+	 */
+	private PerturbationModel(PerturbationModel perturbationModel, String modelName) {
+		super(perturbationModel, perturbationModel.logger);
+
+		this.modelName = modelName;
+		this.perturbation = perturbationModel.perturbation;
+		this.logger = perturbationModel.logger;
+		this.modelSlice = perturbationModel.modelSlice;
+		this.externalProcesses = perturbationModel.externalProcesses;
+		this.attractorWorkers = perturbationModel.attractorWorkers;
+		this.batchAttractors = perturbationModel.batchAttractors;
+		perturbationModel.batchAttractors = null;
+	}
+
+	/**
+	 * An attractor calculation with a time limit is abandoned when the time runs out,
+	 * but it may go on in the background for a while: it runs on a copy of this model
+	 * (same equations, attractor tool and settings), so that an abandoned calculation
+	 * cannot change this model. The copy has a name of its own, which is also in the
+	 * command line of the attractor tool processes it starts (through the model file),
+	 * so these processes can be found and destroyed.
+	 *
+	 * @return a copy of this model, whose attractors are {@link #setAttractors(ArrayList)
+	 * set} on this model once calculated
+	 */
+	PerturbationModel copyForTimedCalculation() {
+		return new PerturbationModel(this, modelName + "_timed_" + timedCopies.incrementAndGet());
+	}
+
+	/**
+	 * @param attractors the attractors of this model, e.g. calculated on a
+	 * {@link #copyForTimedCalculation() copy}
+	 */
+	void setAttractors(ArrayList<String> attractors) {
+		inMemoryAttractors = attractors;
+	}
+
+	/**
+	 * @param attractorTool
+	 * @return true if the attractors of the given tool are calculated by an external
+	 * process (a script or a Python tool), i.e. the calculation mostly waits
+	 */
+	public static boolean usesExternalProcess(String attractorTool) {
+		return attractorTool.equals("bnet_reduction") || attractorTool.equals("bnet_reduction_reduced")
+			|| attractorTool.equals("mpbn_trapspaces");
+	}
+
+	/**
+	 * The {@link #setBatchAttractors(ArrayList) batch attractors} are used if set.
+	 * The <i>drabme_native_stable_states</i> attractor tool is not known to Gitsbe: its
+	 * stable states are always found in memory with the {@link StableStateSolver}.
+	 * The tools that run as external processes are sent to the persistent
+	 * {@link #setAttractorWorkers(AttractorWorkerPool) attractor workers} (if set).
+	 * Every other tool is handled by {@link BooleanModel#calculateAttractors(String)},
+	 * with at most as many concurrent external processes as the permits of the
+	 * {@link #setExternalProcessLimit(Semaphore) limit} (if set).
+	 *
+	 * @param directoryOutput
+	 * @throws Exception
+	 */
+	@Override
+	public void calculateAttractors(String directoryOutput) throws Exception {
+		if (batchAttractors != null) {
+			inMemoryAttractors = batchAttractors;
+			batchAttractors = null;
+			logger.outputStringMessage(3, "Attractors (attractor worker batch): " + inMemoryAttractors.size());
+		} else if (getAttractorTool().equals("drabme_native_stable_states")) {
+			calculateStableStatesInMemory();
+		} else if (attractorWorkers != null && usesExternalProcess(getAttractorTool())) {
+			inMemoryAttractors = attractorWorkers.calculateAttractors(getModelBoolNet());
+			logger.outputStringMessage(3, "Attractors (attractor worker): " + inMemoryAttractors.size());
+		} else if (externalProcesses != null && usesExternalProcess(getAttractorTool())) {
+			externalProcesses.acquire();
+			try {
+				super.calculateAttractors(directoryOutput);
+			} finally {
+				externalProcesses.release();
+			}
+		} else {
+			super.calculateAttractors(directoryOutput);
+		}
+	}
+
+	/**
+	 * Finds the stable states of the perturbed model with the {@link StableStateSolver}
+	 * (the <i>drabme_native_stable_states</i> attractor tool), without exporting it to a
+	 * file: the equations are compiled to a {@link BooleanNetwork} and solved in memory.
+	 *
+	 * @throws Exception if the model equations cannot be compiled
+	 */
+	private void calculateStableStatesInMemory() throws Exception {
+		inMemoryAttractors = solveInMemory(getModelBoolNet(), false);
+
+		logger.outputStringMessage(3, "Attractors (in memory): " + inMemoryAttractors.size());
+	}
+
+	/**
+	 * @param boolNet the equations of a model in BoolNet format
+	 * @param trapSpaces true for the minimal trapspaces, false for the stable states
+	 * @return the attractors of the model, found in memory
+	 * @throws Exception if the model equations cannot be compiled
+	 */
+	static ArrayList<String> solveInMemory(ArrayList<String> boolNet, boolean trapSpaces) throws Exception {
+		BooleanNetwork network = new BooleanNetwork(boolNet);
+		return trapSpaces
+			? new TrapSpaceSolver(network).solve()
+			: new StableStateSolver(network).solve();
+	}
+
+	/**
+	 * The perturbed model gets no attractors, so it has no global output (NA), e.g. when
+	 * its attractors could not be calculated in time.
+	 */
+	void setNoAttractors() {
+		inMemoryAttractors = new ArrayList<>();
+	}
+
+	/**
+	 * @param attractorTool
+	 * @return true if the attractors of the given tool are (minimal) trapspaces, false
+	 * if they are stable states
+	 */
+	public static boolean isTrapSpaceTool(String attractorTool) {
+		return attractorTool.equals("biolqm_trapspaces") || attractorTool.equals("mpbn_trapspaces");
+	}
+
+	/**
+	 * Fast path that can be used before {@link #calculateAttractors(String)}: the constants
+	 * of the model (e.g. the fixed drug targets) are propagated through the equations and
+	 * if the result determines the global output, the attractor tool is not needed:
+	 * <ul>
+	 *     <li>every minimal trapspace lies within the propagated subspace, so for the
+	 *     trapspace tools it is enough that every model output node becomes constant. The
+	 *     propagated subspace is then used as the only attractor (it has the same model
+	 *     output states as all the minimal trapspaces)</li>
+	 *     <li>for the stable state tools every node has to become constant, and then the
+	 *     propagated state is the only stable state</li>
+	 * </ul>
+	 *
+	 * @return true if the attractors were found by propagation, false otherwise (then
+	 * nothing is changed)
+	 * @throws Exception if the model equations cannot be compiled
+	 */
+	boolean calculateAttractorsByPropagation() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(getModelBoolNet());
+		byte[] state = network.propagateConstants();
+
+		boolean resolved = true;
+		if (isTrapSpaceTool(getAttractorTool())) {
+			for (OutputWeight outputWeight : ModelOutputs.getInstance().getModelOutputs()) {
+				int node = network.getIndexOfNode(outputWeight.getNodeName());
+				if (node >= 0 && state[node] == BooleanNetwork.FREE)
+					resolved = false;
+			}
+		} else {
+			for (byte value : state) {
+				if (value == BooleanNetwork.FREE)
+					resolved = false;
+			}
+		}
+
+		if (resolved) {
+			inMemoryAttractors = new ArrayList<>();
+			inMemoryAttractors.add(BooleanNetwork.toAttractorString(state));
+			logger.outputStringMessage(3, "Attractors (constant propagation): " + inMemoryAttractors.get(0));
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Calculates the attractors of the perturbed model, or takes them from the given
+	 * cache (when an identical model - same attractor tool and equations - has already
+	 * been simulated in this run) or store (when it was simulated in a previous run).
+	 * Calculated attractors are added to the store.
+	 *
+	 * <br/><br/>
+	 * If a {@link #setModelSlice(boolean[]) model slice} is set, only the equations of
+	 * the slice are used (also for the cache and store keys) and the attractors are
+	 * projected back to the whole model, with '-' for the nodes outside the slice.
+	 * Every minimal trapspace of the whole model projects to a minimal trapspace of the
+	 * slice, but several of them can project to the same one: a projected trapspace is
+	 * added once for each minimal trapspace of the whole model within it, so that the
+	 * {@link #calculateGlobalOutput() global output} is the one of the whole model.
+	 *
+	 * @param directoryOutput the tmp directory for the attractor tools that use files
+	 * @param attractorCache can be <code>null</code> (no caching)
+	 * @param attractorStore can be <code>null</code> (no persistent store)
+	 * @throws Exception
+	 */
+	void calculateAttractors(String directoryOutput, AttractorCache attractorCache, AttractorStore attractorStore)
+		throws Exception {
+		if (modelSlice == null) {
+			findAttractors(directoryOutput, attractorCache, attractorStore);
+			return;
+		}
+
+		ArrayList<BooleanEquation> equations = new ArrayList<>(booleanEquations);
+		ArrayList<String> slicedAttractors;
+		try {
+			booleanEquations.clear();
+			for (int index = 0; index < equations.size(); index++) {
+				if (modelSlice[index])
+					booleanEquations.add(equations.get(index));
+			}
+
+			findAttractors(directoryOutput, attractorCache, attractorStore);
+			slicedAttractors = new ArrayList<>(getAttractors());
+		} finally {
+			booleanEquations.clear();
+			booleanEquations.addAll(equations);
+		}
+
+		ArrayList<String> boolNet = getModelBoolNet();
+		ArrayList<String> attractors = new ArrayList<>();
+		for (String slicedAttractor : slicedAttractors) {
+			char[] attractor = new char[modelSlice.length];
+			for (int index = 0, slicedIndex = 0; index < modelSlice.length; index++) {
+				attractor[index] = modelSlice[index] ? slicedAttractor.charAt(slicedIndex++) : '-';
+			}
+
+			String projectedAttractor = new String(attractor);
+			int multiplicity = countTrapSpacesWithin(boolNet, projectedAttractor);
+			for (int count = 0; count < multiplicity; count++) {
+				attractors.add(projectedAttractor);
+			}
+		}
+		inMemoryAttractors = attractors;
+	}
+
+	/**
+	 * The slice only depends on itself, so the minimal trapspaces of the whole model
+	 * within a minimal trapspace of the slice are those of the rest of the model, with
+	 * the fixed nodes of the slice as constants and its free nodes kept free (a node
+	 * <code>x = !x</code> is free in every trapspace).
+	 *
+	 * @param boolNet the equations of the whole perturbed model
+	 * @param projectedAttractor a minimal trapspace of the slice, projected back to the
+	 *                           whole model
+	 * @return the number of minimal trapspaces of the whole model within the given one
+	 * @throws Exception if the model equations cannot be compiled
+	 */
+	private int countTrapSpacesWithin(ArrayList<String> boolNet, String projectedAttractor) throws Exception {
+		ArrayList<String> restrictedBoolNet = new ArrayList<>();
+		boolean sliceIsWholeModel = true;
+		for (int index = 0; index < boolNet.size(); index++) {
+			if (!modelSlice[index]) {
+				restrictedBoolNet.add(boolNet.get(index));
+				sliceIsWholeModel = false;
+				continue;
+			}
+
+			String line = boolNet.get(index);
+			String node = line.substring(0, line.indexOf(',')).trim();
+			char state = projectedAttractor.charAt(index);
+			restrictedBoolNet.add(node + ", " + ((state == '-') ? "!" + node : String.valueOf(state)));
+		}
+
+		return sliceIsWholeModel ? 1 : solveInMemory(restrictedBoolNet, true).size();
+	}
+
+	private void findAttractors(String directoryOutput, AttractorCache attractorCache, AttractorStore attractorStore)
+		throws Exception {
+		if (attractorCache == null && attractorStore == null) {
+			calculateAttractors(directoryOutput);
+			return;
+		}
+
+		String key = AttractorCache.getKey(getAttractorTool(), getModelBoolNet());
+		Callable<ArrayList<String>> computation = () -> {
+			if (attractorStore != null) {
+				ArrayList<String> storedAttractors = attractorStore.getAttractors(key);
+				if (storedAttractors != null)
+					return storedAttractors;
+			}
+
+			calculateAttractors(directoryOutput);
+			ArrayList<String> attractors = getAttractors();
+			if (attractorStore != null)
+				attractorStore.addAttractors(key, attractors);
+			return attractors;
+		};
+
+		inMemoryAttractors = (attractorCache != null)
+			? attractorCache.getAttractors(key, computation)
+			: computation.call();
+
+		logger.outputStringMessage(3, "Attractors (key: " + key + "): " + inMemoryAttractors.size());
+	}
+
+	/**
+	 * The cone of influence of the model outputs and of the drug targets, i.e. these
+	 * nodes and all their ancestors, is the part of a model that determines the states of
+	 * the output nodes and that every perturbation of the model fixes, so every
+	 * perturbation can use the same slice. The rest of the model only changes how many
+	 * minimal trapspaces of the whole model a minimal trapspace of the slice stands for.
+	 *
+	 * @param booleanModel
+	 * @param drugs the drugs of the perturbations of the model
+	 * @return a flag per equation of the model, true for the equations in the slice
+	 * @throws Exception if the model equations cannot be compiled
+	 */
+	static boolean[] getModelSlice(BooleanModel booleanModel, List<Drug> drugs) throws Exception {
+		ArrayList<String> nodeNames = new ArrayList<>();
+		for (OutputWeight outputWeight : ModelOutputs.getInstance().getModelOutputs()) {
+			nodeNames.add(outputWeight.getNodeName());
+		}
+		for (Drug drug : drugs) {
+			nodeNames.addAll(drug.getTargets());
+		}
+
+		return new BooleanNetwork(booleanModel.getModelBoolNet()).getConeOfInfluence(nodeNames);
+	}
+
+	/**
+	 * The effective perturbation of a model: the nodes that the drugs of the perturbation
+	 * fix (as in the constructor, a later drug overrides an earlier one on a shared
+	 * target) and their values. Targets that are not in the model are left out, so
+	 * perturbations with the same fixings have the same perturbed model and the same
+	 * response.
+	 *
+	 * @param booleanModel the model that is perturbed
+	 * @param perturbation
+	 * @return the fixed value of every fixed node, by the index of its equation
+	 */
+	static TreeMap<Integer, Boolean> getNodeFixings(BooleanModel booleanModel, Perturbation perturbation) {
+		TreeMap<Integer, Boolean> fixings = new TreeMap<>();
+		for (Drug drug : perturbation.getDrugs()) {
+			for (String nodeName : drug.getTargets()) {
+				int index = booleanModel.getIndexOfEquation(nodeName);
+				if (index >= 0)
+					fixings.put(index, drug.getEffect());
+			}
+		}
+
+		return fixings;
+	}
+
+	/**
+	 * @param modelSlice see {@link #getModelSlice(BooleanModel, List)} (computed on the model
+	 *                   this perturbation model is based on) or <code>null</code> to use
+	 *                   the whole model
+	 */
+	void setModelSlice(boolean[] modelSlice) {
+		this.modelSlice = modelSlice;
+	}
+
+	/**
+	 * @param externalProcesses shared between the perturbation models that can run at the
+	 *                          same time, or <code>null</code> for no limit
+	 */
+	void setExternalProcessLimit(Semaphore externalProcesses) {
+		this.externalProcesses = externalProcesses;
+	}
+
+	/**
+	 * @param attractorWorkers shared between the perturbation models, or <code>null</code>
+	 *                         to start a new attractor tool process for every model
+	 */
+	void setAttractorWorkers(AttractorWorkerPool attractorWorkers) {
+		this.attractorWorkers = attractorWorkers;
+	}
+
+	/**
+	 * @return the equations (in BoolNet format) the attractors are calculated on: the
+	 * {@link #setModelSlice(boolean[]) model slice} if set, otherwise the whole model
+	 */
+	ArrayList<String> getSimulatedModelBoolNet() {
+		if (modelSlice == null)
+			return getModelBoolNet();
+
+		ArrayList<BooleanEquation> equations = new ArrayList<>(booleanEquations);
+		try {
+			booleanEquations.clear();
+			for (int index = 0; index < equations.size(); index++) {
+				if (modelSlice[index])
+					booleanEquations.add(equations.get(index));
+			}
+			return getModelBoolNet();
+		} finally {
+			booleanEquations.clear();
+			booleanEquations.addAll(equations);
+		}
+	}
+
+	/**
+	 * @param batchAttractors the attractors of the {@link #getSimulatedModelBoolNet()
+	 *                        simulated equations}, already calculated together with other
+	 *                        models: used (once) instead of the attractor tool
+	 */
+	void setBatchAttractors(ArrayList<String> batchAttractors) {
+		this.batchAttractors = batchAttractors;
+	}
+
+	@Override
+	public boolean hasAttractors() {
+		return (inMemoryAttractors != null) ? !inMemoryAttractors.isEmpty() : super.hasAttractors();
+	}
+
+	@Override
+	public ArrayList<String> getAttractors() {
+		return (inMemoryAttractors != null) ? inMemoryAttractors : super.getAttractors();
+	}
+
 	/**
 	 * Use this function after you have calculated the {@link #calculateAttractors(String)
 	 * attractors} in order to find the <b>non-normalized</b> <i>globaloutput</i> of the
@@ -100,6 +524,23 @@ public class PerturbationModel extends BooleanModel {
 		return globalOutput;
 	}
 
+	/**
+	 * Use this function instead of calculating the attractors and the global output, when
+	 * the response of the perturbed model is already known (e.g. from the previous level
+	 * of a hierarchical screening).
+	 *
+	 * @param globalOutput the non-normalized global output, or NaN for no response
+	 */
+	void setKnownGlobalOutput(float globalOutput) {
+		if (Float.isNaN(globalOutput)) {
+			setNoAttractors();
+			this.hasGlobalOutput = false;
+		} else {
+			this.globalOutput = globalOutput;
+			this.hasGlobalOutput = true;
+		}
+	}
+
 	public Perturbation getPerturbation() {
 		return perturbation;
 	}
@@ -3,9 +3,15 @@ package eu.druglogics.drabme.perturbation;
 import eu.druglogics.drabme.drug.Drug;
 import eu.druglogics.drabme.drug.DrugPanel;
 import eu.druglogics.drabme.input.Config;
+import eu.druglogics.gitsbe.input.ModelOutputs;
 import eu.druglogics.gitsbe.util.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
 
 import static eu.druglogics.gitsbe.util.Util.abort;
 import static java.lang.Math.max;
@@ -14,19 +20,96 @@ import static java.lang.Math.min;
 public class PerturbationPanel {
 
 	private Perturbation[] perturbations;
+	private DrugPanel drugPanel; // the ids of the drugs of the perturbations
+	private ResponseMatrix responseMatrix;
+	private CombinationIndex combinationIndex;
+	private int[] combinationOrdinals;
+	private SubsetLattice subsetLattice;
+	private ResponseMatrix knownResponses = null;
+	private int knownPerturbations = 0;
 	private Logger logger;
 
 	public PerturbationPanel(Drug[][] perturbations, Logger logger) throws Exception {
 		this.logger = logger;
+		this.drugPanel = getDrugPanel(perturbations, logger);
 		this.perturbations = new Perturbation[perturbations.length];
 
 		for (int i = 0; i < perturbations.length; i++) {
-			this.perturbations[i] = new Perturbation(perturbations[i], logger);
+			this.perturbations[i] = newPerturbation(perturbations[i]);
 		}
 
-		this.checkPerturbationHashes();
+		initialize();
+	}
+
+	/**
+	 * Creates the next level of a hierarchical screening: the perturbations of the
+	 * previous level (with the same indexes) followed by the given drug combinations.
+	 * The responses of the previous level are known, so only the new drug combinations
+	 * have to be simulated (see {@link #getKnownResponse(int, int)}).
+	 *
+	 * @param previousLevel a panel whose responses have been calculated
+	 * @param combinations the drug combinations to add, e.g. from
+	 *                     {@link #screenCombinations(Drug[][], float, List)}
+	 * @param logger
+	 * @throws Exception
+	 */
+	public PerturbationPanel(PerturbationPanel previousLevel, Drug[][] combinations, Logger logger) throws Exception {
+		this.logger = logger;
+
+		Perturbation[] previousPerturbations = previousLevel.getPerturbations();
+		Drug[][] drugSets = new Drug[previousPerturbations.length + combinations.length][];
+		for (int i = 0; i < previousPerturbations.length; i++) {
+			drugSets[i] = previousPerturbations[i].getDrugs();
+		}
+		System.arraycopy(combinations, 0, drugSets, previousPerturbations.length, combinations.length);
+
+		this.drugPanel = getDrugPanel(drugSets, logger);
+		this.perturbations = new Perturbation[drugSets.length];
+		for (int i = 0; i < drugSets.length; i++) {
+			this.perturbations[i] = newPerturbation(drugSets[i]);
+		}
+
+		this.knownResponses = previousLevel.getResponseMatrix();
+		this.knownPerturbations = previousPerturbations.length;
+
+		initialize();
+	}
+
+	/**
+	 * @return the panel of the drugs of the given drug sets, in the order they are first
+	 * found
+	 */
+	private static DrugPanel getDrugPanel(Drug[][] drugSets, Logger logger) {
+		ArrayList<Drug> drugs = new ArrayList<>();
+		for (Drug[] drugSet : drugSets) {
+			drugs.addAll(Arrays.asList(drugSet));
+		}
+		return new DrugPanel(drugs, logger);
+	}
+
+	private Perturbation newPerturbation(Drug[] drugs) {
+		return new Perturbation(drugs, drugPanel.getDrugSetMask(drugs), logger);
+	}
+
+	private void initialize() throws Exception {
+		setResponseMatrix(new ResponseMatrix(perturbations.length));
+
+		ArrayList<String> combinationNames = new ArrayList<>();
+		this.combinationOrdinals = new int[perturbations.length];
+		for (int i = 0; i < perturbations.length; i++) {
+			if (perturbations[i].getDrugs().length >= 2) {
+				combinationOrdinals[i] = combinationNames.size();
+				combinationNames.add(perturbations[i].getName());
+			} else {
+				combinationOrdinals[i] = -1;
+			}
+		}
+		this.combinationIndex = new CombinationIndex(combinationNames);
+
+		this.checkPerturbationDrugSets();
+		this.subsetLattice = new SubsetLattice(this.perturbations, drugPanel);
 
-		logger.outputLines(2, this.getCombinationNames(perturbations));
+		logger.outputLines(2, this.getPerturbationNames());
 	}
 
 	/**
@@ -36,21 +119,132 @@ public class PerturbationPanel {
 	 * @return
 	 */
 	int getIndexOfPerturbation(Drug[] drugs) {
-		int index = -1;
+		return subsetLattice.getIndex(drugs);
+	}
+
+	/**
+	 * Returns the indexes of the perturbations that are the subsets of the given one,
+	 * one drug smaller (see {@link SubsetLattice})
+	 *
+	 * @param index the index of a perturbation
+	 */
+	int[] getIndexesOfSubsets(int index) {
+		return subsetLattice.getSubsets(index);
+	}
 
-		int hashA, hashB;
+	/**
+	 * Returns the indexes of the perturbations in lattice order: every perturbation
+	 * comes after its subsets (see {@link SubsetLattice})
+	 */
+	int[] getIndexesInLatticeOrder() {
+		return subsetLattice.getOrder();
+	}
 
-		hashA = DrugPanel.getDrugSetHash(drugs);
+	/**
+	 * Allocates the responses of all the models up front (instead of growing the
+	 * {@link ResponseMatrix} as the responses are added). Use it before any response is
+	 * added, since the existing responses are discarded.
+	 *
+	 * @param modelsNumber
+	 * @param offHeap if true, the responses are stored outside of the Java heap
+	 */
+	public void allocateResponses(int modelsNumber, boolean offHeap) {
+		setResponseMatrix(new ResponseMatrix(perturbations.length, modelsNumber, offHeap));
+	}
 
-		// Go through perturbation list to find condition matching parameter 'drugs'
+	private void setResponseMatrix(ResponseMatrix responseMatrix) {
+		this.responseMatrix = responseMatrix;
 		for (int i = 0; i < perturbations.length; i++) {
-			hashB = perturbations[i].getPerturbationHash();
-			if (hashA == hashB) {
-				return i;
+			perturbations[i].setResponseMatrix(responseMatrix, i);
+		}
+	}
+
+	/**
+	 * @return the responses of every model (row) to every perturbation (column)
+	 */
+	public ResponseMatrix getResponseMatrix() {
+		return responseMatrix;
+	}
+
+	/**
+	 * @return the ordinals of the drug combinations (perturbations with 2 or more drugs),
+	 * in panel order
+	 */
+	CombinationIndex getCombinationIndex() {
+		return combinationIndex;
+	}
+
+	/**
+	 * @param index the index of a perturbation
+	 * @return the ordinal of the perturbation in the {@link #getCombinationIndex()
+	 * combination index}, or -1 if it is not a drug combination
+	 */
+	int getCombinationOrdinal(int index) {
+		return combinationOrdinals[index];
+	}
+
+	/**
+	 * @return the number of perturbations (the first ones of the panel) whose responses
+	 * were calculated in the previous level of a hierarchical screening
+	 */
+	int getNumberOfKnownPerturbations() {
+		return knownPerturbations;
+	}
+
+	/**
+	 * @param modelIndex
+	 * @param index the index of a perturbation, less than {@link #getNumberOfKnownPerturbations()}
+	 * @return the response of the model to the perturbation in the previous level of a
+	 * hierarchical screening (NaN if there is none)
+	 */
+	float getKnownResponse(int modelIndex, int index) {
+		return knownResponses.get(modelIndex, index);
+	}
+
+	/**
+	 * Hierarchical screening: selects the drug combinations of the given ones (that
+	 * have the same number of drugs, one more than the largest perturbations of this
+	 * panel) whose subsets with one drug less are all in this panel and at least one of
+	 * them has an {@link #getAverageResponseExcessOverSubsets(Perturbation) ensemble-wise
+	 * response excess} larger than the threshold (in absolute value). Use it after the
+	 * statistics of the perturbations are calculated.
+	 *
+	 * @param combinations
+	 * @param threshold
+	 * @param screenedOut the drug combinations that are not selected are added here
+	 * @return the selected drug combinations
+	 */
+	public Drug[][] screenCombinations(Drug[][] combinations, float threshold, List<Drug[]> screenedOut) {
+		HashMap<Integer, Boolean> interacting = new HashMap<>();
+		ArrayList<Drug[]> selected = new ArrayList<>();
+
+		for (Drug[] combination : combinations) {
+			boolean hasAllSubsets = true;
+			boolean hasInteractingSubset = false;
+
+			for (int omitted = 0; omitted < combination.length && hasAllSubsets; omitted++) {
+				Drug[] subset = new Drug[combination.length - 1];
+				for (int i = 0, j = 0; i < combination.length; i++) {
+					if (i != omitted)
+						subset[j++] = combination[i];
+				}
+
+				int index = getIndexOfPerturbation(subset);
+				if (index < 0) {
+					hasAllSubsets = false;
+				} else if (subset.length >= 2) {
+					hasInteractingSubset |= interacting.computeIfAbsent(index, key ->
+						Math.abs(getAverageResponseExcessOverSubsets(perturbations[key])) > threshold);
+				}
 			}
+
+			if (hasAllSubsets && hasInteractingSubset)
+				selected.add(combination);
+			else
+				screenedOut.add(combination);
 		}
 
-		return index;
+		return selected.toArray(new Drug[0][]);
 	}
 
 	/**
@@ -60,6 +254,13 @@ public class PerturbationPanel {
 		return perturbations;
 	}
 
+	/**
+	 * @return the drugs of the perturbations (every drug once)
+	 */
+	public ArrayList<Drug> getDrugs() {
+		return drugPanel.getDrugs();
+	}
+
 	/**
 	 * Returns an array of perturbations that have specific number of drugs
 	 * (<i>size</i>)
@@ -125,29 +326,37 @@ public class PerturbationPanel {
 	 * @param perturbation
 	 */
 	public double getAverageResponseExcessOverSubsets(Perturbation perturbation) {
-		double excess;
+		return getAverageResponseExcessOverSubsets(getIndexOfPerturbation(perturbation.getDrugs()),
+			index -> perturbations[index].getAveragePredictedResponse());
+	}
 
-		Drug[][] subsets = DrugPanel.getCombinationSubsets(perturbation.getDrugs());
-		int[] indexSubset = new int[subsets.length];
+	/**
+	 * Same as {@link #getAverageResponseExcessOverSubsets(Perturbation)}, with the given
+	 * average responses of the perturbations (e.g. of the models simulated so far, see
+	 * {@link EnsembleSnapshot}) instead of their calculated statistics.
+	 *
+	 * @param index the index of a drug combination
+	 * @param averageResponses the average response of the perturbation with a given index
+	 */
+	public double getAverageResponseExcessOverSubsets(int index, IntToDoubleFunction averageResponses) {
+		double excess;
 
-		for (int i = 0; i < subsets.length; i++) {
-			indexSubset[i] = getIndexOfPerturbation(subsets[i]);
-		}
+		int[] indexSubset = getIndexesOfSubsets(index);
 
 		if (Config.getInstance().getSynergyMethod().equals("hsa")) {
-			double minimumResponseSubset = perturbations[indexSubset[0]].getAveragePredictedResponse();
-			double maximumResponseSubset = perturbations[indexSubset[0]].getAveragePredictedResponse();
+			double minimumResponseSubset = averageResponses.applyAsDouble(indexSubset[0]);
+			double maximumResponseSubset = averageResponses.applyAsDouble(indexSubset[0]);
 
 			for (int i = 1; i < indexSubset.length; i++) {
 				minimumResponseSubset = min(minimumResponseSubset,
-					perturbations[indexSubset[i]].getAveragePredictedResponse());
+					averageResponses.applyAsDouble(indexSubset[i]));
 				maximumResponseSubset = max(maximumResponseSubset,
-					perturbations[indexSubset[i]].getAveragePredictedResponse());
+					averageResponses.applyAsDouble(indexSubset[i]));
 			}
 
 			logger.debug("min: " + minimumResponseSubset + " max: " + maximumResponseSubset);
 
-			double response = perturbation.getAveragePredictedResponse();
+			double response = averageResponses.applyAsDouble(index);
 			if (response < minimumResponseSubset)
 				excess = response - minimumResponseSubset;
 			else if (response > maximumResponseSubset)
@@ -156,11 +365,11 @@ public class PerturbationPanel {
 				excess = 0.0;
 		} else { // bliss
 			double expectedBlissCombinationResponse = 1;
-			for (int index : indexSubset) {
-				expectedBlissCombinationResponse *= perturbations[index].getNormalizedAveragePredictedResponse();
+			for (int subset : indexSubset) {
+				expectedBlissCombinationResponse *= normalize(averageResponses.applyAsDouble(subset));
 			}
 
-			double response = perturbation.getNormalizedAveragePredictedResponse();
+			double response = normalize(averageResponses.applyAsDouble(index));
 			excess = response - expectedBlissCombinationResponse;
 		}
 
@@ -168,17 +377,25 @@ public class PerturbationPanel {
 	}
 
 	/**
-	 * Creates an array of names from an array of drug combinations by calling
-	 * getCombinationName for each subarray
-	 * 
-	 * @param combinations
+	 * @return the given response in the [0,1] range (as
+	 * {@link Perturbation#getNormalizedAveragePredictedResponse()})
+	 */
+	private static double normalize(double response) {
+		ModelOutputs modelOutputs = ModelOutputs.getInstance();
+		return ((response - modelOutputs.getMinOutput()) / (modelOutputs.getMaxOutput() - modelOutputs.getMinOutput()));
+	}
+
+	/**
+	 * Creates an array of names from the perturbations by calling
+	 * getCombinationName for the drugs of each one
+	 *
 	 * @return name of drug combination
 	 */
-	private String[] getCombinationNames(Drug[][] combinations) {
-		String[] names = new String[combinations.length];
+	private String[] getPerturbationNames() {
+		String[] names = new String[perturbations.length];
 
-		for (int i = 0; i < combinations.length; i++) {
-			names[i] = getCombinationName(combinations[i]);
+		for (int i = 0; i < perturbations.length; i++) {
+			names[i] = getCombinationName(perturbations[i].getDrugs());
 		}
 
 		return names;
@@ -213,23 +430,18 @@ public class PerturbationPanel {
 		return comboName.toString();
 	}
 
-	public void checkPerturbationHashes() throws Exception {
-		ArrayList<Integer> hashes = new ArrayList<>();
-		ArrayList<String> names = new ArrayList<>();
-		for (Perturbation perturbation: this.getPerturbations()) {
-			hashes.add(perturbation.getPerturbationHash());
-			names.add(perturbation.getName());
-		}
-
-		// search for same hashes in all perturbation pairs
-		for (int i = 0; i < hashes.size(); i++) {
-			int hash = hashes.get(i);
-			for (int j = i+1; j < hashes.size(); j++) {
-				if (hash == hashes.get(j)) {
-					String message = "Perturbations `" + names.get(i) + "` and `" + names.get(j) +
-						"` have the same hash: " + hash;
-					throw new Exception(message);
-				}
+	/**
+	 * Checks that no two perturbations have the same drugs (in any order)
+	 *
+	 * @throws Exception
+	 */
+	public void checkPerturbationDrugSets() throws Exception {
+		HashMap<BitSet, Perturbation> perturbationsByDrugs = new HashMap<>();
+		for (Perturbation perturbation : this.getPerturbations()) {
+			Perturbation previous = perturbationsByDrugs.putIfAbsent(perturbation.getDrugMask(), perturbation);
+			if (previous != null) {
+				throw new Exception("Perturbations `" + previous.getName() + "` and `"
+					+ perturbation.getName() + "` have the same drugs");
 			}
 		}
 	}
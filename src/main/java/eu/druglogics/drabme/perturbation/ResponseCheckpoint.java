@@ -0,0 +1,253 @@
+package eu.druglogics.drabme.perturbation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint of a drabme run: the {@link ModelResponses} of every finished model are
+ * appended to a compact binary file in the output directory, so that an interrupted run
+ * can be resumed without simulating these models again.
+ *
+ * <br/><br/>
+ * The file starts with a header (magic bytes, version, number of perturbations, a
+ * hash of the perturbation names and the run settings, so that a checkpoint is only used
+ * with the same perturbation panel and settings), followed by a record per model: the
+ * record length and CRC32, the model name, the global output of every perturbation (NaN
+ * if none) and a byte per perturbation for the synergy prediction. An incomplete last
+ * record (the run stopped while writing it) is ignored, and a resumed run appends its
+ * records after the last complete one.
+ */
+public class ResponseCheckpoint {
+
+	public static final String FILENAME = "drabme.checkpoint";
+
+	private static final byte[] MAGIC = "DRABMECP".getBytes();
+	private static final int VERSION = 2;
+
+	private static final byte NON_SYNERGY = 0;
+	private static final byte SYNERGY = 1;
+	private static final byte NA = 2;
+	private static final byte NO_PREDICTION = 3;
+
+	private final PerturbationPanel perturbationPanel;
+	private final DataOutputStream output;
+	private final ArrayList<ModelResponses> restoredResponses;
+	private int models;
+
+	/**
+	 * Creates a new (empty) checkpoint file in the given directory, replacing an existing one.
+	 *
+	 * @param directory
+	 * @param perturbationPanel the panel the models are simulated with
+	 * @param settings the settings of the run that change the responses (e.g. the
+	 *                 attractor tool, see {@link #resume(String, PerturbationPanel, String)})
+	 * @throws IOException
+	 */
+	public ResponseCheckpoint(String directory, PerturbationPanel perturbationPanel, String settings)
+		throws IOException {
+		this.perturbationPanel = perturbationPanel;
+		this.restoredResponses = new ArrayList<>();
+		this.output = new DataOutputStream(new FileOutputStream(new File(directory, FILENAME)));
+
+		output.write(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(perturbationPanel.getNumberOfPerturbations());
+		output.writeInt(getPanelHash(perturbationPanel));
+		output.writeUTF(settings);
+		output.flush();
+	}
+
+	private ResponseCheckpoint(File file, PerturbationPanel perturbationPanel,
+							   ArrayList<ModelResponses> restoredResponses) throws IOException {
+		this.perturbationPanel = perturbationPanel;
+		this.restoredResponses = restoredResponses;
+		this.output = new DataOutputStream(new FileOutputStream(file, true));
+		this.models = restoredResponses.size();
+	}
+
+	/**
+	 * Opens the checkpoint file of an interrupted run in the given directory (or creates
+	 * a new one if there is none): its records are kept as they are, an incomplete last
+	 * record is dropped and the responses of the next models are appended.
+	 *
+	 * @param directory
+	 * @param perturbationPanel the panel the models are simulated with
+	 * @param settings the settings of the run, must be the same as those of the
+	 *                 interrupted run
+	 * @return the checkpoint, with the {@link #getRestoredResponses() responses} of the
+	 * models finished by the interrupted run
+	 * @throws IOException if the file is not a checkpoint or was made with another
+	 * perturbation panel or other settings
+	 */
+	public static ResponseCheckpoint resume(String directory, PerturbationPanel perturbationPanel,
+											String settings) throws IOException {
+		File file = new File(directory, FILENAME);
+		if (!file.isFile())
+			return new ResponseCheckpoint(directory, perturbationPanel, settings);
+
+		ArrayList<ModelResponses> restoredResponses = new ArrayList<>();
+		long validLength = read(file, perturbationPanel, settings, restoredResponses);
+		try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+			truncated.setLength(validLength);
+		}
+
+		return new ResponseCheckpoint(file, perturbationPanel, restoredResponses);
+	}
+
+	/**
+	 * @return the responses of the models finished by the interrupted run, in the order
+	 * they were written (empty for a new checkpoint)
+	 */
+	public ArrayList<ModelResponses> getRestoredResponses() {
+		return restoredResponses;
+	}
+
+	/**
+	 * Appends the responses of a finished model to the checkpoint file.
+	 *
+	 * @param modelResponses
+	 * @throws IOException
+	 */
+	public synchronized void write(ModelResponses modelResponses) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeUTF(modelResponses.getModelName());
+		for (float response : modelResponses.getResponses()) {
+			record.writeFloat(response);
+		}
+		for (int index = 0; index < perturbationPanel.getNumberOfPerturbations(); index++) {
+			record.writeByte(encode(modelResponses.getModelPredictions()
+				.getPrediction(perturbationPanel.getCombinationOrdinal(index))));
+		}
+		record.flush();
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+
+		output.writeInt(bytes.size());
+		output.writeInt((int) crc.getValue());
+		bytes.writeTo(output);
+		output.flush();
+		models++;
+	}
+
+	/**
+	 * @return the number of models in the checkpoint
+	 */
+	public synchronized int size() {
+		return models;
+	}
+
+	public synchronized void close() throws IOException {
+		output.close();
+	}
+
+	/**
+	 * @return the length of the file up to the end of the last complete record
+	 */
+	private static long read(File file, PerturbationPanel perturbationPanel, String settings,
+							 ArrayList<ModelResponses> modelResponsesList) throws IOException {
+		Perturbation[] perturbations = perturbationPanel.getPerturbations();
+		byte[] content = Files.readAllBytes(file.toPath());
+		try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(content))) {
+			byte[] magic = new byte[MAGIC.length];
+			try {
+				input.readFully(magic);
+				if (!new String(magic).equals(new String(MAGIC)) || input.readInt() != VERSION)
+					throw new IOException("Not a drabme checkpoint file: " + file.getAbsolutePath());
+				if (input.readInt() != perturbations.length || input.readInt() != getPanelHash(perturbationPanel))
+					throw new IOException("The checkpoint " + file.getAbsolutePath()
+						+ " was made with a different perturbation panel");
+				String checkpointSettings = input.readUTF();
+				if (!checkpointSettings.equals(settings))
+					throw new IOException("The checkpoint " + file.getAbsolutePath()
+						+ " was made with different settings:\n" + checkpointSettings
+						+ "\ninstead of:\n" + settings);
+			} catch (EOFException e) {
+				throw new IOException("Not a drabme checkpoint file: " + file.getAbsolutePath());
+			}
+
+			long validLength = content.length - input.available();
+			while (true) {
+				byte[] bytes;
+				try {
+					int length = input.readInt();
+					int crc = input.readInt();
+					if (length < 0 || length > input.available())
+						break;
+					bytes = new byte[length];
+					input.readFully(bytes);
+
+					CRC32 recordCrc = new CRC32();
+					recordCrc.update(bytes);
+					if ((int) recordCrc.getValue() != crc)
+						break;
+				} catch (EOFException e) {
+					// incomplete last record
+					break;
+				}
+
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+				ModelPredictions modelPredictions = new ModelPredictions(record.readUTF(),
+					perturbationPanel.getCombinationIndex());
+				float[] responses = new float[perturbations.length];
+				for (int index = 0; index < perturbations.length; index++) {
+					responses[index] = record.readFloat();
+				}
+				for (int index = 0; index < perturbations.length; index++) {
+					decode(record.readByte(), perturbationPanel.getCombinationOrdinal(index), modelPredictions);
+				}
+
+				modelResponsesList.add(new ModelResponses(responses, modelPredictions));
+				validLength = content.length - input.available();
+			}
+
+			return validLength;
+		}
+	}
+
+	private static int getPanelHash(PerturbationPanel perturbationPanel) {
+		StringBuilder names = new StringBuilder();
+		for (Perturbation perturbation : perturbationPanel.getPerturbations()) {
+			names.append(perturbation.getName()).append('\n');
+		}
+		return names.toString().hashCode();
+	}
+
+	private static byte encode(int prediction) {
+		switch (prediction) {
+			case ModelPredictions.NON_SYNERGY:
+				return NON_SYNERGY;
+			case ModelPredictions.SYNERGY:
+				return SYNERGY;
+			case ModelPredictions.NA:
+				return NA;
+			default:
+				return NO_PREDICTION;
+		}
+	}
+
+	private static void decode(byte prediction, int ordinal, ModelPredictions modelPredictions) {
+		switch (prediction) {
+			case NON_SYNERGY:
+				modelPredictions.addNonSynergyPrediction(ordinal);
+				break;
+			case SYNERGY:
+				modelPredictions.addSynergyPrediction(ordinal);
+				break;
+			case NA:
+				modelPredictions.addNAPrediction(ordinal);
+				break;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package eu.druglogics.drabme.perturbation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * The predicted responses (global outputs) of every model of the ensemble for every
+ * perturbation of a {@link PerturbationPanel}, as a dense matrix of primitive floats
+ * indexed by (model, perturbation). A cell without a response (the perturbed model has
+ * no global output, or the model has not been simulated yet) holds NaN.
+ *
+ * <br/><br/>
+ * Every model has its own row. The rows allocated up front are, for large ensembles
+ * and panels, views at consecutive offsets of a single direct buffer outside of the Java
+ * heap (one buffer per 2 GB), otherwise arrays on the heap. Writes to different cells
+ * need no locking, so the responses of different models can be stored concurrently.
+ * The rows of the models beyond the allocated ones are added when they are first
+ * written.
+ */
+public class ResponseMatrix {
+
+	private final int perturbationsNumber;
+	private final boolean offHeap;
+	private volatile FloatBuffer[] rows;
+
+	/**
+	 * @param perturbationsNumber
+	 * @param modelsNumber the number of model rows to allocate up front
+	 * @param offHeap if true, the rows are allocated outside of the Java heap
+	 */
+	public ResponseMatrix(int perturbationsNumber, int modelsNumber, boolean offHeap) {
+		this.perturbationsNumber = perturbationsNumber;
+		this.offHeap = offHeap;
+
+		FloatBuffer[] rows = new FloatBuffer[modelsNumber];
+		if (offHeap && perturbationsNumber > 0) {
+			int rowBytes = perturbationsNumber * Float.BYTES;
+			int rowsPerBuffer = Integer.MAX_VALUE / rowBytes;
+			for (int firstModel = 0; firstModel < modelsNumber; firstModel += rowsPerBuffer) {
+				int bufferRows = Math.min(rowsPerBuffer, modelsNumber - firstModel);
+				ByteBuffer buffer = ByteBuffer.allocateDirect(bufferRows * rowBytes);
+				for (int row = 0; row < bufferRows; row++) {
+					buffer.limit((row + 1) * rowBytes).position(row * rowBytes);
+					rows[firstModel + row] = fill(buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer());
+				}
+			}
+		} else {
+			for (int model = 0; model < modelsNumber; model++) {
+				rows[model] = newRow();
+			}
+		}
+		this.rows = rows;
+	}
+
+	/**
+	 * @param perturbationsNumber
+	 */
+	public ResponseMatrix(int perturbationsNumber) {
+		this(perturbationsNumber, 0, false);
+	}
+
+	private static FloatBuffer fill(FloatBuffer row) {
+		for (int perturbation = 0; perturbation < row.capacity(); perturbation++) {
+			row.put(perturbation, Float.NaN);
+		}
+		return row;
+	}
+
+	private FloatBuffer newRow() {
+		FloatBuffer row;
+		if (offHeap) {
+			row = fill(ByteBuffer.allocateDirect(perturbationsNumber * Float.BYTES)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer());
+		} else {
+			float[] responses = new float[perturbationsNumber];
+			Arrays.fill(responses, Float.NaN);
+			row = FloatBuffer.wrap(responses);
+		}
+		return row;
+	}
+
+	/**
+	 * @param model
+	 * @param perturbation
+	 * @param response the global output, or NaN for no response
+	 */
+	public void set(int model, int perturbation, float response) {
+		FloatBuffer[] rows = this.rows;
+		if (model >= rows.length)
+			rows = addRows(model + 1);
+
+		rows[model].put(perturbation, response);
+	}
+
+	/**
+	 * The existing rows are kept (only the array of rows is replaced), so that
+	 * concurrent writes to them are not lost.
+	 */
+	private synchronized FloatBuffer[] addRows(int modelsNumber) {
+		FloatBuffer[] rows = this.rows;
+		if (modelsNumber <= rows.length)
+			return rows;
+
+		FloatBuffer[] newRows = Arrays.copyOf(rows, Math.max(modelsNumber, 2 * rows.length));
+		for (int model = rows.length; model < newRows.length; model++) {
+			newRows[model] = newRow();
+		}
+		this.rows = newRows;
+		return newRows;
+	}
+
+	/**
+	 * @return the response of the model to the perturbation, NaN if there is none
+	 */
+	public float get(int model, int perturbation) {
+		FloatBuffer[] rows = this.rows;
+		return (model < rows.length) ? rows[model].get(perturbation) : Float.NaN;
+	}
+
+	/**
+	 * @return the responses to the perturbation, in model order (without the models
+	 * that have no response)
+	 */
+	public float[] getResponses(int perturbation) {
+		FloatBuffer[] rows = this.rows;
+		float[] responses = new float[rows.length];
+		int responsesNumber = 0;
+		for (FloatBuffer row : rows) {
+			float response = row.get(perturbation);
+			if (!Float.isNaN(response))
+				responses[responsesNumber++] = response;
+		}
+
+		return Arrays.copyOf(responses, responsesNumber);
+	}
+
+	/**
+	 * @return the number of model rows (allocated or written)
+	 */
+	public int getModelsNumber() {
+		return rows.length;
+	}
+
+	public int getPerturbationsNumber() {
+		return perturbationsNumber;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+}
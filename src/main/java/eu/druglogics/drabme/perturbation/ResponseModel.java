@@ -1,12 +1,29 @@
 package eu.druglogics.drabme.perturbation;
 
+import eu.druglogics.drabme.attractor.AttractorCache;
+import eu.druglogics.drabme.attractor.AttractorStore;
+import eu.druglogics.drabme.attractor.AttractorWorkerPool;
 import eu.druglogics.drabme.drug.Drug;
-import eu.druglogics.drabme.drug.DrugPanel;
 import eu.druglogics.drabme.input.Config;
+import eu.druglogics.drabme.util.TimeLimits;
 import eu.druglogics.gitsbe.model.BooleanModel;
 import eu.druglogics.gitsbe.util.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 import static java.lang.Math.min;
 
@@ -15,6 +32,9 @@ import static java.lang.Math.min;
  * and splits the original model to a collection of {@link PerturbationModel}s,
  * where each {@link PerturbationModel} is related to a specific
  * {@link Perturbation} as specified in the {@link PerturbationPanel} Class.
+ * Perturbations that fix the same nodes of the model to the same values (see
+ * {@link PerturbationModel#getNodeFixings(BooleanModel, Perturbation)})
+ * share one {@link PerturbationModel}, which is simulated once.
  * 
  * @author asmund
  *
@@ -26,55 +46,702 @@ public class ResponseModel {
 	private PerturbationPanel perturbationPanel;
 	private Logger logger;
 	private String modelName;
+	private int modelIndex = -1;
 	private ArrayList<PerturbationModel> perturbationModels; // Set of boolean models extended with perturbations
+	private int[] effectiveModels; // the index of the perturbation model of every perturbation
+	private boolean[] skippedPerturbations; // drug combinations skipped because a subset has no response
+	private boolean[] knownModels; // perturbation models with a known response (not simulated)
+	private boolean[] stoppedPerturbations = null; // perturbations no longer sampled (see SequentialSampling)
+	private boolean[] stoppedModels; // perturbation models of stopped perturbations only
 	private ModelPredictions modelPredictions;
+	private AttractorCache attractorCache;
+	private AttractorStore attractorStore;
+	private Semaphore externalProcesses = null;
+	private Semaphore cpuSlots = null;
+	private AttractorWorkerPool attractorWorkers = null;
+	private final AtomicInteger perturbationsResolvedByPropagation = new AtomicInteger();
+	private final AtomicInteger naCombinations = new AtomicInteger();
+	private final AtomicInteger simulatedPerturbationModels = new AtomicInteger();
+	private int runningCalculations = 0; // of this model, guarded by this
+	private long executionStartMillis = 0;
+	private long executionMillis = 0; // while a calculation of this model was running
+	private final List<String> timedOutPerturbations = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger timeoutFallbacks = new AtomicInteger();
 
 	public ResponseModel(BooleanModel booleanModel, PerturbationPanel perturbationPanel, Logger logger) {
+		this(booleanModel, perturbationPanel, null, null, logger);
+	}
+
+	/**
+	 * @param booleanModel
+	 * @param perturbationPanel
+	 * @param attractorCache shared between the response models (can be <code>null</code>)
+	 * @param attractorStore shared between the response models (can be <code>null</code>)
+	 * @param logger
+	 */
+	public ResponseModel(BooleanModel booleanModel, PerturbationPanel perturbationPanel,
+						 AttractorCache attractorCache, AttractorStore attractorStore, Logger logger) {
 		this.originalModel = booleanModel;
 		this.perturbationPanel = perturbationPanel;
+		this.attractorCache = attractorCache;
+		this.attractorStore = attractorStore;
 		this.logger = logger;
 		this.modelName = booleanModel.getModelName() + "_responsemodel";
-		this.modelPredictions = new ModelPredictions(originalModel.getModelName());
+		this.modelPredictions = new ModelPredictions(originalModel.getModelName(),
+			perturbationPanel.getCombinationIndex());
+	}
+
+	/**
+	 * Use this function before {@link #initializeResponseModel()}.
+	 *
+	 * @param externalProcesses limits the concurrent external attractor tool processes
+	 *                          (shared between the response models), or <code>null</code>
+	 *                          for no limit
+	 */
+	public void setExternalProcessLimit(Semaphore externalProcesses) {
+		this.externalProcesses = externalProcesses;
+	}
+
+	/**
+	 * Use this function before {@link #simulateResponsesAsync(String, Executor)}.
+	 *
+	 * @param cpuSlots limits the concurrent CPU-bound calculations (constant propagation,
+	 *                 in-memory attractors and global outputs) of the perturbed models
+	 *                 (shared between the response models), when the tasks run on an
+	 *                 executor that is not bounded by the cores, or <code>null</code> for
+	 *                 no limit
+	 */
+	public void setCpuLimit(Semaphore cpuSlots) {
+		this.cpuSlots = cpuSlots;
+	}
+
+	/**
+	 * Runs a CPU-bound calculation within the {@link #setCpuLimit(Semaphore) limit} (if set).
+	 */
+	private <T> T callOnCpu(Callable<T> calculation) throws Exception {
+		if (cpuSlots == null)
+			return calculation.call();
+
+		cpuSlots.acquire();
+		try {
+			return calculation.call();
+		} finally {
+			cpuSlots.release();
+		}
+	}
+
+	/**
+	 * Use this function before {@link #initializeResponseModel()}.
+	 *
+	 * @param attractorWorkers persistent attractor tool processes (shared between the
+	 *                         response models), or <code>null</code> to start a new process
+	 *                         for every perturbation
+	 */
+	public void setAttractorWorkers(AttractorWorkerPool attractorWorkers) {
+		this.attractorWorkers = attractorWorkers;
+	}
+
+	/**
+	 * Use this function before {@link #initializeResponseModel()}.
+	 *
+	 * @param stoppedPerturbations the perturbations that are not simulated in this model,
+	 *                             because their estimates are confident (see
+	 *                             {@link SequentialSampling}), or <code>null</code> for none
+	 */
+	public void setStoppedPerturbations(boolean[] stoppedPerturbations) {
+		this.stoppedPerturbations = stoppedPerturbations;
+	}
+
+	/**
+	 * @param modelIndex the index of the model in the ensemble: its responses are stored
+	 *                   in this row of the {@link ResponseMatrix} of the panel (if not set,
+	 *                   the responses are added after those of the previous models)
+	 */
+	public void setModelIndex(int modelIndex) {
+		this.modelIndex = modelIndex;
 	}
 
 	private String getModelName() {
 		return this.modelName;
 	}
 
-	public void initializeResponseModel() {
+	public void initializeResponseModel() throws Exception {
 		logger.outputStringMessage(2, "Initializing response model: " + this.getModelName() + "\n");
 		perturbationModels = new ArrayList<>();
 
-		// Define model for each perturbation set
+		// The same slice is used for every perturbation of the model. The stable states of
+		// a slice can differ from those of the whole model (e.g. a model without stable
+		// states outside the slice has no response, the slice may have one), its minimal
+		// trapspaces are weighted to give the response of the whole model
+		boolean[] modelSlice = null;
+		if (Config.getInstance().useModelSlicing()
+			&& PerturbationModel.isTrapSpaceTool(originalModel.getAttractorTool())) {
+			modelSlice = PerturbationModel.getModelSlice(originalModel, perturbationPanel.getDrugs());
+			int sliceSize = 0;
+			for (boolean inSlice : modelSlice) {
+				if (inSlice) sliceSize++;
+			}
+			logger.outputStringMessage(2, "Model slice (cone of influence of the model outputs and drug targets): "
+				+ sliceSize + " out of " + modelSlice.length + " nodes\n");
+		}
+
+		// Define model for each perturbation set (one per distinct set of node fixings)
+		boolean deduplicate = Config.getInstance().deduplicatePerturbations();
+		HashMap<TreeMap<Integer, Boolean>, Integer> modelsByFixings = new HashMap<>();
+		effectiveModels = new int[perturbationPanel.getNumberOfPerturbations()];
+		skippedPerturbations = new boolean[perturbationPanel.getNumberOfPerturbations()];
 		for (int index = 0; index < perturbationPanel.getNumberOfPerturbations(); index++) {
-			perturbationModels.add(new PerturbationModel(originalModel,
-				perturbationPanel.getPerturbations()[index], logger));
+			Perturbation perturbation = perturbationPanel.getPerturbations()[index];
+			if (deduplicate) {
+				TreeMap<Integer, Boolean> fixings = PerturbationModel.getNodeFixings(originalModel, perturbation);
+				Integer sameModel = modelsByFixings.putIfAbsent(fixings, perturbationModels.size());
+				if (sameModel != null) {
+					effectiveModels[index] = sameModel;
+					logger.outputStringMessage(3, "Perturbation " + perturbation.getName()
+						+ " has the same perturbed model as perturbation "
+						+ perturbationModels.get(sameModel).getPerturbation().getName());
+					continue;
+				}
+			}
+
+			PerturbationModel perturbationModel = new PerturbationModel(originalModel, perturbation, logger);
+			perturbationModel.setModelSlice(modelSlice);
+			perturbationModel.setExternalProcessLimit(externalProcesses);
+			perturbationModel.setAttractorWorkers(attractorWorkers);
+			effectiveModels[index] = perturbationModels.size();
+			perturbationModels.add(perturbationModel);
+		}
+
+		if (deduplicate) {
+			logger.outputStringMessage(2, "Distinct perturbed models (node fixings): "
+				+ perturbationModels.size() + " out of " + effectiveModels.length + " perturbations\n");
+		}
+
+		// the responses of the previous level of a hierarchical screening are not simulated again
+		knownModels = new boolean[perturbationModels.size()];
+		if (modelIndex >= 0) {
+			for (int index = 0; index < perturbationPanel.getNumberOfKnownPerturbations(); index++) {
+				if (!knownModels[effectiveModels[index]]) {
+					getPerturbationModel(index).setKnownGlobalOutput(
+						perturbationPanel.getKnownResponse(modelIndex, index));
+					knownModels[effectiveModels[index]] = true;
+				}
+			}
+		}
+
+		// a perturbation model is simulated if any of its perturbations is not stopped
+		stoppedModels = new boolean[perturbationModels.size()];
+		Arrays.fill(stoppedModels, true);
+		for (int index = 0; index < effectiveModels.length; index++) {
+			if (!isStopped(index))
+				stoppedModels[effectiveModels[index]] = false;
 		}
 	}
 
-	public void simulateResponses(String directoryTmp) throws Exception {
+	/**
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return true if the perturbation is no longer sampled
+	 */
+	private boolean isStopped(int index) {
+		return stoppedPerturbations != null && stoppedPerturbations[index];
+	}
 
-		for (PerturbationModel perturbationModel : perturbationModels) {
-			logger.outputStringMessage(2, ""); // Add blank line for better visualization of results
+	/**
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return the (possibly shared) perturbation model of the perturbation
+	 */
+	private PerturbationModel getPerturbationModel(int index) {
+		return perturbationModels.get(effectiveModels[index]);
+	}
 
-			Perturbation perturbation = perturbationModel.getPerturbation();
+	/**
+	 * @return the number of perturbation models that are simulated, i.e. the number of
+	 * perturbations with distinct node fixings
+	 */
+	public int getNumberOfPerturbationModels() {
+		return perturbationModels.size();
+	}
 
-			// Calculate attractors, then determine global output
-			perturbationModel.calculateAttractors(directoryTmp);
-			perturbationModel.calculateGlobalOutput();
+	/**
+	 * @return the number of perturbation models whose response was calculated (all of
+	 * them, unless drug combinations were skipped with <i>skip_na_combinations</i>)
+	 */
+	public int getSimulatedPerturbationModels() {
+		return simulatedPerturbationModels.get();
+	}
 
-			// Store response for perturbation set
-			if (perturbationModel.hasGlobalOutput()) {
-				logger.outputStringMessage(2, "Adding predicted response for perturbation "
-						+ perturbation.getName() + ": " + perturbationModel.getGlobalOutput());
-				perturbation.addPrediction(perturbationModel.getGlobalOutput());
+	/**
+	 * Simulates the perturbations in lattice order (see
+	 * {@link PerturbationPanel#getIndexesInLatticeOrder()}), so that the responses of the
+	 * subsets of a drug combination are known before it is simulated.
+	 *
+	 * @param directoryTmp
+	 * @throws Exception
+	 */
+	public void simulateResponses(String directoryTmp) throws Exception {
+		calculateAttractorsInBatch();
+
+		boolean[] simulated = knownModels.clone();
+		for (int index : perturbationPanel.getIndexesInLatticeOrder()) {
+			logger.outputStringMessage(2, ""); // Add blank line for better visualization of results
+
+			Perturbation perturbation = perturbationPanel.getPerturbations()[index];
+
+			if (isStopped(index)) {
+				logger.outputStringMessage(2, "Skipping perturbation " + perturbation.getName()
+					+ ": its estimates are confident (sequential sampling)");
+			} else if (skipNACombination(index)) {
+				logger.outputStringMessage(2, "Skipping perturbation " + perturbation.getName()
+					+ ": a subset has no response");
+			} else if (!simulated[effectiveModels[index]]) {
+				calculateResponse(getPerturbationModel(index), directoryTmp);
+				simulated[effectiveModels[index]] = true;
 			}
+			addPrediction(index);
 
 			// Check if perturbation models with 2 or more drugs are synergistic
 			if (perturbation.getDrugs().length >= 2) {
-				checkCombinationModelForSynergy(perturbation.getDrugs());
+				checkCombinationModelForSynergy(index);
+			}
+		}
+
+		logPerturbationsResolvedByPropagation();
+		logNACombinations();
+	}
+
+	/**
+	 * Parallel version of {@link #simulateResponses(String)}: the response of every
+	 * perturbation model is calculated as a separate task of the given executor and the
+	 * synergy of a drug combination is checked as soon as the responses of the
+	 * combination and all its subsets are available. With <i>skip_na_combinations</i>,
+	 * the response of a drug combination is only calculated after the responses of its
+	 * subsets (in case it can be skipped). The predicted responses are
+	 * <b>not</b> added to the perturbations: use {@link #addPredictions()} after the
+	 * returned future completes, so that they can be added in model order.
+	 *
+	 * @param directoryTmp
+	 * @param executor
+	 * @return a future that completes when all responses and synergies are calculated
+	 */
+	public CompletableFuture<Void> simulateResponsesAsync(String directoryTmp, Executor executor) {
+		ArrayList<CompletableFuture<Void>> modelResponses =
+			new ArrayList<>(Collections.nCopies(perturbationModels.size(), null));
+		ArrayList<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+		CompletableFuture<Void> batch = (useAttractorBatch())
+			? CompletableFuture.runAsync(this::calculateAttractorsInBatch, executor)
+			: CompletableFuture.completedFuture(null);
+
+		// the response of a perturbation model is calculated once, when first needed
+		IntFunction<CompletableFuture<Void>> modelResponse = effectiveModel -> {
+			synchronized (modelResponses) {
+				if (knownModels[effectiveModel]) {
+					return CompletableFuture.completedFuture(null);
+				} else if (modelResponses.get(effectiveModel) == null) {
+					PerturbationModel perturbationModel = perturbationModels.get(effectiveModel);
+					modelResponses.set(effectiveModel, batch.thenRunAsync(() -> {
+						try {
+							calculateResponse(perturbationModel, directoryTmp);
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						}
+					}, executor));
+				}
+				return modelResponses.get(effectiveModel);
+			}
+		};
+
+		// the response of every perturbation is the one of its perturbation model
+		ArrayList<CompletableFuture<Void>> responses =
+			new ArrayList<>(Collections.nCopies(effectiveModels.length, null));
+		for (int index : perturbationPanel.getIndexesInLatticeOrder()) {
+			int effectiveModel = effectiveModels[index];
+			if (isStopped(index)) {
+				responses.set(index, CompletableFuture.completedFuture(null));
+				continue;
+			}
+			if (!Config.getInstance().skipNACombinations()
+				|| perturbationPanel.getPerturbations()[index].getDrugs().length < 2) {
+				responses.set(index, modelResponse.apply(effectiveModel));
+				continue;
+			}
+
+			ArrayList<CompletableFuture<Void>> subsetResponses = new ArrayList<>();
+			for (int subsetIndex : perturbationPanel.getIndexesOfSubsets(index)) {
+				if (subsetIndex >= 0)
+					subsetResponses.add(responses.get(subsetIndex));
+			}
+
+			int combinationIndex = index;
+			responses.set(index, CompletableFuture.allOf(subsetResponses.toArray(new CompletableFuture[0]))
+				.thenCompose(ignored -> skipNACombination(combinationIndex)
+					? CompletableFuture.completedFuture(null)
+					: modelResponse.apply(effectiveModel)));
+		}
+		tasks.addAll(responses);
+
+		for (int index = 0; index < effectiveModels.length; index++) {
+			if (perturbationPanel.getPerturbations()[index].getDrugs().length < 2)
+				continue;
+
+			ArrayList<CompletableFuture<Void>> dependencies = new ArrayList<>();
+			dependencies.add(responses.get(index));
+			for (int subsetIndex : perturbationPanel.getIndexesOfSubsets(index)) {
+				if (subsetIndex >= 0)
+					dependencies.add(responses.get(subsetIndex));
+			}
+
+			int combinationIndex = index;
+			tasks.add(CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+				.thenRun(() -> checkCombinationModelForSynergy(combinationIndex)));
+		}
+
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+	}
+
+	/**
+	 * Use this function after the future of {@link #simulateResponsesAsync(String, Executor)}
+	 * completes, to add the predicted responses to the perturbations.
+	 */
+	public void addPredictions() {
+		for (int index = 0; index < effectiveModels.length; index++) {
+			addPrediction(index);
+		}
+
+		logPerturbationsResolvedByPropagation();
+		logNACombinations();
+	}
+
+	/**
+	 * Use this function once the responses of the subsets of the given perturbation are
+	 * known. With <i>skip_na_combinations</i>, a drug combination with a subset that has no
+	 * response can only be NA, so it is skipped: its attractors are not calculated and it
+	 * gets no response (unless <i>skipped_combination_responses</i> is set).
+	 *
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return true if the perturbation is skipped
+	 */
+	private boolean skipNACombination(int index) {
+		if (!Config.getInstance().skipNACombinations()
+			|| perturbationPanel.getPerturbations()[index].getDrugs().length < 2
+			|| index < perturbationPanel.getNumberOfKnownPerturbations())
+			return false;
+
+		boolean hasSubsetWithoutResponse = false;
+		for (int subset : perturbationPanel.getIndexesOfSubsets(index)) {
+			if (subset >= 0 && !hasResponse(subset))
+				hasSubsetWithoutResponse = true;
+		}
+		if (!hasSubsetWithoutResponse)
+			return false;
+
+		naCombinations.incrementAndGet();
+		if (Config.getInstance().calculateSkippedCombinationResponses())
+			return false;
+
+		skippedPerturbations[index] = true;
+		return true;
+	}
+
+	/**
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return true if the perturbation has a response (global output) in this model
+	 */
+	private boolean hasResponse(int index) {
+		return !skippedPerturbations[index] && !isStopped(index) && getPerturbationModel(index).hasGlobalOutput();
+	}
+
+	private void logNACombinations() {
+		if (Config.getInstance().skipNACombinations()) {
+			logger.outputStringMessage(2, "Drug combinations with a subset without response: "
+				+ naCombinations.get() + (Config.getInstance().calculateSkippedCombinationResponses()
+				? " (responses calculated, synergy NA)" : " (skipped, synergy NA)"));
+		}
+	}
+
+	/**
+	 * @return the number of drug combinations that were skipped (or only simulated for
+	 * their response, see <i>skipped_combination_responses</i>) because a subset has no
+	 * response
+	 */
+	public int getNACombinations() {
+		return naCombinations.get();
+	}
+
+	private boolean useAttractorBatch() {
+		return attractorWorkers != null && PerturbationModel.usesExternalProcess(originalModel.getAttractorTool());
+	}
+
+	/**
+	 * When the attractor tool runs on the {@link AttractorWorkerPool attractor workers},
+	 * the perturbed models that need the tool (not resolved by constant propagation and
+	 * not in the cache or store) are sent to the workers in one batch, so that the
+	 * per-request overhead is paid once per model instead of once per perturbation.
+	 * A perturbed model without batch attractors (e.g. the worker crashed) falls back to
+	 * a request of its own in {@link #calculateResponse(PerturbationModel, String)}.
+	 */
+	private void calculateAttractorsInBatch() {
+		if (!useAttractorBatch())
+			return;
+
+		LinkedHashMap<String, ArrayList<String>> boolNets = new LinkedHashMap<>();
+		HashMap<PerturbationModel, String> keys = new HashMap<>();
+		try {
+			for (int model = 0; model < perturbationModels.size(); model++) {
+				PerturbationModel perturbationModel = perturbationModels.get(model);
+				if (knownModels[model] || stoppedModels[model])
+					continue;
+				if (Config.getInstance().useConstantPropagation()
+					&& callOnCpu(perturbationModel::calculateAttractorsByPropagation))
+					continue;
+
+				ArrayList<String> boolNet = perturbationModel.getSimulatedModelBoolNet();
+				String key = AttractorCache.getKey(perturbationModel.getAttractorTool(), boolNet);
+				if ((attractorCache != null && attractorCache.contains(key))
+					|| (attractorStore != null && attractorStore.contains(key)))
+					continue;
+
+				boolNets.putIfAbsent(key, boolNet);
+				keys.put(perturbationModel, key);
+			}
+
+			if (boolNets.isEmpty())
+				return;
+
+			// the batch gets the time of all its models
+			long timeoutMillis = getAttractorTimeoutMillis(boolNets.size());
+			if (timeoutMillis < 0)
+				return;
+
+			ArrayList<ArrayList<String>> results;
+			startExecution();
+			try {
+				results = TimeLimits.call(() -> attractorWorkers.calculateAttractors(boolNets.values()), timeoutMillis);
+			} finally {
+				endExecution();
+			}
+			HashMap<String, ArrayList<String>> attractors = new HashMap<>();
+			int index = 0;
+			for (String key : boolNets.keySet()) {
+				attractors.put(key, results.get(index++));
+			}
+
+			int solved = 0;
+			for (PerturbationModel perturbationModel : perturbationModels) {
+				ArrayList<String> modelAttractors = attractors.get(keys.get(perturbationModel));
+				if (modelAttractors != null) {
+					perturbationModel.setBatchAttractors(new ArrayList<>(modelAttractors));
+					solved++;
+				}
+			}
+
+			logger.outputStringMessage(2, "Attractors of " + solved + " out of " + keys.size()
+				+ " perturbed models calculated in one batch (" + boolNets.size() + " distinct models)\n");
+		} catch (Exception e) {
+			logger.outputStringMessage(1, "Batch attractor calculation failed, calculating "
+				+ "the attractors of every perturbed model separately: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Calculates the attractors (or takes them from the constant propagation, cache or
+	 * store), then determines the global output of the given perturbation model.
+	 */
+	private void calculateResponse(PerturbationModel perturbationModel, String directoryTmp) throws Exception {
+		startExecution();
+		try {
+			calculateAttractorsAndGlobalOutput(perturbationModel, directoryTmp);
+		} finally {
+			endExecution();
+		}
+	}
+
+	private void calculateAttractorsAndGlobalOutput(PerturbationModel perturbationModel, String directoryTmp)
+		throws Exception {
+		simulatedPerturbationModels.incrementAndGet();
+
+		if (Config.getInstance().useConstantPropagation()
+			&& callOnCpu(perturbationModel::calculateAttractorsByPropagation)) {
+			perturbationsResolvedByPropagation.incrementAndGet();
+		} else {
+			long timeoutMillis = getAttractorTimeoutMillis(1);
+			boolean useTimeoutFallback = !Config.getInstance().getTimeoutFallback().equals("NA");
+			ArrayList<String> boolNet = (timeoutMillis != 0 && useTimeoutFallback)
+				? perturbationModel.getModelBoolNet()
+				: null;
+
+			if (timeoutMillis < 0) {
+				calculateAttractorsAfterTimeout(perturbationModel, boolNet, "the model ran out of time");
+			} else {
+				Callable<Void> attractorCalculation = () -> {
+					calculateAttractors(perturbationModel, directoryTmp, timeoutMillis);
+					return null;
+				};
+				try {
+					// an external attractor tool mostly waits on its process
+					if (PerturbationModel.usesExternalProcess(originalModel.getAttractorTool()))
+						attractorCalculation.call();
+					else
+						callOnCpu(attractorCalculation);
+				} catch (TimeoutException e) {
+					calculateAttractorsAfterTimeout(perturbationModel, boolNet,
+						"the attractor calculation ran out of time");
+				}
+			}
+		}
+		callOnCpu(() -> {
+			perturbationModel.calculateGlobalOutput();
+			return null;
+		});
+	}
+
+	private void calculateAttractors(PerturbationModel perturbationModel, String directoryTmp, long timeoutMillis)
+		throws Exception {
+		if (timeoutMillis == 0) {
+			perturbationModel.calculateAttractors(directoryTmp, attractorCache, attractorStore);
+		} else {
+			// an abandoned calculation must not change the perturbation model
+			PerturbationModel timedModel = perturbationModel.copyForTimedCalculation();
+			perturbationModel.setAttractors(TimeLimits.call(() -> {
+				timedModel.calculateAttractors(directoryTmp, attractorCache, attractorStore);
+				return timedModel.getAttractors();
+			}, timeoutMillis, timedModel.getModelName()));
+		}
+	}
+
+	/**
+	 * @param models the number of models calculated together
+	 * @return the time limit of the next attractor calculation in milliseconds: the
+	 * <i>attractor_timeout</i> of every model, reduced to what is left of the
+	 * <i>model_timeout</i> (0 for no limit, -1 if the model has run out of time)
+	 */
+	private long getAttractorTimeoutMillis(int models) {
+		long timeoutMillis = 1000L * Config.getInstance().getAttractorTimeout() * models;
+
+		if (Config.getInstance().getModelTimeout() > 0) {
+			long remainingMillis = 1000L * Config.getInstance().getModelTimeout() - getExecutionMillis();
+			if (remainingMillis <= 0)
+				return -1;
+			timeoutMillis = (timeoutMillis > 0) ? Math.min(timeoutMillis, remainingMillis) : remainingMillis;
+		}
+
+		return timeoutMillis;
+	}
+
+	/**
+	 * The <i>model_timeout</i> is the time that this model was being calculated, i.e.
+	 * while at least one of its calculations (perturbed models or attractor batch) was
+	 * running: the time waiting for a thread, behind the calculations of other models,
+	 * does not count.
+	 */
+	private synchronized void startExecution() {
+		if (runningCalculations++ == 0)
+			executionStartMillis = System.currentTimeMillis();
+	}
+
+	private synchronized void endExecution() {
+		if (--runningCalculations == 0)
+			executionMillis += System.currentTimeMillis() - executionStartMillis;
+	}
+
+	/**
+	 * @return the time (in milliseconds) this model has been calculated so far, see
+	 * {@link #startExecution()}
+	 */
+	private synchronized long getExecutionMillis() {
+		return (runningCalculations > 0)
+			? executionMillis + System.currentTimeMillis() - executionStartMillis
+			: executionMillis;
+	}
+
+	/**
+	 * Uses the <i>timeout_fallback</i> for a perturbed model that ran out of time: the
+	 * minimal trapspaces or stable states are calculated in memory (within the
+	 * <i>attractor_timeout</i>), otherwise (or if the fallback also runs out of time)
+	 * the perturbed model gets no attractors, so its drug combinations are NA.
+	 *
+	 * @param perturbationModel
+	 * @param boolNet the equations of the perturbed model, taken before the attractor
+	 *                calculation (<code>null</code> if the fallback is NA)
+	 * @param reason
+	 */
+	private void calculateAttractorsAfterTimeout(PerturbationModel perturbationModel, ArrayList<String> boolNet,
+												 String reason) throws Exception {
+		String perturbationName = perturbationModel.getPerturbation().getName();
+		timedOutPerturbations.add(perturbationName);
+
+		String timeoutFallback = Config.getInstance().getTimeoutFallback();
+		if (boolNet != null) {
+			try {
+				perturbationModel.setAttractors(callOnCpu(() -> TimeLimits.call(
+					() -> PerturbationModel.solveInMemory(boolNet, timeoutFallback.equals("trapspaces")),
+					1000L * Config.getInstance().getAttractorTimeout())));
+
+				timeoutFallbacks.incrementAndGet();
+				logger.outputStringMessage(2, "Perturbation " + perturbationName + ": " + reason
+					+ ", using the " + timeoutFallback + " instead");
+				return;
+			} catch (TimeoutException e) {
+				// the fallback also ran out of time
 			}
 		}
+
+		perturbationModel.setNoAttractors();
+		logger.outputStringMessage(2, "Perturbation " + perturbationName + ": " + reason + ", no response (NA)");
+	}
+
+	/**
+	 * @return the names of the perturbations whose attractor calculation ran out of time
+	 * (or was not started because the model ran out of time)
+	 */
+	public List<String> getTimedOutPerturbations() {
+		return timedOutPerturbations;
+	}
+
+	/**
+	 * @return how many of the {@link #getTimedOutPerturbations() timed out perturbations}
+	 * were resolved by the <i>timeout_fallback</i> (the rest have no response)
+	 */
+	public int getTimeoutFallbacks() {
+		return timeoutFallbacks.get();
+	}
+
+	private void addPrediction(int index) {
+		PerturbationModel perturbationModel = getPerturbationModel(index);
+
+		// Store response for perturbation set
+		if (hasResponse(index)) {
+			Perturbation perturbation = perturbationPanel.getPerturbations()[index];
+			logger.outputStringMessage(2, "Adding predicted response for perturbation "
+				+ perturbation.getName() + ": " + perturbationModel.getGlobalOutput());
+			if (modelIndex >= 0)
+				perturbation.setPrediction(modelIndex, perturbationModel.getGlobalOutput());
+			else
+				perturbation.addPrediction(perturbationModel.getGlobalOutput());
+		}
+	}
+
+	private void logPerturbationsResolvedByPropagation() {
+		if (Config.getInstance().useConstantPropagation()) {
+			logger.outputStringMessage(2, "\nPerturbed models resolved by constant propagation: "
+				+ perturbationsResolvedByPropagation.get() + " out of " + simulatedPerturbationModels.get());
+		}
+	}
+
+	/**
+	 * Use this function after {@link #simulateResponses(String)} (or {@link #addPredictions()})
+	 * to get the results of this response model, e.g. to add them once more on behalf of
+	 * another model with identical equations (see {@link ModelResponses#replay(PerturbationPanel, int, String)}).
+	 *
+	 * @return the global output of every perturbation and the synergy predictions
+	 */
+	public ModelResponses getModelResponses() {
+		float[] responses = new float[effectiveModels.length];
+		for (int index = 0; index < effectiveModels.length; index++) {
+			responses[index] = hasResponse(index) ? getPerturbationModel(index).getGlobalOutput() : Float.NaN;
+		}
+
+		return new ModelResponses(responses, modelPredictions);
 	}
 
 	/**
@@ -86,97 +753,94 @@ public class ResponseModel {
 	 * values of these models (Bliss rule). Which method will be used is based on
 	 * the {@link eu.druglogics.drabme.input.ConfigParametersDrabme#synergy_method} value.
 	 *
-	 * @param combination
+	 * @param combinationIndex the index of the drug combination in the {@link PerturbationPanel}
+	 *                         (and of its perturbation model)
 	 */
-	private void checkCombinationModelForSynergy(Drug[] combination) {
+	private void checkCombinationModelForSynergy(int combinationIndex) {
+		PerturbationModel drugCombPerturbationModel = getPerturbationModel(combinationIndex);
+		Perturbation perturbation = perturbationPanel.getPerturbations()[combinationIndex];
+		Drug[] combination = perturbation.getDrugs();
+
 		if (combination.length == 2)
 			logger.debug("Combination: " + combination[0].getName() + " " + combination[1].getName());
 
-		int drugHash = DrugPanel.getDrugSetHash(combination);
-		logger.debug("DrugHash:" + drugHash);
+		logger.debug("Drugs:" + perturbation.getDrugMask());
 
 		// get the combined perturbation's drug subsets
-		PerturbationModel drugCombPerturbationModel = perturbationModels.get(getIndexOfPerturbationModel(combination));
-		Perturbation perturbation = drugCombPerturbationModel.getPerturbation();
+		int[] subsets = perturbationPanel.getIndexesOfSubsets(combinationIndex);
+		String drugCombination = perturbation.getName();
+		int ordinal = perturbationPanel.getCombinationOrdinal(combinationIndex);
 
-		Drug[][] subsets = DrugPanel.getCombinationSubsets(combination);
-		String drugCombination = PerturbationPanel.getCombinationName(combination);
+		for (int subset : subsets) {
+			logger.debug("Combination subsets:" + perturbationPanel.getPerturbations()[subset].getName());
+		}
 
-		for (Drug[] subset : subsets) {
-			logger.debug("Combination subsets:" + PerturbationPanel.getCombinationName(subset));
+		if (isStopped(combinationIndex)) {
+			modelPredictions.addNAPrediction(ordinal);
+			logger.outputStringMessage(2, drugCombination + " is not evaluated for synergy (sequential sampling)");
+			return;
 		}
 
 		boolean computable = true;
 
 		// Check if model for combination and all subsets have attractor(s)
-		if (!drugCombPerturbationModel.hasGlobalOutput())
+		if (!hasResponse(combinationIndex))
 			computable = false;
 
-		for (Drug[] subset : subsets) {
-			if (!perturbationModels.get(getIndexOfPerturbationModel(subset)).hasGlobalOutput())
+		for (int subset : subsets) {
+			if (!hasResponse(subset))
 				computable = false;
 		}
 
 		if (computable) {
 			if (Config.getInstance().getSynergyMethod().equals("hsa")) {
-				float minimumGlobalOutput =
-					perturbationModels.get(getIndexOfPerturbationModel(subsets[0])).getGlobalOutput();
+				float minimumGlobalOutput = getPerturbationModel(subsets[0]).getGlobalOutput();
 
 				// find the subset with the minimum global output
-				for (Drug[] subset : subsets) {
-					int index = getIndexOfPerturbationModel(subset);
+				for (int subset : subsets) {
 					minimumGlobalOutput =
-						min(minimumGlobalOutput, perturbationModels.get(index).getGlobalOutput());
+						min(minimumGlobalOutput, getPerturbationModel(subset).getGlobalOutput());
 				}
 
 				if (drugCombPerturbationModel.getGlobalOutput() < minimumGlobalOutput) {
 					perturbation.addSynergyPrediction();
-					modelPredictions.addSynergyPrediction(drugCombination);
+					modelPredictions.addSynergyPrediction(ordinal);
 					logger.outputStringMessage(2, drugCombination + " is synergistic (HSA)");
 				} else {
 					perturbation.addNonSynergyPrediction();
-					modelPredictions.addNonSynergyPrediction(drugCombination);
+					modelPredictions.addNonSynergyPrediction(ordinal);
 					logger.outputStringMessage(2, drugCombination + " is NOT synergistic (HSA)");
 				}
 			} else { // bliss
 				// calculate expected bliss normalized global output from the subsets
 				float expectedBlissGlobalOutput = 1;
-				for (Drug[] subset : subsets) {
-					int index = getIndexOfPerturbationModel(subset);
-					expectedBlissGlobalOutput *= perturbationModels.get(index).getNormalizedGlobalOutput();
+				for (int subset : subsets) {
+					expectedBlissGlobalOutput *= getPerturbationModel(subset).getNormalizedGlobalOutput();
 				}
 
 				if (drugCombPerturbationModel.getNormalizedGlobalOutput() < expectedBlissGlobalOutput) {
 					perturbation.addSynergyPrediction();
-					modelPredictions.addSynergyPrediction(drugCombination);
+					modelPredictions.addSynergyPrediction(ordinal);
 					logger.outputStringMessage(2, drugCombination + " is synergistic (Bliss)");
 				} else {
 					perturbation.addNonSynergyPrediction();
-					modelPredictions.addNonSynergyPrediction(drugCombination);
+					modelPredictions.addNonSynergyPrediction(ordinal);
 					logger.outputStringMessage(2, drugCombination + " is NOT synergistic (Bliss)");
 				}
 			}
 		} else {
-			modelPredictions.addNAPrediction(drugCombination);
+			modelPredictions.addNAPrediction(ordinal);
 			logger.outputStringMessage(2, drugCombination
 				+ " cannot be evaluated for synergy (lacking attractors)");
 		}
 	}
 
-	private int getIndexOfPerturbationModel(Drug[] drugs) {
-
-		// Compute hash for drugs in parameter
-		int hashA = DrugPanel.getDrugSetHash(drugs);
-
-		// Compare with drugs in each perturbationModel
-		for (int i = 0; i < perturbationModels.size(); i++) {
-			int hashB = perturbationModels.get(i).getPerturbation().getPerturbationHash();
-			if (hashB == hashA) {
-				return i;
-			}
-		}
-
-		return -1;
+	/**
+	 * @return the number of perturbation models whose attractors were found by
+	 * {@link PerturbationModel#calculateAttractorsByPropagation() constant propagation}
+	 */
+	public int getPerturbationsResolvedByPropagation() {
+		return perturbationsResolvedByPropagation.get();
 	}
 
 	public ModelPredictions getModelPredictions() {
@@ -0,0 +1,77 @@
+package eu.druglogics.drabme.perturbation;
+
+/**
+ * Streaming mean and variance of the predicted responses of a perturbation (Welford's
+ * algorithm), so that the statistics need neither the stored responses nor a second
+ * pass over them. A response can also be {@link #remove(double) removed}, e.g. when the
+ * response of a model is replaced.
+ *
+ * <br/><br/>
+ * Not thread-safe: the statistics are confined to the thread that adds the responses,
+ * i.e. the one that collects the results of the models (see
+ * {@link Perturbation#setPrediction(int, float)}). A change from any other thread fails.
+ */
+class ResponseStatistics {
+
+	private long count = 0;
+	private double mean = 0;
+	private double squaredDeviations = 0;
+
+	// the thread that changed the statistics first
+	private Thread owner;
+
+	void add(double response) {
+		checkOwner();
+		count++;
+		double delta = response - mean;
+		mean += delta / count;
+		squaredDeviations += delta * (response - mean);
+	}
+
+	/**
+	 * Inverse of {@link #add(double)}.
+	 *
+	 * @param response a response that was added before
+	 */
+	void remove(double response) {
+		checkOwner();
+		if (count <= 1) {
+			count = 0;
+			mean = 0;
+			squaredDeviations = 0;
+			return;
+		}
+
+		double previousMean = (count * mean - response) / (count - 1);
+		squaredDeviations = Math.max(squaredDeviations - (response - mean) * (response - previousMean), 0);
+		mean = previousMean;
+		count--;
+	}
+
+	private void checkOwner() {
+		Thread thread = Thread.currentThread();
+		if (owner == null)
+			owner = thread;
+		else if (owner != thread)
+			throw new IllegalStateException("Response statistics of thread " + owner.getName()
+				+ " changed by thread " + thread.getName());
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the mean of the responses (0 if there are none)
+	 */
+	double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return the sample standard deviation of the responses (0 if there are less than 2)
+	 */
+	double getStandardDeviation() {
+		return (count > 1) ? Math.sqrt(squaredDeviations / (count - 1)) : 0;
+	}
+}
@@ -0,0 +1,219 @@
+package eu.druglogics.drabme.perturbation;
+
+/**
+ * Sequential sampling of the ensemble: the results of the models are added one by one
+ * (in a random model order) and a perturbation is <i>confident</i> once the 95%
+ * confidence intervals of its mean normalized response and, for a drug combination, of
+ * its synergy fraction (Wilson score interval) are narrower than the tolerance.
+ * A confident perturbation is no longer simulated (it is <i>stopped</i>), unless it is
+ * a subset of a drug combination that is not confident yet, whose synergy needs it.
+ * Not thread-safe: the models are added in the thread that collects their results.
+ */
+public class SequentialSampling {
+
+	private static final double Z = 1.96; // 95% confidence
+
+	private final PerturbationPanel perturbationPanel;
+	private final float tolerance;
+	private final int minModels;
+	private final float responseRange;
+
+	private final ResponseStatistics[] responseStatistics;
+	private final long[] synergies;
+	private final long[] nonSynergies;
+	private final boolean[] confident;
+	private final boolean[] stopped;
+	private int models = 0;
+
+	/**
+	 * @param perturbationPanel
+	 * @param tolerance the maximum width of the confidence intervals
+	 * @param minModels the minimum number of model responses (and synergy predictions)
+	 *                  of a confident perturbation
+	 * @param responseRange the range of the global output, to normalize the responses
+	 */
+	public SequentialSampling(PerturbationPanel perturbationPanel, float tolerance, int minModels,
+							  float responseRange) {
+		this.perturbationPanel = perturbationPanel;
+		this.tolerance = tolerance;
+		this.minModels = Math.max(minModels, 2);
+		this.responseRange = (responseRange > 0) ? responseRange : 1;
+
+		int perturbationsNumber = perturbationPanel.getNumberOfPerturbations();
+		responseStatistics = new ResponseStatistics[perturbationsNumber];
+		for (int index = 0; index < perturbationsNumber; index++) {
+			responseStatistics[index] = new ResponseStatistics();
+		}
+		synergies = new long[perturbationsNumber];
+		nonSynergies = new long[perturbationsNumber];
+		confident = new boolean[perturbationsNumber];
+		stopped = new boolean[perturbationsNumber];
+	}
+
+	/**
+	 * Adds the responses and synergy predictions of a model and updates which
+	 * perturbations are confident and stopped.
+	 *
+	 * @param modelResponses
+	 */
+	public void addModel(ModelResponses modelResponses) {
+		models++;
+
+		Perturbation[] perturbations = perturbationPanel.getPerturbations();
+		float[] responses = modelResponses.getResponses();
+		for (int index = 0; index < perturbations.length; index++) {
+			if (!Float.isNaN(responses[index]))
+				responseStatistics[index].add(responses[index]);
+
+			int prediction = modelResponses.getModelPredictions()
+				.getPrediction(perturbationPanel.getCombinationOrdinal(index));
+			if (prediction == ModelPredictions.SYNERGY)
+				synergies[index]++;
+			else if (prediction == ModelPredictions.NON_SYNERGY)
+				nonSynergies[index]++;
+		}
+
+		for (int index = 0; index < perturbations.length; index++) {
+			if (!confident[index])
+				confident[index] = isWithinTolerance(index);
+		}
+
+		// the subsets of a drug combination that is not confident are still needed
+		boolean[] needed = new boolean[perturbations.length];
+		for (int index = 0; index < perturbations.length; index++) {
+			if (confident[index])
+				continue;
+
+			needed[index] = true;
+			for (int subset : perturbationPanel.getIndexesOfSubsets(index)) {
+				if (subset >= 0)
+					needed[subset] = true;
+			}
+		}
+		for (int index = 0; index < perturbations.length; index++) {
+			stopped[index] = !needed[index];
+		}
+	}
+
+	private boolean isWithinTolerance(int index) {
+		if (responseStatistics[index].getCount() < minModels
+			|| 2 * getResponseInterval(index) > tolerance)
+			return false;
+
+		if (perturbationPanel.getPerturbations()[index].getDrugs().length < 2)
+			return true;
+
+		return getSynergyPredictions(index) >= minModels && 2 * getSynergyFractionInterval(index) <= tolerance;
+	}
+
+	/**
+	 * @return the number of models added so far
+	 */
+	public int getModels() {
+		return models;
+	}
+
+	/**
+	 * @return the perturbations that are not to be simulated in the next models (a copy)
+	 */
+	public boolean[] getStoppedPerturbations() {
+		return stopped.clone();
+	}
+
+	/**
+	 * @return true if every perturbation is stopped, so no more models are needed
+	 */
+	public boolean isFinished() {
+		for (boolean isStopped : stopped) {
+			if (!isStopped)
+				return false;
+		}
+		return stopped.length > 0;
+	}
+
+	public boolean isConfident(int index) {
+		return confident[index];
+	}
+
+	/**
+	 * @return the number of confident perturbations
+	 */
+	public int getConfidentPerturbations() {
+		int confidentPerturbations = 0;
+		for (boolean isConfident : confident) {
+			if (isConfident)
+				confidentPerturbations++;
+		}
+		return confidentPerturbations;
+	}
+
+	/**
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return the number of model responses of the perturbation
+	 */
+	public long getResponses(int index) {
+		return responseStatistics[index].getCount();
+	}
+
+	/**
+	 * @param index the index of a perturbation in the {@link PerturbationPanel}
+	 * @return the half-width of the confidence interval of the mean normalized response
+	 * (infinite with less than 2 responses)
+	 */
+	public double getResponseInterval(int index) {
+		long count = responseStatistics[index].getCount();
+		if (count < 2)
+			return Double.POSITIVE_INFINITY;
+
+		return Z * responseStatistics[index].getStandardDeviation() / responseRange / Math.sqrt(count);
+	}
+
+	/**
+	 * @param index the index of a drug combination in the {@link PerturbationPanel}
+	 * @return the number of synergy and non-synergy predictions (without the NA ones)
+	 */
+	public long getSynergyPredictions(int index) {
+		return synergies[index] + nonSynergies[index];
+	}
+
+	/**
+	 * @param index the index of a drug combination in the {@link PerturbationPanel}
+	 * @return the fraction of the synergy and non-synergy predictions that are synergies
+	 * (NaN if there are none)
+	 */
+	public double getSynergyFraction(int index) {
+		long predictions = getSynergyPredictions(index);
+		return (predictions > 0) ? (double) synergies[index] / predictions : Double.NaN;
+	}
+
+	/**
+	 * The Wilson score interval does not collapse when all the predictions are the same
+	 * (a synergy fraction of 0 or 1), unlike the normal approximation.
+	 *
+	 * @param index the index of a drug combination in the {@link PerturbationPanel}
+	 * @return the half-width of the confidence interval of the synergy fraction
+	 * (infinite if there are no predictions)
+	 */
+	public double getSynergyFractionInterval(int index) {
+		long predictions = getSynergyPredictions(index);
+		if (predictions == 0)
+			return Double.POSITIVE_INFINITY;
+
+		double fraction = getSynergyFraction(index);
+		double z2 = Z * Z;
+		return Z * Math.sqrt(fraction * (1 - fraction) / predictions + z2 / (4.0 * predictions * predictions))
+			/ (1 + z2 / predictions);
+	}
+
+	public String getStatistics() {
+		int stoppedPerturbations = 0;
+		for (boolean isStopped : stopped) {
+			if (isStopped)
+				stoppedPerturbations++;
+		}
+
+		return "Sequential sampling: " + getConfidentPerturbations() + " out of " + confident.length
+			+ " perturbations confident (" + stoppedPerturbations + " no longer simulated) after "
+			+ models + " models";
+	}
+}
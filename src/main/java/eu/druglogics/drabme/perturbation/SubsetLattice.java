@@ -0,0 +1,94 @@
+package eu.druglogics.drabme.perturbation;
+
+import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.drabme.drug.DrugPanel;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The subset lattice of the perturbations of a {@link PerturbationPanel}, computed once
+ * per panel: the index of every perturbation by its drug set mask (see
+ * {@link DrugPanel#getDrugSetMask(Drug[])}) and, for every drug combination, the indexes
+ * of its subsets that are one drug smaller (in the order of
+ * {@link DrugPanel#getCombinationSubsets(Drug[])}), so that the synergy of a combination
+ * is checked without generating its subsets or searching for them in the panel.
+ * The lattice order (by number of drugs) puts every subset before its supersets.
+ * Immutable, so it is shared by all the models.
+ */
+class SubsetLattice {
+
+	private static final int[] NO_SUBSETS = new int[0];
+
+	private final DrugPanel drugPanel;
+	private final HashMap<BitSet, Integer> indexes = new HashMap<>();
+	private final int[][] subsets;
+	private final int[] order;
+
+	/**
+	 * @param perturbations
+	 * @param drugPanel the drugs of the perturbations, whose ids make the drug set masks
+	 */
+	SubsetLattice(Perturbation[] perturbations, DrugPanel drugPanel) {
+		this.drugPanel = drugPanel;
+		for (int index = 0; index < perturbations.length; index++) {
+			indexes.put(perturbations[index].getDrugMask(), index);
+		}
+
+		subsets = new int[perturbations.length][];
+		for (int index = 0; index < perturbations.length; index++) {
+			Drug[] drugs = perturbations[index].getDrugs();
+			if (drugs.length < 2) {
+				subsets[index] = NO_SUBSETS;
+				continue;
+			}
+
+			// the subsets without the last drug, ..., without the first drug
+			BitSet mask = perturbations[index].getDrugMask();
+			subsets[index] = new int[drugs.length];
+			for (int subset = 0; subset < drugs.length; subset++) {
+				BitSet subsetMask = (BitSet) mask.clone();
+				subsetMask.clear(drugPanel.getDrugId(drugs[drugs.length - 1 - subset].getName()));
+				subsets[index][subset] = indexes.getOrDefault(subsetMask, -1);
+			}
+		}
+
+		order = IntStream.range(0, perturbations.length).boxed()
+			.sorted(Comparator.comparingInt(index -> perturbations[index].getDrugs().length))
+			.mapToInt(Integer::intValue)
+			.toArray();
+	}
+
+	/**
+	 * @param drugs
+	 * @return the index of the perturbation with the given drugs, or -1 if it is not
+	 * in the panel
+	 */
+	int getIndex(Drug[] drugs) {
+		for (Drug drug : drugs) {
+			if (drugPanel.getDrugId(drug.getName()) < 0)
+				return -1;
+		}
+		return indexes.getOrDefault(drugPanel.getDrugSetMask(drugs), -1);
+	}
+
+	/**
+	 * @param index
+	 * @return the indexes of the subsets of the perturbation with the given index that are
+	 * one drug smaller (-1 for a subset that is not in the panel), or an empty array for a
+	 * single drug perturbation. Not to be modified
+	 */
+	int[] getSubsets(int index) {
+		return subsets[index];
+	}
+
+	/**
+	 * @return the indexes of the perturbations by number of drugs (in panel order for the
+	 * same number), so that the subsets of a perturbation come before it. Not to be modified
+	 */
+	int[] getOrder() {
+		return order;
+	}
+}
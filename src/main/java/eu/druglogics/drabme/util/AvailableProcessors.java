@@ -0,0 +1,151 @@
+package eu.druglogics.drabme.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects the number of processors that drabme can actually use. Besides the
+ * processors reported by the JVM, the CPU limits of the process' control group
+ * (cgroup v1 or v2) are taken into account: the CFS quota (e.g. <code>docker --cpus</code>
+ * or a Kubernetes CPU limit) and the allowed CPU set. Older JVMs report all the
+ * processors of the host even when such limits are set.
+ */
+public class AvailableProcessors {
+
+	private static final String CGROUP_ROOT = "/sys/fs/cgroup";
+	private static final String PROC_SELF_CGROUP = "/proc/self/cgroup";
+
+	/**
+	 * @return the number of processors available to the process (at least 1)
+	 */
+	public static int detect() {
+		List<String> cgroups;
+		try {
+			cgroups = Files.readAllLines(new File(PROC_SELF_CGROUP).toPath());
+		} catch (IOException e) {
+			cgroups = new ArrayList<>();
+		}
+
+		return detect(new File(CGROUP_ROOT), cgroups, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param cgroupRoot the cgroup filesystem mount point
+	 * @param cgroups the lines of <code>/proc/self/cgroup</code>
+	 * @param availableProcessors as reported by the JVM
+	 * @return the minimum of the given processors and the cgroup CPU limits (at least 1)
+	 */
+	static int detect(File cgroupRoot, List<String> cgroups, int availableProcessors) {
+		int processors = availableProcessors;
+
+		for (File directory : getCgroupDirectories(cgroupRoot, cgroups)) {
+			try {
+				processors = Math.min(processors, getCgroupLimit(directory));
+			} catch (NumberFormatException e) {
+				// not a cgroup file we understand: ignore it
+			}
+		}
+
+		return Math.max(1, processors);
+	}
+
+	private static int getCgroupLimit(File directory) {
+		int processors = Integer.MAX_VALUE;
+
+		// cgroup v2
+		String cpuMax = readFirstLine(new File(directory, "cpu.max"));
+		if (cpuMax != null) {
+			String[] quotaAndPeriod = cpuMax.split("\\s+");
+			if (quotaAndPeriod.length == 2 && !quotaAndPeriod[0].equals("max"))
+				processors = Math.min(processors,
+					quotaToProcessors(Long.parseLong(quotaAndPeriod[0]), Long.parseLong(quotaAndPeriod[1])));
+		}
+		processors = Math.min(processors, countCpus(readFirstLine(new File(directory, "cpuset.cpus.effective"))));
+
+		// cgroup v1
+		String quota = readFirstLine(new File(directory, "cpu.cfs_quota_us"));
+		String period = readFirstLine(new File(directory, "cpu.cfs_period_us"));
+		if (quota != null && period != null && Long.parseLong(quota) > 0)
+			processors = Math.min(processors, quotaToProcessors(Long.parseLong(quota), Long.parseLong(period)));
+		processors = Math.min(processors, countCpus(readFirstLine(new File(directory, "cpuset.cpus"))));
+
+		return processors;
+	}
+
+	/**
+	 * @return the cgroup directories of the process (for every controller, both its own
+	 * cgroup and the mount point of the controller, as inside containers the own cgroup
+	 * is usually mounted as the root)
+	 */
+	private static List<File> getCgroupDirectories(File cgroupRoot, List<String> cgroups) {
+		List<File> directories = new ArrayList<>();
+		directories.add(cgroupRoot);
+
+		for (String cgroup : cgroups) {
+			// hierarchy-ID:controller-list:cgroup-path
+			String[] fields = cgroup.split(":", 3);
+			if (fields.length != 3)
+				continue;
+
+			List<File> controllerRoots = new ArrayList<>();
+			List<String> controllers = Arrays.asList(fields[1].split(","));
+			if (fields[1].isEmpty()) {
+				controllerRoots.add(cgroupRoot);
+			} else if (controllers.contains("cpu") || controllers.contains("cpuset")) {
+				controllerRoots.add(new File(cgroupRoot, fields[1]));
+				for (String controller : controllers) {
+					controllerRoots.add(new File(cgroupRoot, controller));
+				}
+			}
+
+			for (File controllerRoot : controllerRoots) {
+				if (!directories.contains(controllerRoot))
+					directories.add(controllerRoot);
+				File directory = new File(controllerRoot, fields[2]);
+				if (!directories.contains(directory))
+					directories.add(directory);
+			}
+		}
+
+		return directories;
+	}
+
+	private static int quotaToProcessors(long quota, long period) {
+		return (int) Math.max(1, (quota + period - 1) / period);
+	}
+
+	/**
+	 * @param cpuList e.g. "0-3,6,8-9"
+	 * @return the number of CPUs in the list or {@link Integer#MAX_VALUE} if the list
+	 * is missing or empty
+	 */
+	static int countCpus(String cpuList) {
+		if (cpuList == null || cpuList.trim().isEmpty())
+			return Integer.MAX_VALUE;
+
+		int count = 0;
+		for (String range : cpuList.trim().split(",")) {
+			String[] bounds = range.split("-");
+			count += (bounds.length == 2)
+				? Integer.parseInt(bounds[1].trim()) - Integer.parseInt(bounds[0].trim()) + 1
+				: 1;
+		}
+		return count;
+	}
+
+	private static String readFirstLine(File file) {
+		if (!file.isFile())
+			return null;
+
+		try {
+			List<String> lines = Files.readAllLines(file.toPath());
+			return lines.isEmpty() ? null : lines.get(0).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
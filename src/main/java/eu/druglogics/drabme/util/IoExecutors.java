@@ -0,0 +1,74 @@
+package eu.druglogics.drabme.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for tasks that mostly wait (e.g. on an external attractor tool process)
+ * instead of using the CPU. Virtual threads are used when the JVM has them (Java 21+),
+ * so that every task gets its own cheap thread. Otherwise an elastic pool of platform
+ * threads is used, whose idle threads are released after a while.
+ */
+public class IoExecutors {
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * @param maxThreads the maximum number of platform threads, when virtual threads
+	 *                   are not available
+	 * @return a new executor (has to be shut down)
+	 */
+	public static ExecutorService newIoExecutor(int maxThreads) {
+		ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+		return (virtualThreadExecutor != null) ? virtualThreadExecutor : newElasticExecutor(maxThreads);
+	}
+
+	/**
+	 * @return true if {@link #newIoExecutor(int)} uses virtual threads
+	 */
+	public static boolean hasVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Drabme is compiled for Java 8, so the virtual thread executor is looked up by reflection.
+	 *
+	 * @return a new virtual thread per task executor or <code>null</code> if the JVM
+	 * does not support virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	static ExecutorService newElasticExecutor(int maxThreads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+			KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "drabme-io-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
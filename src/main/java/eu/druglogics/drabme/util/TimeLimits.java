@@ -0,0 +1,171 @@
+package eu.druglogics.drabme.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Runs computations with a time limit. The computation runs on a separate (daemon)
+ * thread, which is interrupted when the time runs out: the attractor solvers and
+ * workers stop at an interrupt, other computations may go on in the background but
+ * their result is not waited for. A computation that can run out of time must
+ * therefore only change its own state (e.g. a copy of the model), whose result is used
+ * once it has finished. The external processes of a computation are not stopped by the
+ * interrupt, so they can be destroyed by a marker in their command line (see
+ * {@link #call(Callable, long, String)}).
+ *
+ * <br/><br/>
+ * The computations run on a bounded pool of threads, so that computations that go on
+ * after they were abandoned cannot pile up threads: when all threads are busy, a
+ * computation waits for a thread and its time limit starts once it runs. A computation
+ * that is abandoned (or whose caller is interrupted) before it started does not run.
+ */
+public class TimeLimits {
+
+	private static final long PROCESS_GRACE_MILLIS = 1000;
+
+	static final int MAX_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+		60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+		Thread thread = new Thread(runnable, "drabme-time-limited");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param computation
+	 * @param timeoutMillis 0 (or negative) for no time limit: the computation then runs
+	 *                      in the calling thread
+	 * @return the result of the computation
+	 * @throws TimeoutException if the time ran out
+	 * @throws Exception the exception thrown by the computation
+	 */
+	public static <T> T call(Callable<T> computation, long timeoutMillis) throws Exception {
+		return call(computation, timeoutMillis, null);
+	}
+
+	/**
+	 * Same as {@link #call(Callable, long)}, for a computation that starts external
+	 * processes (e.g. an attractor tool that is given a model file): when the time runs
+	 * out, the processes of drabme whose command line contains the given marker (e.g. the
+	 * unique name of the model file) are destroyed, with their own child processes.
+	 * The processes started by the computation until it stops at the interrupt are also
+	 * destroyed, within a short grace period.
+	 *
+	 * @param computation
+	 * @param timeoutMillis
+	 * @param processMarker <code>null</code> if the computation starts no processes
+	 */
+	public static <T> T call(Callable<T> computation, long timeoutMillis, String processMarker) throws Exception {
+		if (timeoutMillis <= 0)
+			return computation.call();
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		Future<T> future = executor.submit(() -> {
+			started.countDown();
+			try {
+				return computation.call();
+			} finally {
+				finished.countDown();
+			}
+		});
+		try {
+			started.await();
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | InterruptedException e) {
+			future.cancel(true);
+			if (processMarker != null) {
+				destroyProcesses(processMarker);
+				if (finished.await(PROCESS_GRACE_MILLIS, TimeUnit.MILLISECONDS))
+					destroyProcesses(processMarker);
+			}
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if the processes of a computation that ran out of time can be
+	 * destroyed (Java 9+, see {@link #destroyProcesses(String)})
+	 */
+	public static boolean canDestroyProcesses() {
+		try {
+			Class.forName("java.lang.ProcessHandle");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Drabme is compiled for Java 8, so the process handles (Java 9+) are used by
+	 * reflection. On Java 8 no process is destroyed.
+	 *
+	 * @param processMarker
+	 * @return the number of processes with the marker in their command line that were
+	 * destroyed
+	 */
+	static int destroyProcesses(String processMarker) {
+		try {
+			Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+			Method descendants = processHandle.getMethod("descendants");
+			Method info = processHandle.getMethod("info");
+			Method commandLine = Class.forName("java.lang.ProcessHandle$Info").getMethod("commandLine");
+			Method destroyForcibly = processHandle.getMethod("destroyForcibly");
+
+			Object current = processHandle.getMethod("current").invoke(null);
+			ArrayList<Object> markedProcesses = new ArrayList<>();
+			for (Object process : ((Stream<?>) descendants.invoke(current)).toArray()) {
+				Optional<?> line = (Optional<?>) commandLine.invoke(info.invoke(process));
+				if (line.isPresent() && containsToken(line.get().toString(), processMarker))
+					markedProcesses.add(process);
+			}
+
+			for (Object process : markedProcesses) {
+				for (Object child : ((Stream<?>) descendants.invoke(process)).toArray()) {
+					destroyForcibly.invoke(child);
+				}
+				destroyForcibly.invoke(process);
+			}
+			return markedProcesses.size();
+		} catch (ReflectiveOperationException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param commandLine
+	 * @param processMarker
+	 * @return true if the command line contains the marker as a token of its own, i.e. not
+	 * directly preceded or followed by a letter or digit (e.g. <i>model_timed_1</i> is
+	 * in <i>/tmp/model_timed_1.bnet</i> but not in <i>/tmp/model_timed_12.bnet</i>)
+	 */
+	static boolean containsToken(String commandLine, String processMarker) {
+		for (int index = commandLine.indexOf(processMarker); index >= 0;
+			 index = commandLine.indexOf(processMarker, index + 1)) {
+			int end = index + processMarker.length();
+			if ((index == 0 || !Character.isLetterOrDigit(commandLine.charAt(index - 1)))
+				&& (end == commandLine.length() || !Character.isLetterOrDigit(commandLine.charAt(end))))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,136 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttractorCacheTest {
+
+	@Test
+	void test_get_key() {
+		ArrayList<String> boolNet = newArrayList("A, ( 0 )", "B, ( A ) & ! ( C )", "C, ( C )");
+
+		String key = AttractorCache.getKey("biolqm_stable_states", boolNet);
+
+		assertEquals(64, key.length());
+		assertEquals(key, AttractorCache.getKey("biolqm_stable_states",
+			newArrayList("A, ( 0 )", "B, ( A ) & ! ( C )", "C, ( C )")));
+		assertNotEquals(key, AttractorCache.getKey("biolqm_trapspaces", boolNet));
+		assertNotEquals(key, AttractorCache.getKey("biolqm_stable_states",
+			newArrayList("A, ( 1 )", "B, ( A ) & ! ( C )", "C, ( C )")));
+		assertNotEquals(key, AttractorCache.getKey("biolqm_stable_states",
+			newArrayList("B, ( A ) & ! ( C )", "A, ( 0 )", "C, ( C )")));
+	}
+
+	@Test
+	void test_hits_and_misses() throws Exception {
+		AttractorCache attractorCache = new AttractorCache(10);
+		AtomicInteger computations = new AtomicInteger();
+
+		ArrayList<String> attractors = attractorCache.getAttractors("key1", () -> {
+			computations.incrementAndGet();
+			return newArrayList("010", "011");
+		});
+		ArrayList<String> cachedAttractors = attractorCache.getAttractors("key1", () -> {
+			computations.incrementAndGet();
+			return newArrayList("111");
+		});
+
+		assertEquals(newArrayList("010", "011"), attractors);
+		assertEquals(newArrayList("010", "011"), cachedAttractors);
+		assertEquals(1, computations.get());
+		assertTrue(attractorCache.contains("key1"));
+		assertFalse(attractorCache.contains("key2"));
+		assertEquals(1, attractorCache.getHits());
+		assertEquals(1, attractorCache.getMisses());
+		assertEquals("Attractor cache: 1 hits, 1 misses (50.0% hits), 0 evictions",
+			attractorCache.getStatistics());
+	}
+
+	@Test
+	void test_single_flight() throws Exception {
+		AttractorCache attractorCache = new AttractorCache(10);
+		AtomicInteger computations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ArrayList<Future<ArrayList<String>>> results = new ArrayList<>();
+			results.add(executor.submit(() -> attractorCache.getAttractors("key", () -> {
+				computations.incrementAndGet();
+				started.countDown();
+				release.await();
+				return newArrayList("000");
+			})));
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			for (int i = 0; i < 3; i++) {
+				results.add(executor.submit(() -> attractorCache.getAttractors("key", () -> {
+					computations.incrementAndGet();
+					return newArrayList("111");
+				})));
+			}
+			release.countDown();
+
+			for (Future<ArrayList<String>> result : results) {
+				assertEquals(newArrayList("000"), result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, computations.get());
+		assertEquals(3, attractorCache.getHits());
+		assertEquals(1, attractorCache.getMisses());
+	}
+
+	@Test
+	void test_eviction() throws Exception {
+		AttractorCache attractorCache = new AttractorCache(2);
+
+		attractorCache.getAttractors("key1", () -> newArrayList("0"));
+		attractorCache.getAttractors("key2", () -> newArrayList("1"));
+		attractorCache.getAttractors("key1", () -> newArrayList("0"));
+		attractorCache.getAttractors("key3", () -> newArrayList("-"));
+
+		assertEquals(2, attractorCache.size());
+		assertEquals(1, attractorCache.getEvictions());
+
+		// key2 was the least recently used
+		AtomicInteger computations = new AtomicInteger();
+		attractorCache.getAttractors("key1", () -> {
+			computations.incrementAndGet();
+			return newArrayList("0");
+		});
+		assertEquals(0, computations.get());
+		attractorCache.getAttractors("key2", () -> {
+			computations.incrementAndGet();
+			return newArrayList("1");
+		});
+		assertEquals(1, computations.get());
+	}
+
+	@Test
+	void test_failed_computation_is_not_cached() throws Exception {
+		AttractorCache attractorCache = new AttractorCache(10);
+
+		Exception exception = assertThrows(Exception.class, () ->
+			attractorCache.getAttractors("key", () -> {
+				throw new Exception("Tool failed");
+			}));
+		assertEquals("Tool failed", exception.getMessage());
+		assertEquals(0, attractorCache.size());
+
+		assertEquals(newArrayList("1"), attractorCache.getAttractors("key", () -> newArrayList("1")));
+	}
+}
@@ -0,0 +1,116 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttractorStoreTest {
+
+	@TempDir
+	File tempDir;
+
+	private final String key1 = AttractorCache.getKey("biolqm_trapspaces", newArrayList("A, ( 0 )", "B, ( B )"));
+	private final String key2 = AttractorCache.getKey("biolqm_trapspaces", newArrayList("A, ( 1 )", "B, ( B )"));
+	private final String key3 = AttractorCache.getKey("biolqm_stable_states", newArrayList("A, ( 1 )", "B, ( B )"));
+
+	@Test
+	void test_add_and_reopen() throws IOException {
+		String directory = new File(tempDir, "store").getAbsolutePath();
+
+		AttractorStore attractorStore = new AttractorStore(directory);
+		assertEquals(0, attractorStore.size());
+		assertNull(attractorStore.getAttractors(key1));
+
+		attractorStore.addAttractors(key1, newArrayList("0-"));
+		attractorStore.addAttractors(key2, newArrayList("10", "11"));
+		attractorStore.addAttractors(key3, new ArrayList<>());
+		assertEquals(newArrayList("10", "11"), attractorStore.getAttractors(key2));
+		attractorStore.close();
+
+		AttractorStore reopenedStore = new AttractorStore(directory);
+		assertEquals(3, reopenedStore.size());
+		assertEquals(newArrayList("0-"), reopenedStore.getAttractors(key1));
+		assertEquals(newArrayList("10", "11"), reopenedStore.getAttractors(key2));
+		assertEquals(new ArrayList<>(), reopenedStore.getAttractors(key3));
+		assertTrue(reopenedStore.contains(key2));
+		assertFalse(reopenedStore.contains(AttractorCache.getKey("biolqm_trapspaces", newArrayList("A, ( A )"))));
+		assertEquals("Attractor store: 3 of 3 lookups found, 0 models added (3 models in "
+			+ reopenedStore.getFilename() + ")", reopenedStore.getStatistics());
+		reopenedStore.close();
+	}
+
+	@Test
+	void test_packed_attractors() throws IOException {
+		String directory = tempDir.getAbsolutePath();
+		ArrayList<String> attractors = newArrayList("0110-1-0010", "1111111111-", "-----------");
+
+		AttractorStore attractorStore = new AttractorStore(directory);
+		attractorStore.addAttractors(key1, attractors);
+		attractorStore.close();
+
+		// header (12 bytes), key (32 bytes), 2 ints and 33 states in 9 bytes
+		assertEquals(12 + 32 + 8 + 9, new File(directory, AttractorStore.FILENAME).length());
+
+		AttractorStore reopenedStore = new AttractorStore(directory);
+		assertEquals(attractors, reopenedStore.getAttractors(key1));
+		reopenedStore.close();
+	}
+
+	@Test
+	void test_incomplete_record_is_discarded() throws IOException {
+		String directory = tempDir.getAbsolutePath();
+
+		AttractorStore attractorStore = new AttractorStore(directory);
+		attractorStore.addAttractors(key1, newArrayList("01"));
+		attractorStore.addAttractors(key2, newArrayList("0110", "1001"));
+		attractorStore.close();
+
+		File file = new File(directory, AttractorStore.FILENAME);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(file.length() - 1);
+		}
+
+		AttractorStore reopenedStore = new AttractorStore(directory);
+		assertEquals(1, reopenedStore.size());
+		assertEquals(newArrayList("01"), reopenedStore.getAttractors(key1));
+		assertNull(reopenedStore.getAttractors(key2));
+
+		reopenedStore.addAttractors(key2, newArrayList("0110", "1001"));
+		reopenedStore.close();
+
+		AttractorStore repairedStore = new AttractorStore(directory);
+		assertEquals(2, repairedStore.size());
+		assertEquals(newArrayList("0110", "1001"), repairedStore.getAttractors(key2));
+		repairedStore.close();
+	}
+
+	@Test
+	void test_store_is_locked_while_open() throws IOException {
+		String directory = tempDir.getAbsolutePath();
+
+		AttractorStore attractorStore = new AttractorStore(directory);
+		attractorStore.addAttractors(key1, newArrayList("01"));
+		assertThrows(IOException.class, () -> new AttractorStore(directory));
+		assertEquals(newArrayList("01"), attractorStore.getAttractors(key1));
+		attractorStore.close();
+
+		AttractorStore reopenedStore = new AttractorStore(directory);
+		assertEquals(1, reopenedStore.size());
+		reopenedStore.close();
+	}
+
+	@Test
+	void test_not_a_store_file() throws IOException {
+		Files.write(new File(tempDir, AttractorStore.FILENAME).toPath(), "A, ( 0 )\n".getBytes());
+
+		assertThrows(IOException.class, () -> new AttractorStore(tempDir.getAbsolutePath()));
+	}
+}
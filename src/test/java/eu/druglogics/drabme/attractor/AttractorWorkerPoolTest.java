@@ -0,0 +1,134 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttractorWorkerPoolTest {
+
+	@TempDir
+	File tempDir;
+
+	private List<String> mockWorkerCommand(String... args) {
+		List<String> command = newArrayList(
+			new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(),
+			"-cp", System.getProperty("java.class.path"), MockAttractorWorker.class.getName());
+		command.addAll(Arrays.asList(args));
+		return command;
+	}
+
+	@Test
+	void test_calculate_attractors() throws Exception {
+		AttractorWorkerPool attractorWorkers = new AttractorWorkerPool(mockWorkerCommand(), "mpbn_trapspaces", 2);
+		try {
+			assertEquals(newArrayList("0-1"),
+				attractorWorkers.calculateAttractors(newArrayList("A, ( 0 )", "B, ( A )", "C, ( 1 )")));
+
+			// concurrent requests are served by both workers
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			ArrayList<Future<ArrayList<String>>> futures = new ArrayList<>();
+			for (int request = 0; request < 20; request++) {
+				String constant = String.valueOf(request % 2);
+				futures.add(executor.submit(() -> attractorWorkers.calculateAttractors(
+					newArrayList("A, ( " + constant + " )", "B, ( A ) & ! ( B )"))));
+			}
+			for (int request = 0; request < 20; request++) {
+				assertEquals(newArrayList((request % 2) + "-"), futures.get(request).get());
+			}
+			executor.shutdown();
+
+			assertEquals(0, attractorWorkers.getRestarts());
+			assertEquals("Attractor workers: 21 models sent to 2 workers (0 batches), 0 restarts",
+				attractorWorkers.getStatistics());
+		} finally {
+			attractorWorkers.close();
+		}
+	}
+
+	@Test
+	void test_restart_on_crash() throws Exception {
+		AttractorWorkerPool attractorWorkers = new AttractorWorkerPool(mockWorkerCommand(), "mpbn_trapspaces", 1);
+		try {
+			String crashFile = new File(tempDir, "crashed").getAbsolutePath();
+
+			// the worker crashes and its replacement solves the model
+			assertEquals(newArrayList("1-"),
+				attractorWorkers.calculateAttractors(newArrayList("A, ( 1 )", "CRASH, " + crashFile)));
+			assertEquals(1, attractorWorkers.getRestarts());
+
+			assertEquals(newArrayList("0"), attractorWorkers.calculateAttractors(newArrayList("A, ( 0 )")));
+			assertEquals(1, attractorWorkers.getRestarts());
+		} finally {
+			attractorWorkers.close();
+		}
+	}
+
+	@Test
+	void test_worker_error() throws Exception {
+		AttractorWorkerPool attractorWorkers = new AttractorWorkerPool(mockWorkerCommand(), "mpbn_trapspaces", 1);
+		try {
+			Exception exception = assertThrows(Exception.class,
+				() -> attractorWorkers.calculateAttractors(newArrayList("FAIL, ( 1 )")));
+			assertFalse(exception instanceof IOException);
+			assertEquals("Attractor worker failed: cannot solve the model", exception.getMessage());
+
+			// the worker is still usable
+			assertEquals(newArrayList("1"), attractorWorkers.calculateAttractors(newArrayList("A, ( 1 )")));
+			assertEquals(0, attractorWorkers.getRestarts());
+		} finally {
+			attractorWorkers.close();
+		}
+	}
+
+	@Test
+	void test_batch() throws Exception {
+		AttractorWorkerPool attractorWorkers = new AttractorWorkerPool(mockWorkerCommand(), "mpbn_trapspaces", 1);
+		try {
+			ArrayList<ArrayList<String>> results = attractorWorkers.calculateAttractors(newArrayList(
+				newArrayList("A, ( 0 )", "B, ( A )"), newArrayList("FAIL, ( 1 )"), newArrayList("A, ( 1 )")));
+			assertEquals(3, results.size());
+			assertEquals(newArrayList("0-"), results.get(0));
+			assertNull(results.get(1));
+			assertEquals(newArrayList("1"), results.get(2));
+
+			// the worker crashes at the second model: the rest are left unsolved
+			String crashFile = new File(tempDir, "crashed").getAbsolutePath();
+			results = attractorWorkers.calculateAttractors(newArrayList(newArrayList("A, ( 0 )"),
+				newArrayList("CRASH, " + crashFile), newArrayList("A, ( 1 )")));
+			assertEquals(newArrayList("0"), results.get(0));
+			assertNull(results.get(1));
+			assertNull(results.get(2));
+			assertEquals(1, attractorWorkers.getRestarts());
+
+			assertEquals(newArrayList("1-"),
+				attractorWorkers.calculateAttractors(newArrayList("A, ( 1 )", "CRASH, " + crashFile)));
+			assertEquals("Attractor workers: 7 models sent to 1 workers (2 batches), 1 restarts",
+				attractorWorkers.getStatistics());
+		} finally {
+			attractorWorkers.close();
+		}
+	}
+
+	@Test
+	void test_worker_that_does_not_answer() {
+		assertThrows(IOException.class, () -> new AttractorWorkerPool(mockWorkerCommand("--exit"), "mpbn_trapspaces", 2));
+	}
+
+	@Test
+	void test_worker_of_another_attractor_tool() {
+		IOException exception = assertThrows(IOException.class,
+			() -> new AttractorWorkerPool(mockWorkerCommand("--tool", "bnet_reduction"), "mpbn_trapspaces", 1));
+		assertTrue(exception.getMessage().contains("`bnet_reduction`, not of the attractor tool `mpbn_trapspaces`"));
+	}
+}
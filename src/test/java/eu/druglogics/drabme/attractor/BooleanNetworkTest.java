@@ -0,0 +1,117 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+
+import static eu.druglogics.drabme.attractor.BooleanNetwork.FREE;
+import static eu.druglogics.drabme.attractor.BooleanNetwork.ONE;
+import static eu.druglogics.drabme.attractor.BooleanNetwork.ZERO;
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BooleanNetworkTest {
+
+	@Test
+	void test_compile_boolnet() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( C )",
+			"B, ( A ) & ! ( C )",
+			"C, ( 1 )",
+			"D, ( A | B ) & ! ( C | A )"));
+
+		assertEquals(network.size(), 4);
+		assertEquals(network.getNodeName(1), "B");
+		assertEquals(network.getIndexOfNode("D"), 3);
+		assertEquals(network.getIndexOfNode("E"), -1);
+		assertArrayEquals(network.getRegulators(1), new int[]{0, 2});
+		assertArrayEquals(network.getRegulators(3), new int[]{0, 1, 2});
+		assertArrayEquals(network.getTargets(0), new int[]{1, 3});
+		assertArrayEquals(network.getTargets(2), new int[]{0, 1, 3});
+	}
+
+	@Test
+	void test_cone_of_influence() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( B )",
+			"B, ( A ) & ! ( C )",
+			"C, ( 1 )",
+			"D, ( A )",
+			"E, ( D | E )",
+			"F, ( F )"));
+
+		assertArrayEquals(network.getConeOfInfluence(newArrayList("B")),
+			new boolean[]{true, true, true, false, false, false});
+		assertArrayEquals(network.getConeOfInfluence(newArrayList("E", "X")),
+			new boolean[]{true, true, true, true, true, false});
+		assertArrayEquals(network.getConeOfInfluence(newArrayList("C", "F")),
+			new boolean[]{false, false, true, false, false, true});
+	}
+
+	@Test
+	void test_compile_errors() {
+		Exception exception1 = assertThrows(Exception.class, () -> new BooleanNetwork(newArrayList("A, ( B )")));
+		assertEquals(exception1.getMessage(), "Node `B` in function `( B )` has no equation");
+
+		Exception exception2 = assertThrows(Exception.class, () -> new BooleanNetwork(newArrayList("A, ( A & )")));
+		assertEquals(exception2.getMessage(), "Missing operand in function `( A & )`");
+
+		Exception exception3 = assertThrows(Exception.class, () -> new BooleanNetwork(newArrayList("A ( A )")));
+		assertEquals(exception3.getMessage(), "BoolNet line `A ( A )` has no target");
+	}
+
+	@Test
+	void test_evaluate() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( A ) & ! ( B )",
+			"B, A | ! A",
+			"C, ( A & B ) | ( ! A & B )"));
+		byte[] stack = network.newStack();
+
+		assertEquals(network.evaluate(0, new byte[]{ONE, ZERO, FREE}, stack), ONE);
+		assertEquals(network.evaluate(0, new byte[]{ONE, ONE, FREE}, stack), ZERO);
+		assertEquals(network.evaluate(0, new byte[]{FREE, ONE, FREE}, stack), ZERO);
+		assertEquals(network.evaluate(0, new byte[]{FREE, ZERO, FREE}, stack), FREE);
+
+		// functions with repeated regulators are evaluated exactly
+		assertEquals(network.evaluate(1, new byte[]{FREE, FREE, FREE}, stack), ONE);
+		assertEquals(network.evaluate(2, new byte[]{FREE, ONE, FREE}, stack), ONE);
+		assertEquals(network.evaluate(2, new byte[]{FREE, FREE, FREE}, stack), FREE);
+	}
+
+	@Test
+	void test_percolate() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( 0 )",
+			"B, ! ( A )",
+			"C, ( B ) & ( D )",
+			"D, ( C )"));
+		byte[] stack = network.newStack();
+
+		byte[] state = network.newFreeState();
+		assertTrue(network.percolate(state, null, stack));
+		assertEquals(BooleanNetwork.toAttractorString(state), "01--");
+
+		state[2] = ONE;
+		assertTrue(network.percolate(state, null, stack));
+		assertEquals(BooleanNetwork.toAttractorString(state), "0111");
+
+		// A cannot be 1
+		byte[] conflict = network.newFreeState();
+		conflict[0] = ONE;
+		assertFalse(network.percolate(conflict, null, stack));
+
+		// B cannot stay free
+		assertFalse(network.percolate(network.newFreeState(), new boolean[]{false, true, false, false}, stack));
+	}
+
+	@Test
+	void test_propagate_constants() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( 0 )",
+			"B, ! ( A )",
+			"C, ( B ) & ( D )",
+			"D, ( C ) | ( B )",
+			"E, ( E )"));
+
+		assertEquals(BooleanNetwork.toAttractorString(network.propagateConstants()), "0111-");
+	}
+}
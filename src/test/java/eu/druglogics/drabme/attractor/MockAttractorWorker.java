@@ -0,0 +1,65 @@
+package eu.druglogics.drabme.attractor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Stands in for an external attractor tool worker in {@link AttractorWorkerPoolTest}
+ * (see {@link AttractorWorkerPool} for the protocol). The single attractor of a model
+ * has the value of the constant nodes and '-' for the rest. Special nodes:
+ * <ul>
+ *     <li><code>FAIL</code>: the model cannot be solved</li>
+ *     <li><code>CRASH, path</code>: the worker exits, if the file does not exist (it is
+ *     created, so the next worker solves the model)</li>
+ * </ul>
+ * With the <code>--exit</code> argument the worker exits immediately, with
+ * <code>--tool name</code> it answers the handshake for the given attractor tool
+ * (<code>mpbn_trapspaces</code> by default).
+ */
+class MockAttractorWorker {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--exit"))
+			return;
+		String attractorTool = (args.length > 1 && args[0].equals("--tool")) ? args[1] : "mpbn_trapspaces";
+
+		BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = input.readLine()) != null) {
+			if (line.equals("PING")) {
+				System.out.println("PONG");
+			} else if (line.equals("HELLO")) {
+				System.out.println("HELLO " + attractorTool);
+			} else if (line.startsWith("MODEL ")) {
+				int equationsNumber = Integer.parseInt(line.substring("MODEL ".length()));
+				StringBuilder attractor = new StringBuilder();
+				boolean fail = false;
+
+				for (int index = 0; index < equationsNumber; index++) {
+					String[] equation = input.readLine().split(",", 2);
+					String target = equation[0].trim();
+					String function = equation[1].replaceAll("[() ]", "");
+
+					if (target.equals("FAIL"))
+						fail = true;
+					if (target.equals("CRASH") && new File(function).createNewFile())
+						System.exit(1);
+
+					attractor.append(function.equals("0") || function.equals("1") ? function : "-");
+				}
+
+				if (fail) {
+					System.out.println("ERROR cannot solve the model");
+				} else {
+					System.out.println("ATTRACTORS 1");
+					System.out.println(attractor);
+				}
+			} else {
+				System.out.println("ERROR unknown request");
+			}
+			System.out.flush();
+		}
+	}
+}
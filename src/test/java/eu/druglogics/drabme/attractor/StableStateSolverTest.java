@@ -0,0 +1,59 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StableStateSolverTest {
+
+	@Test
+	void test_stable_states() throws Exception {
+		// toggle switch with a downstream node
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ! ( B )",
+			"B, ! ( A )",
+			"C, ( A ) | ( B )"));
+
+		assertThat(new StableStateSolver(network).solve()).containsExactlyInAnyOrder("011", "101");
+	}
+
+	@Test
+	void test_no_stable_states() throws Exception {
+		// negative feedback loop
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ! ( B )",
+			"B, ( A )",
+			"C, ( 1 )"));
+
+		assertThat(new StableStateSolver(network).solve()).isEmpty();
+	}
+
+	@Test
+	void test_constant_network() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( 0 )",
+			"B, ! ( A )",
+			"C, ( A ) | ( B )",
+			"D, ( C ) & ! ( A )"));
+
+		assertThat(new StableStateSolver(network).solve()).containsExactly("0111");
+	}
+
+	@Test
+	void test_interrupted_search() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ! ( B )",
+			"B, ! ( A )"));
+
+		Thread.currentThread().interrupt();
+		try {
+			assertThrows(CancellationException.class, () -> new StableStateSolver(network).solve());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+}
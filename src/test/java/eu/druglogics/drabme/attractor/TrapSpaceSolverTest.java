@@ -0,0 +1,42 @@
+package eu.druglogics.drabme.attractor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.util.Lists.newArrayList;
+
+class TrapSpaceSolverTest {
+
+	@Test
+	void test_fixpoints_are_minimal_trapspaces() throws Exception {
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ! ( B )",
+			"B, ! ( A )",
+			"C, ( A ) | ( B )"));
+
+		assertThat(new TrapSpaceSolver(network).solve()).containsExactlyInAnyOrder("011", "101");
+	}
+
+	@Test
+	void test_cyclic_attractor() throws Exception {
+		// negative feedback loop (A,B) oscillates, C follows the constant D
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ! ( B )",
+			"B, ( A )",
+			"C, ( D )",
+			"D, ( 1 )"));
+
+		assertThat(new TrapSpaceSolver(network).solve()).containsExactly("--11");
+	}
+
+	@Test
+	void test_trapspaces_needing_multiple_fixings() throws Exception {
+		// A and B only become fixed together
+		BooleanNetwork network = new BooleanNetwork(newArrayList(
+			"A, ( B ) & ( A )",
+			"B, ( B ) & ( A )",
+			"C, ( A ) | ( C )"));
+
+		assertThat(new TrapSpaceSolver(network).solve()).containsExactlyInAnyOrder("000", "001", "111");
+	}
+}
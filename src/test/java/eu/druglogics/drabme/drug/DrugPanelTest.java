@@ -324,88 +324,42 @@ class DrugPanelTest {
 	}
 
 	@Test
-	void test_get_drug_set_hash() {
+	void test_drug_ids_and_masks() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String drugPanelFile = new File(classLoader.getResource("test_drugpanel").getFile()).getPath();
 		Logger mockLogger = mock(Logger.class);
 
-		// EMPTY SET
-		assertEquals(DrugPanel.getDrugSetHash(new Drug[0]), 0);
-
-		// SINGLE SET
-		Drug[] singleDrugSet = new Drug[1];
-		singleDrugSet[0] = new Drug("A", mockLogger);
-		assertEquals(DrugPanel.getDrugSetHash(singleDrugSet), 65);
-
-		// SET: {A,B}
-		Drug[] doubleDrugSet = new Drug[2];
-		doubleDrugSet[0] = new Drug("A", mockLogger);
-		doubleDrugSet[0].addTargets(new String[]{"AA1","AA2"});
-		doubleDrugSet[1] = new Drug("B", mockLogger);
-		doubleDrugSet[1].addTargets(new String[]{"BB1","BB2"});
-		assertEquals(DrugPanel.getDrugSetHash(doubleDrugSet), 1781214465);
-
-		// SET: {B,A} (order does matter for the hash!)
-		Drug[] doubleDrugSet2 = new Drug[2];
-		doubleDrugSet2[0] = new Drug("B", mockLogger);
-		doubleDrugSet2[0].addTargets(new String[]{"BB1","BB2"});
-		doubleDrugSet2[1] = new Drug("A", mockLogger);
-		doubleDrugSet2[1].addTargets(new String[]{"AA1","AA2"});
-		assertEquals(DrugPanel.getDrugSetHash(doubleDrugSet2), -1809689761);
-
-		// SET: {A,B,C,D}
-		Drug[] fourDrugSet = new Drug[4];
-		fourDrugSet[0] = new Drug("A", mockLogger);
-		fourDrugSet[1] = new Drug("B", mockLogger);
-		fourDrugSet[2] = new Drug("C", mockLogger);
-		fourDrugSet[3] = new Drug("D", mockLogger);
-		assertEquals(DrugPanel.getDrugSetHash(fourDrugSet), 2001986);
-
-		// more tests
-		Drug[] drug1 = new Drug[1];
-		drug1[0] = new Drug("CASP3i", mockLogger);
-		drug1[0].addTargets(new String[]{"CASP3"});
-		assertEquals(DrugPanel.getDrugSetHash(drug1), -941088793);
-
-		Drug[] drug2 = new Drug[1];
-		drug2[0] = new Drug("DUSP6i", mockLogger);
-		drug2[0].addTargets(new String[]{"DUSP6"});
-		assertEquals(DrugPanel.getDrugSetHash(drug2), 290687431);
-
-		Drug[] drug3 = new Drug[1];
-		drug3[0] = new Drug("CASP8i", mockLogger);
-		drug3[0].addTargets(new String[]{"CASP8"});
-		assertEquals(DrugPanel.getDrugSetHash(drug3), -798537679);
-
-		Drug[] drug4 = new Drug[1];
-		drug4[0] = new Drug("DUSP1i", mockLogger);
-		drug4[0].addTargets(new String[]{"DUSP1"});
-		assertEquals(DrugPanel.getDrugSetHash(drug4), 148136317);
-
-		// SET: {CASP8i,DUSP1i}
-		Drug[] doubleDrugSet3 = new Drug[2];
-		doubleDrugSet3[0] = new Drug("CASP8i", mockLogger);
-		doubleDrugSet3[0].addTargets(new String[]{"CASP8"});
-		doubleDrugSet3[1] = new Drug("DUSP1i", mockLogger);
-		doubleDrugSet3[1].addTargets(new String[]{"DUSP1"});
-		assertEquals(DrugPanel.getDrugSetHash(doubleDrugSet3), 831570092);
-
-		// SET: {CASP3i,DUSP6i}
-		Drug[] doubleDrugSet4 = new Drug[2];
-		doubleDrugSet4[0] = new Drug("CASP3i", mockLogger);
-		doubleDrugSet4[0].addTargets(new String[]{"CASP3"});
-		doubleDrugSet4[1] = new Drug("DUSP6i", mockLogger);
-		doubleDrugSet4[1].addTargets(new String[]{"DUSP6"});
-		assertEquals(DrugPanel.getDrugSetHash(doubleDrugSet4), 1019102080);
-
-		// Test uniqueness of hashes (this used to fail)
-		assertNotEquals(DrugPanel.getDrugSetHash(doubleDrugSet3), DrugPanel.getDrugSetHash(doubleDrugSet4));
-
-		/*
-		// This is a limitation of the hash function (can't do anything about it)
-		Drug[] singleDrugSet2 = new Drug[1];
-		singleDrugSet2[0] = new Drug("FB", mockLogger);
-		Drug[] singleDrugSet3 = new Drug[1];
-		singleDrugSet3[0] = new Drug("Ea", mockLogger);
-		assertEquals(DrugPanel.getDrugSetHash(singleDrugSet2), DrugPanel.getDrugSetHash(singleDrugSet3));
-		*/
+		// the drugs of a drug panel get the ids 0, 1, ... in the file order
+		DrugPanel drugPanel = new DrugPanel(drugPanelFile, mockLogger);
+		Drug a = drugPanel.getDrug("AA");
+		Drug b = drugPanel.getDrug("BB");
+		Drug c = drugPanel.getDrug("CC");
+		assertEquals(drugPanel.getDrugId("AA"), 0);
+		assertEquals(drugPanel.getDrugId("BB"), 1);
+		assertEquals(drugPanel.getDrugId("CC"), 2);
+		assertEquals(drugPanel.getDrugId("DD"), -1);
+
+		assertEquals(drugPanel.getDrugSetMask(new Drug[]{a, b}), drugPanel.getDrugSetMask(new Drug[]{b, a}));
+		assertNotEquals(drugPanel.getDrugSetMask(new Drug[]{a, b}), drugPanel.getDrugSetMask(new Drug[]{a, c}));
+		assertEquals(drugPanel.getDrugSetMask(new Drug[0]).cardinality(), 0);
+
+		Drug d = new Drug("DD", mockLogger);
+		assertThrows(IllegalArgumentException.class, () -> drugPanel.getDrugSetMask(new Drug[]{a, d}));
+
+		// a panel of given drugs: ids in the given order, the same for the same name
+		Drug anotherD = new Drug("DD", mockLogger);
+		Drug e = new Drug("EE", mockLogger);
+		DrugPanel otherPanel = new DrugPanel(newArrayList(d, c, e, anotherD), mockLogger);
+		assertEquals(otherPanel.getDrugs(), newArrayList(d, c, e));
+		assertEquals(otherPanel.getDrugId("DD"), 0);
+		assertEquals(otherPanel.getDrugId("CC"), 1);
+		assertEquals(otherPanel.getDrugId("EE"), 2);
+		assertEquals(otherPanel.getDrugId("AA"), -1);
+		assertEquals(otherPanel.getDrugSetMask(new Drug[]{d}), otherPanel.getDrugSetMask(new Drug[]{anotherD}));
+
+		// the ids of a panel do not change with other panels
+		new DrugPanel(drugPanelFile, mockLogger);
+		assertEquals(drugPanel.getDrugId("AA"), 0);
+		assertEquals(otherPanel.getDrugId("DD"), 0);
 	}
 }
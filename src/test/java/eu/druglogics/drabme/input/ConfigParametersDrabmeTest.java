@@ -11,13 +11,35 @@ class ConfigParametersDrabmeTest {
     @Test
     void test_get_parameter_names() {
         ConfigParametersDrabme parameters = new ConfigParametersDrabme();
-        int expectedParNum = 2;
+        int expectedParNum = 24;
 
         String[] pars = parameters.getParameters();
 
         assertEquals(expectedParNum, pars.length);
         assertEquals(pars[0], "max_drug_comb_size");
         assertEquals(pars[1], "synergy_method");
+        assertEquals(pars[2], "attractor_cache_size");
+        assertEquals(pars[3], "attractor_store_dir");
+        assertEquals(pars[4], "deduplicate_models");
+        assertEquals(pars[5], "model_slicing");
+        assertEquals(pars[6], "constant_propagation");
+        assertEquals(pars[7], "max_external_processes");
+        assertEquals(pars[8], "attractor_worker_command");
+        assertEquals(pars[9], "attractor_timeout");
+        assertEquals(pars[10], "model_timeout");
+        assertEquals(pars[11], "timeout_fallback");
+        assertEquals(pars[12], "off_heap_responses");
+        assertEquals(pars[13], "deduplicate_perturbations");
+        assertEquals(pars[14], "skip_na_combinations");
+        assertEquals(pars[15], "skipped_combination_responses");
+        assertEquals(pars[16], "hierarchical_screening");
+        assertEquals(pars[17], "screening_threshold");
+        assertEquals(pars[18], "sequential_sampling");
+        assertEquals(pars[19], "sampling_tolerance");
+        assertEquals(pars[20], "sampling_min_models");
+        assertEquals(pars[21], "sampling_seed");
+        assertEquals(pars[22], "snapshot_models");
+        assertEquals(pars[23], "snapshot_interval");
     }
 
     @Test
@@ -38,4 +60,65 @@ class ConfigParametersDrabmeTest {
         parameters.synergy_method = "hsa";
         assertDoesNotThrow(parameters::checkSynergyMethod);
     }
+
+    @Test
+    void test_attractor_tool() {
+        ConfigParametersDrabme parameters = new ConfigParametersDrabme();
+
+        parameters.attractor_tool = "drabme_native_stable_states";
+        assertDoesNotThrow(parameters::checkAttractorTool);
+
+        parameters.attractor_tool = "biolqm_stable_states";
+        assertDoesNotThrow(parameters::checkAttractorTool);
+
+        parameters.attractor_tool = "drabme_native_trapspaces";
+        assertThrows(ConfigurationException.class, parameters::checkAttractorTool);
+    }
+
+    @Test
+    void test_timeout_fallback() {
+        ConfigParametersDrabme parameters = new ConfigParametersDrabme();
+        assertEquals("NA", parameters.getTimeoutFallback());
+        assertDoesNotThrow(parameters::checkTimeoutFallback);
+
+        parameters.timeout_fallback = "trapspaces";
+        assertDoesNotThrow(parameters::checkTimeoutFallback);
+
+        parameters.timeout_fallback = "stable_states";
+        assertDoesNotThrow(parameters::checkTimeoutFallback);
+
+        parameters.timeout_fallback = "biolqm_trapspaces";
+        assertThrows(ConfigurationException.class, parameters::checkTimeoutFallback);
+    }
+
+    @Test
+    void test_numeric_parameters() {
+        ConfigParametersDrabme parameters = new ConfigParametersDrabme();
+        assertDoesNotThrow(() -> parameters.checkNonNegative("attractor_timeout", parameters.getAttractorTimeout()));
+        assertDoesNotThrow(() -> parameters.checkNonNegative("screening_threshold", (float) 0.1));
+        assertThrows(ConfigurationException.class, () -> parameters.checkNonNegative("model_timeout", -1));
+
+        assertDoesNotThrow(parameters::checkSamplingTolerance);
+
+        parameters.sampling_tolerance = 0;
+        assertThrows(ConfigurationException.class, parameters::checkSamplingTolerance);
+
+        parameters.sampling_tolerance = Float.NaN;
+        assertThrows(ConfigurationException.class, parameters::checkSamplingTolerance);
+    }
+
+    @Test
+    void test_hierarchical_screening() {
+        ConfigParametersDrabme parameters = new ConfigParametersDrabme();
+        assertDoesNotThrow(parameters::checkHierarchicalScreening);
+
+        parameters.hierarchical_screening = true;
+        assertDoesNotThrow(parameters::checkHierarchicalScreening);
+
+        parameters.sequential_sampling = true;
+        assertThrows(ConfigurationException.class, parameters::checkHierarchicalScreening);
+
+        parameters.hierarchical_screening = false;
+        assertDoesNotThrow(parameters::checkHierarchicalScreening);
+    }
 }
@@ -37,6 +37,9 @@ class ConfigTest {
         assertTrue(Config.getInstance().useParallelSimulations());
         assertEquals(4, Config.getInstance().getCombinationSize());
         assertEquals("bliss", Config.getInstance().getSynergyMethod());
+
+        // not set in the config file: the available processors are used
+        assertTrue(Config.getInstance().parallelSimulationsNumber() >= 1);
     }
 
     @Test
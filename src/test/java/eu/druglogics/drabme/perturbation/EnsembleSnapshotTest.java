@@ -0,0 +1,81 @@
+package eu.druglogics.drabme.perturbation;
+
+import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.drabme.input.Config;
+import eu.druglogics.gitsbe.util.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.commons.util.ClassLoaderUtils;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class EnsembleSnapshotTest {
+
+	@TempDir
+	File tempDir;
+
+	@BeforeAll
+	static void init_config() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+
+		ClassLoader classLoader = ClassLoaderUtils.getDefaultClassLoader();
+		String filename = new File(classLoader.getResource("test_config").getFile()).getPath();
+
+		Config.init(filename, mockLogger);
+	}
+
+	@AfterAll
+	static void reset_config() throws IllegalAccessException, NoSuchFieldException {
+		Field instance = Config.class.getDeclaredField("config");
+		instance.setAccessible(true);
+		instance.set(null, null);
+	}
+
+	@Test
+	void test_snapshot_of_partial_results() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+		Drug drugA = new Drug("A", mockLogger);
+		Drug drugB = new Drug("B", mockLogger);
+		PerturbationPanel panel = new PerturbationPanel(new Drug[][]{ new Drug[]{ drugA },
+			new Drug[]{ drugB }, new Drug[]{ drugA, drugB } }, mockLogger);
+		panel.allocateResponses(10, false);
+
+		// 2 out of 10 models finished, the second one without response to B
+		panel.getPerturbations()[0].setPrediction(0, 1);
+		panel.getPerturbations()[0].setPrediction(1, 3);
+		panel.getPerturbations()[1].setPrediction(0, 2);
+		panel.getPerturbations()[2].setPrediction(0, 0);
+		panel.getPerturbations()[2].setPrediction(1, 0);
+
+		Config.getInstance().synergy_method = "hsa";
+		EnsembleSnapshot snapshot = new EnsembleSnapshot(tempDir.getAbsolutePath(), "test");
+		snapshot.write(panel, 2, 10);
+
+		String combinationName = panel.getPerturbations()[2].getName();
+		assertEquals(Arrays.asList("# Snapshot 1: 2 out of 10 models", "Perturbation\tEnsemble average response",
+			"[A]\t2.0", "[B]\t2.0", combinationName + "\t0.0"),
+			Files.readAllLines(snapshot.getResponsesFile().toPath()));
+		assertEquals(Arrays.asList("# Snapshot 1: 2 out of 10 models", "Perturbation\tResponse excess over subset",
+			combinationName + "\t-2.0"),
+			Files.readAllLines(snapshot.getSynergiesFile().toPath()));
+
+		// the next snapshot replaces the previous one, without leaving temporary files
+		panel.getPerturbations()[1].setPrediction(2, 4);
+		snapshot.write(panel, 3, 10);
+
+		List<String> responses = Files.readAllLines(snapshot.getResponsesFile().toPath());
+		assertEquals("# Snapshot 2: 3 out of 10 models", responses.get(0));
+		assertEquals("[B]\t3.0", responses.get(3));
+		assertEquals(2, snapshot.getSnapshots());
+		assertEquals(2, tempDir.listFiles().length);
+	}
+}
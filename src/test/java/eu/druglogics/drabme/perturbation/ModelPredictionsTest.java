@@ -1,31 +1,145 @@
 package eu.druglogics.drabme.perturbation;
 
+import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.gitsbe.util.Logger;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.util.Lists.newArrayList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
 
 class ModelPredictionsTest {
 
+	@TempDir
+	File tempDir;
+
+	private static String getLine(ModelPredictions modelPredictions, int... ordinals) throws Exception {
+		StringWriter writer = new StringWriter();
+		modelPredictions.writeModelPredictions(writer, ordinals);
+		return writer.toString().trim();
+	}
+
 	@Test
-	void test_methods() {
-		ModelPredictions modelPredictions = new ModelPredictions("aRandomModel");
+	void test_methods() throws Exception {
+		ModelPredictions modelPredictions = new ModelPredictions("aRandomModel",
+			new CombinationIndex(newArrayList("S-D", "A-B", "E-R", "R-T", "T-S")));
 		assertEquals(modelPredictions.getModelName(), "aRandomModel");
 		assertEquals(modelPredictions.getPredictions(), "");
 
-		modelPredictions.addNAPrediction("S-D");
-		modelPredictions.addNAPrediction("A-B");
-		modelPredictions.addSynergyPrediction("E-R");
-		modelPredictions.addSynergyPrediction("R-T");
-		modelPredictions.addNonSynergyPrediction("T-S");
+		modelPredictions.addNAPrediction(0);
+		modelPredictions.addNAPrediction(1);
+		modelPredictions.addSynergyPrediction(2);
+		modelPredictions.addSynergyPrediction(3);
+		modelPredictions.addNonSynergyPrediction(4);
 
 		assertEquals(modelPredictions.getPredictions(),
 			"Drugs: A-B  Prediction: NA\n" + "Drugs: R-T  Prediction: 1\n"
 			+ "Drugs: S-D  Prediction: NA\n" + "Drugs: E-R  Prediction: 1\n"
 			+ "Drugs: T-S  Prediction: 0\n");
 
-		assertEquals(modelPredictions.getModelPredictionsVerbose(newArrayList("A-B")), "aRandomModel\tNA");
-		assertEquals(modelPredictions.getModelPredictionsVerbose(newArrayList("A-B","T-S","S-D","R-T","E-R")),
-			"aRandomModel\tNA\t0\tNA\t1\t1");
+		assertEquals(ModelPredictions.NA, modelPredictions.getPrediction(1));
+		assertEquals(ModelPredictions.SYNERGY, modelPredictions.getPrediction(2));
+		assertEquals(ModelPredictions.NON_SYNERGY, modelPredictions.getPrediction(4));
+		assertEquals(ModelPredictions.NO_PREDICTION, modelPredictions.getPrediction(-1));
+		assertEquals(getLine(modelPredictions, 1), "aRandomModel\tNA");
+		assertEquals(getLine(modelPredictions, 1, 4, 0, 3, 2), "aRandomModel\tNA\t0\tNA\t1\t1");
+	}
+
+	@Test
+	void test_copy() throws Exception {
+		ModelPredictions modelPredictions = new ModelPredictions("aRandomModel",
+			new CombinationIndex(newArrayList("S-D", "E-R", "T-S", "A-B")));
+		modelPredictions.addNAPrediction(0);
+		modelPredictions.addSynergyPrediction(1);
+		modelPredictions.addNonSynergyPrediction(2);
+
+		ModelPredictions copy = modelPredictions.copy("anIdenticalModel");
+		modelPredictions.addSynergyPrediction(3);
+
+		assertEquals(copy.getModelName(), "anIdenticalModel");
+		assertEquals(ModelPredictions.NA, copy.getPrediction(0));
+		assertEquals(ModelPredictions.SYNERGY, copy.getPrediction(1));
+		assertEquals(ModelPredictions.NON_SYNERGY, copy.getPrediction(2));
+		assertEquals(ModelPredictions.NO_PREDICTION, copy.getPrediction(3));
+		assertEquals(getLine(copy, 2, 0, 1), "anIdenticalModel\t0\tNA\t1");
+	}
+
+	@Test
+	void test_many_combinations() {
+		ArrayList<String> combinations = new ArrayList<>();
+		for (int index = 0; index < 100; index++) {
+			combinations.add("A-" + index);
+		}
+		ModelPredictions modelPredictions = new ModelPredictions("aRandomModel",
+			new CombinationIndex(combinations));
+
+		for (int index = 0; index < 100; index++) {
+			if (index % 3 == 0)
+				modelPredictions.addSynergyPrediction(index);
+			else if (index % 3 == 1)
+				modelPredictions.addNonSynergyPrediction(index);
+			else
+				modelPredictions.addNAPrediction(index);
+		}
+		// overwrite a prediction, a combination out of the index has none
+		modelPredictions.addNonSynergyPrediction(99);
+		assertThrows(IllegalArgumentException.class, () -> modelPredictions.addSynergyPrediction(100));
+
+		for (int index = 0; index < 99; index++) {
+			int expected = (index % 3 == 0) ? ModelPredictions.SYNERGY
+				: (index % 3 == 1) ? ModelPredictions.NON_SYNERGY : ModelPredictions.NA;
+			assertEquals(expected, modelPredictions.getPrediction(index));
+		}
+		assertEquals(ModelPredictions.NON_SYNERGY, modelPredictions.getPrediction(99));
+		assertEquals(ModelPredictions.NO_PREDICTION, modelPredictions.getPrediction(100));
+		assertEquals(ModelPredictions.SYNERGY, modelPredictions.copy("anIdenticalModel").getPrediction(0));
+	}
+
+	@Test
+	void test_writer() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+		Drug drugA = new Drug("A", mockLogger);
+		drugA.addTargets(new String[]{"AA1"});
+		Drug drugB = new Drug("B", mockLogger);
+		drugB.addTargets(new String[]{"BB1"});
+		Drug drugC = new Drug("C", mockLogger);
+		drugC.addTargets(new String[]{"CC1"});
+		PerturbationPanel panel = new PerturbationPanel(new Drug[][]{
+			{drugA}, {drugB}, {drugC}, {drugA, drugB}, {drugA, drugC}, {drugB, drugC} }, mockLogger);
+
+		ModelPredictions first = new ModelPredictions("model_1", panel.getCombinationIndex());
+		assertEquals(-1, panel.getCombinationOrdinal(2));
+		assertEquals(0, panel.getCombinationOrdinal(3));
+		first.addSynergyPrediction(panel.getCombinationOrdinal(3));
+		first.addNonSynergyPrediction(panel.getCombinationOrdinal(4));
+		first.addNAPrediction(panel.getCombinationOrdinal(5));
+		ModelPredictions second = new ModelPredictions("model_2", panel.getCombinationIndex());
+		second.addNonSynergyPrediction(panel.getCombinationOrdinal(3));
+		second.addSynergyPrediction(panel.getCombinationOrdinal(5));
+		assertThrows(IllegalArgumentException.class, () -> second.addNAPrediction(panel.getCombinationOrdinal(0)));
+		// predictions that are not stored by the index of the panel
+		ModelPredictions third = new ModelPredictions("model_3",
+			new CombinationIndex(newArrayList("[A]-[B]", "[A]-[C]", "[B]-[C]")));
+
+		String filename = new File(tempDir, "model_predictions.tab").getPath();
+		try (ModelPredictionsWriter writer = new ModelPredictionsWriter(filename, panel)) {
+			writer.write(first);
+			writer.write(second);
+			assertThrows(IllegalArgumentException.class, () -> writer.write(third));
+		}
+
+		List<String> lines = Files.readAllLines(new File(filename).toPath());
+		assertEquals(3, lines.size());
+		assertEquals("ModelName\t[A]-[B]\t[A]-[C]\t[B]-[C]", lines.get(0));
+		assertEquals("model_1\t1\t0\tNA", lines.get(1));
+		assertEquals("model_2\t0\tnull\t1", lines.get(2));
 	}
 }
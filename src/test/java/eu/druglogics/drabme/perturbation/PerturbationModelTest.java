@@ -1,6 +1,8 @@
 package eu.druglogics.drabme.perturbation;
 
+import eu.druglogics.drabme.attractor.StableStateSolver;
 import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.drabme.drug.DrugPanel;
 import eu.druglogics.gitsbe.input.ModelOutputs;
 import eu.druglogics.gitsbe.model.BooleanModel;
 import eu.druglogics.gitsbe.model.GeneralModel;
@@ -15,7 +17,12 @@ import org.junit.platform.commons.util.ClassLoaderUtils;
 
 import java.io.File;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
@@ -43,6 +50,11 @@ class PerturbationModelTest {
 		instance.set(null, null);
 	}
 
+	private static File getResourceFile(String name) {
+		ClassLoader classLoader = ClassLoaderUtils.getDefaultClassLoader();
+		return new File(classLoader.getResource(name).getFile());
+	}
+
 	@BeforeEach
 	void init() {
 		// I,J are input nodes, F,U,K are output nodes
@@ -131,4 +143,183 @@ class PerturbationModelTest {
 		assertTrue(perturbationModel.hasAttractors());
 		assertTrue(perturbationModel.hasGlobalOutput());
 	}
+
+	@Test
+	void test_model_slice() throws Exception {
+		Drug drug = new Drug("FirstDrug", mockLogger);
+		drug.addTargets(new String[]{"E", "I"});
+		drug.addEffect(true);
+
+		// modeloutputs nodes E, I and J are the 3 last and only depend on each other
+		boolean[] modelSlice = PerturbationModel.getModelSlice(booleanModel, newArrayList(drug));
+		assertArrayEquals(modelSlice,
+			new boolean[]{false, false, false, false, false, false, false, false, true, true, true});
+
+		Perturbation perturbation = new Perturbation(new Drug[]{ drug }, mockLogger);
+		PerturbationModel perturbationModel = new PerturbationModel(booleanModel, perturbation, mockLogger);
+		PerturbationModel slicedModel = new PerturbationModel(booleanModel, perturbation, mockLogger);
+		slicedModel.setModelSlice(modelSlice);
+
+		perturbationModel.calculateAttractors(tempDir.getAbsolutePath(), null, null);
+		slicedModel.calculateAttractors(tempDir.getAbsolutePath(), null, null);
+
+		// a trapspace of the slice is there once for every trapspace of the model within it
+		assertThat(slicedModel.getAttractors()).containsOnly("--------110", "--------111");
+		assertEquals(perturbationModel.getAttractors().size(), slicedModel.getAttractors().size());
+		assertEquals(slicedModel.getModelBoolNet(), perturbationModel.getModelBoolNet());
+		assertEquals(slicedModel.calculateGlobalOutput(), perturbationModel.calculateGlobalOutput());
+	}
+
+	@Test
+	void test_node_fixings() throws Exception {
+		Drug drug = new Drug("FirstDrug", mockLogger);
+		drug.addTargets(new String[]{"E", "I"});
+		drug.addEffect(true);
+
+		Drug missingTargetsDrug = new Drug("SecondDrug", mockLogger);
+		missingTargetsDrug.addTargets(new String[]{"X", "Y"});
+		missingTargetsDrug.addEffect(false);
+
+		Drug outsideConeDrug = new Drug("ThirdDrug", mockLogger);
+		outsideConeDrug.addTargets(new String[]{"A"});
+		outsideConeDrug.addEffect(false);
+
+		int indexE = booleanModel.getIndexOfEquation("E");
+		int indexI = booleanModel.getIndexOfEquation("I");
+		int indexA = booleanModel.getIndexOfEquation("A");
+
+		TreeMap<Integer, Boolean> fixings = PerturbationModel.getNodeFixings(booleanModel,
+			new Perturbation(new Drug[]{ drug }, mockLogger));
+		assertEquals(2, fixings.size());
+		assertTrue(fixings.get(indexE));
+		assertTrue(fixings.get(indexI));
+
+		// a drug with no targets in the model does not change the fixings
+		assertTrue(PerturbationModel.getNodeFixings(booleanModel,
+			new Perturbation(new Drug[]{ missingTargetsDrug }, mockLogger)).isEmpty());
+		assertEquals(fixings, PerturbationModel.getNodeFixings(booleanModel,
+			new Perturbation(new Drug[]{ drug, missingTargetsDrug }, mockLogger)));
+
+		// a drug with targets outside the cone of influence of the model outputs does
+		Perturbation outsideConePerturbation = new Perturbation(new Drug[]{ drug, outsideConeDrug }, mockLogger);
+		assertEquals(3, PerturbationModel.getNodeFixings(booleanModel, outsideConePerturbation).size());
+		assertFalse(PerturbationModel.getNodeFixings(booleanModel, outsideConePerturbation).get(indexA));
+
+		// and its targets are in the model slice
+		boolean[] modelSlice = PerturbationModel.getModelSlice(booleanModel, newArrayList(drug, outsideConeDrug));
+		assertTrue(modelSlice[indexA]);
+		assertTrue(modelSlice[indexE]);
+	}
+
+	@Test
+	void test_attractors_by_propagation() throws Exception {
+		Drug drug = new Drug("FirstDrug", mockLogger);
+		drug.addTargets(new String[]{"E", "I"});
+		drug.addEffect(true);
+		Perturbation perturbation = new Perturbation(new Drug[]{ drug }, mockLogger);
+
+		// output node J is not fixed by propagation
+		PerturbationModel perturbationModel = new PerturbationModel(booleanModel, perturbation, mockLogger);
+		assertFalse(perturbationModel.calculateAttractorsByPropagation());
+		assertFalse(perturbationModel.hasAttractors());
+
+		Drug otherDrug = new Drug("SecondDrug", mockLogger);
+		otherDrug.addTargets(new String[]{"J", "A"});
+		otherDrug.addEffect(false);
+		Perturbation doublePerturbation = new Perturbation(new Drug[]{ drug, otherDrug }, mockLogger);
+
+		PerturbationModel propagatedModel = new PerturbationModel(booleanModel, doublePerturbation, mockLogger);
+		PerturbationModel simulatedModel = new PerturbationModel(booleanModel, doublePerturbation, mockLogger);
+
+		assertTrue(PerturbationModel.isTrapSpaceTool(propagatedModel.getAttractorTool()));
+		assertTrue(propagatedModel.calculateAttractorsByPropagation());
+		simulatedModel.calculateAttractors(tempDir.getAbsolutePath());
+
+		// E and I are fixed by the first drug and J by the second one
+		assertTrue(propagatedModel.hasAttractors());
+		assertEquals(propagatedModel.calculateGlobalOutput(), simulatedModel.calculateGlobalOutput());
+		assertEquals(propagatedModel.calculateGlobalOutput(), -2.0);
+	}
+
+	/**
+	 * The expected stable states of the perturbed models of the example ensemble (drug
+	 * combinations of one and two drugs) were found by an exhaustive search of the fixed
+	 * points of their equations, independently of the {@link StableStateSolver}.
+	 */
+	@Test
+	void test_native_stable_states_on_example_ensemble() throws Exception {
+		HashMap<String, List<String>> expectedStableStates = new HashMap<>();
+		for (String line : Files.readAllLines(getResourceFile("example_ensemble/toy_ags_stable_states.tab").toPath())) {
+			if (line.startsWith("#"))
+				continue;
+			String[] values = line.split("\t", -1);
+			expectedStableStates.put(values[0],
+				values[1].isEmpty() ? new ArrayList<>() : Arrays.asList(values[1].split(",")));
+		}
+
+		DrugPanel drugPanel = new DrugPanel(getResourceFile("example_ensemble/toy_ags_drugpanel.tab").getPath(), mockLogger);
+		File[] files = getResourceFile("example_ensemble/models").listFiles((dir, name) -> name.endsWith(".gitsbe"));
+		assertNotNull(files);
+		assertTrue(files.length > 0);
+
+		int perturbedModels = 0;
+		for (File file : files) {
+			BooleanModel nativeModel = new BooleanModel(file.getAbsolutePath(), "drabme_native_stable_states", mockLogger);
+
+			for (int size = 1; size <= 2; size++) {
+				for (Drug[] drugs : drugPanel.getDrugCombinations(size)) {
+					Perturbation perturbation = new Perturbation(drugs, mockLogger);
+					PerturbationModel nativePerturbationModel = new PerturbationModel(nativeModel, perturbation, mockLogger);
+					nativePerturbationModel.calculateAttractors(tempDir.getAbsolutePath(), null, null);
+
+					List<String> expected = expectedStableStates.get(nativePerturbationModel.getModelName());
+					assertNotNull(expected, nativePerturbationModel.getModelName());
+					assertThat(nativePerturbationModel.getAttractors())
+						.as(nativePerturbationModel.getModelName())
+						.containsExactlyInAnyOrder(expected.toArray(new String[0]));
+					perturbedModels++;
+				}
+			}
+		}
+		assertEquals(expectedStableStates.size(), perturbedModels);
+	}
+
+	@Test
+	void test_model_slicing_on_example_ensemble() throws Exception {
+		reset_model_outputs();
+		ModelOutputs.init(getResourceFile("example_ensemble/toy_ags_modeloutputs.tab").getPath(), mockLogger);
+		try {
+			DrugPanel drugPanel = new DrugPanel(
+				getResourceFile("example_ensemble/toy_ags_drugpanel.tab").getPath(), mockLogger);
+			File[] files = getResourceFile("example_ensemble/models")
+				.listFiles((dir, name) -> name.endsWith(".gitsbe"));
+			assertNotNull(files);
+			assertTrue(files.length > 0);
+
+			for (File file : files) {
+				BooleanModel model = new BooleanModel(file.getAbsolutePath(), "biolqm_trapspaces", mockLogger);
+				boolean[] modelSlice = PerturbationModel.getModelSlice(model, drugPanel.getDrugs());
+
+				for (int size = 1; size <= 2; size++) {
+					for (Drug[] drugs : drugPanel.getDrugCombinations(size)) {
+						Perturbation perturbation = new Perturbation(drugs, mockLogger);
+						PerturbationModel perturbationModel = new PerturbationModel(model, perturbation, mockLogger);
+						PerturbationModel slicedModel = new PerturbationModel(model, perturbation, mockLogger);
+						slicedModel.setModelSlice(modelSlice);
+
+						perturbationModel.calculateAttractors(tempDir.getAbsolutePath(), null, null);
+						slicedModel.calculateAttractors(tempDir.getAbsolutePath(), null, null);
+
+						assertEquals(perturbationModel.getAttractors().size(), slicedModel.getAttractors().size(),
+							perturbationModel.getModelName());
+						assertEquals(perturbationModel.calculateGlobalOutput(), slicedModel.calculateGlobalOutput(),
+							1e-5f, perturbationModel.getModelName());
+					}
+				}
+			}
+		} finally {
+			reset_model_outputs();
+			init_model_outputs();
+		}
+	}
 }
@@ -12,6 +12,7 @@ import org.junit.platform.commons.util.ClassLoaderUtils;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -183,7 +184,7 @@ class PerturbationPanelTest {
 	}
 
 	@Test
-	void test_check_perturbation_hashes() throws Exception {
+	void test_check_perturbation_drug_sets() throws Exception {
 		// 1st perturbation: A drug alone
 		Drug[] perturbationA = new Drug[]{ drugA };
 		Drug[] perturbationB = new Drug[]{ drugB };
@@ -193,23 +194,110 @@ class PerturbationPanelTest {
 		// Panel with A twice is not valid
 		Drug[][] perturbations1 = new Drug[][]{perturbationA, perturbationA};
 		Exception exception1 = assertThrows(Exception.class, () -> new PerturbationPanel(perturbations1, mockLogger));
-		assertEquals(exception1.getMessage(), "Perturbations `[A]` and `[A]` have the same hash: -519354910");
+		assertEquals(exception1.getMessage(), "Perturbations `[A]` and `[A]` have the same drugs");
 
 		// Panel with B twice is not valid
 		Drug[][] perturbations2 = new Drug[][]{perturbationB, perturbationB};
 		Exception exception2 = assertThrows(Exception.class, () -> new PerturbationPanel(perturbations2, mockLogger));
-		assertEquals(exception2.getMessage(), "Perturbations `[B]` and `[B]` have the same hash: 397702435");
+		assertEquals(exception2.getMessage(), "Perturbations `[B]` and `[B]` have the same drugs");
 
 		// Panel with A+B twice (or B+A) is not valid
 		Drug[][] perturbations3 = new Drug[][]{perturbationAB, perturbationAB, perturbationA, perturbationB};
 		Drug[][] perturbations4 = new Drug[][]{perturbationBA, perturbationBA};
 		Exception exception3 = assertThrows(Exception.class, () -> new PerturbationPanel(perturbations3, mockLogger));
-		assertEquals(exception3.getMessage(), "Perturbations `[A]-[B]` and `[A]-[B]` have the same hash: 1781214465");
+		assertEquals(exception3.getMessage(), "Perturbations `[A]-[B]` and `[A]-[B]` have the same drugs");
 		Exception exception4 = assertThrows(Exception.class, () -> new PerturbationPanel(perturbations4, mockLogger));
-		assertEquals(exception4.getMessage(), "Perturbations `[B]-[A]` and `[B]-[A]` have the same hash: -1809689761");
+		assertEquals(exception4.getMessage(), "Perturbations `[B]-[A]` and `[B]-[A]` have the same drugs");
 
-		// Panel with A,B,A+B and B+A is valid
+		// Panel with A,B,A+B and B+A is not valid (same drugs in another order)
 		Drug[][] perturbations5 = new Drug[][]{perturbationA, perturbationB, perturbationAB, perturbationBA};
-		assertDoesNotThrow(() -> new PerturbationPanel(perturbations5, mockLogger));
+		Exception exception5 = assertThrows(Exception.class, () -> new PerturbationPanel(perturbations5, mockLogger));
+		assertEquals(exception5.getMessage(), "Perturbations `[A]-[B]` and `[B]-[A]` have the same drugs");
+
+		// Panel with A,B and A+B is valid
+		Drug[][] perturbations6 = new Drug[][]{perturbationA, perturbationB, perturbationAB};
+		assertDoesNotThrow(() -> new PerturbationPanel(perturbations6, mockLogger));
+	}
+
+	@Test
+	void test_subset_lattice() throws Exception {
+		Drug[] perturbationA = new Drug[]{ drugA };
+		Drug[] perturbationB = new Drug[]{ drugB };
+		Drug[] perturbationC = new Drug[]{ drugC };
+		Drug[] perturbationAB = new Drug[]{ drugA, drugB };
+		Drug[] perturbationAC = new Drug[]{ drugA, drugC };
+		Drug[] perturbationBC = new Drug[]{ drugB, drugC };
+		Drug[] perturbationABC = new Drug[]{ drugA, drugB, drugC };
+
+		PerturbationPanel panel = new PerturbationPanel(new Drug[][]{ perturbationA, perturbationB,
+			perturbationC, perturbationAB, perturbationAC, perturbationBC, perturbationABC }, mockLogger);
+
+		assertEquals(panel.getIndexOfPerturbation(perturbationBC), 5);
+		// the drugs of a perturbation can be in any order
+		assertEquals(panel.getIndexOfPerturbation(new Drug[]{ drugB, drugA }), 3);
+
+		assertArrayEquals(panel.getIndexesOfSubsets(0), new int[]{});
+		assertArrayEquals(panel.getIndexesOfSubsets(3), new int[]{ 0, 1 });
+		assertArrayEquals(panel.getIndexesOfSubsets(5), new int[]{ 1, 2 });
+		assertArrayEquals(panel.getIndexesOfSubsets(6), new int[]{ 3, 4, 5 });
+
+		// a panel without the subsets of a combination
+		PerturbationPanel partialPanel = new PerturbationPanel(new Drug[][]{ perturbationA,
+			perturbationAB }, mockLogger);
+		assertArrayEquals(partialPanel.getIndexesOfSubsets(1), new int[]{ 0, -1 });
+
+		// the subsets come first in lattice order
+		assertArrayEquals(panel.getIndexesInLatticeOrder(), new int[]{ 0, 1, 2, 3, 4, 5, 6 });
+		PerturbationPanel unorderedPanel = new PerturbationPanel(new Drug[][]{ perturbationABC,
+			perturbationAB, perturbationA, perturbationBC, perturbationB, perturbationC, perturbationAC }, mockLogger);
+		assertArrayEquals(unorderedPanel.getIndexesInLatticeOrder(), new int[]{ 2, 4, 5, 1, 3, 6, 0 });
+	}
+
+	@Test
+	void test_hierarchical_screening() throws Exception {
+		Drug[] perturbationAB = new Drug[]{ drugA, drugB };
+		Drug[] perturbationAC = new Drug[]{ drugA, drugC };
+		Drug[] perturbationBC = new Drug[]{ drugB, drugC };
+
+		PerturbationPanel panel = new PerturbationPanel(new Drug[][]{ new Drug[]{ drugA },
+			new Drug[]{ drugB }, new Drug[]{ drugC }, perturbationAB, perturbationAC, perturbationBC }, mockLogger);
+		panel.getPerturbations()[0].addPrediction((float) 0.7); // A
+		panel.getPerturbations()[1].addPrediction((float) 0.8); // B
+		panel.getPerturbations()[2].addPrediction((float) 0.9); // C
+		panel.getPerturbations()[3].addPrediction((float) 1.0); // A + B: excess 0.2 (HSA)
+		panel.getPerturbations()[4].addPrediction((float) 0.8); // A + C: no excess
+		panel.getPerturbations()[5].addPrediction((float) 0.85); // B + C: no excess
+
+		Config.getInstance().synergy_method = "hsa";
+		Drug[][] triples = new Drug[][]{ new Drug[]{ drugA, drugB, drugC } };
+
+		ArrayList<Drug[]> screenedOut = new ArrayList<>();
+		Drug[][] selected = panel.screenCombinations(triples, (float) 0.1, screenedOut);
+		assertEquals(1, selected.length);
+		assertArrayEquals(new Drug[]{ drugA, drugB, drugC }, selected[0]);
+		assertTrue(screenedOut.isEmpty());
+
+		// no subset with an excess above the threshold
+		selected = panel.screenCombinations(triples, (float) 0.3, screenedOut);
+		assertEquals(0, selected.length);
+		assertEquals(1, screenedOut.size());
+
+		// the next level keeps the perturbations (and the responses) of the previous one
+		PerturbationPanel nextLevel = new PerturbationPanel(panel,
+			new Drug[][]{ new Drug[]{ drugA, drugB, drugC } }, mockLogger);
+		assertEquals(7, nextLevel.getNumberOfPerturbations());
+		assertEquals(6, nextLevel.getNumberOfKnownPerturbations());
+		assertEquals(3, nextLevel.getIndexOfPerturbation(perturbationAB));
+		assertEquals(6, nextLevel.getIndexOfPerturbation(new Drug[]{ drugA, drugB, drugC }));
+		assertEquals((float) 1.0, nextLevel.getKnownResponse(0, 3));
+		assertArrayEquals(new int[]{ 3, 4, 5 }, nextLevel.getIndexesOfSubsets(6));
+
+		// a combination with a subset that is not in the panel is not selected
+		PerturbationPanel partialPanel = new PerturbationPanel(new Drug[][]{ new Drug[]{ drugA },
+			new Drug[]{ drugB }, new Drug[]{ drugC }, perturbationAB, perturbationAC }, mockLogger);
+		partialPanel.getPerturbations()[0].addPrediction((float) 0.7);
+		partialPanel.getPerturbations()[1].addPrediction((float) 0.8);
+		partialPanel.getPerturbations()[3].addPrediction((float) 1.0);
+		assertEquals(0, partialPanel.screenCombinations(triples, (float) 0.1, new ArrayList<>()).length);
 	}
 }
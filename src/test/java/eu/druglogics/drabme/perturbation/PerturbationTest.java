@@ -14,6 +14,7 @@ import java.text.DecimalFormat;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -64,7 +65,6 @@ class PerturbationTest {
 		assertEquals(perturbation.getDrugsVerbose(),"A B");
 		assertEquals(perturbation.getDrugs(), drugSet);
 		assertEquals(perturbation.getName(), "[A]-[B]");
-		assertEquals(perturbation.getPerturbationHash(), 1922447520);
 
 		// No predictions are added
 		perturbation.calculateStatistics();
@@ -102,4 +102,27 @@ class PerturbationTest {
 		// test_modeloutputs_2: minGl: -2, maxGL: 2
 		assertEquals(Double.valueOf(df.format(perturbation.getNormalizedAveragePredictedResponse())), 0.53);
 	}
+
+	@Test
+	void test_rewritten_prediction() {
+		Logger mockLogger = mock(Logger.class);
+		Perturbation perturbation = new Perturbation(new Drug[]{ new Drug("A", mockLogger) }, mockLogger);
+		assertArrayEquals(new float[]{}, perturbation.getPredictions());
+		assertTrue(Float.isNaN(perturbation.getPrediction(0)));
+		perturbation.setResponseMatrix(new ResponseMatrix(3), 0);
+
+		perturbation.setPrediction(0, 1);
+		perturbation.setPrediction(1, 3);
+
+		// the response of a model that is written again replaces the previous one
+		perturbation.setPrediction(1, 5);
+		perturbation.calculateStatistics();
+		assertEquals(3, perturbation.getAveragePredictedResponse(), 1e-12);
+		assertEquals(Math.sqrt(8), perturbation.getStandardDeviationPredictedResponse(), 1e-12);
+
+		perturbation.setPrediction(1, Float.NaN);
+		perturbation.calculateStatistics();
+		assertEquals(1, perturbation.getAveragePredictedResponse(), 1e-12);
+		assertArrayEquals(new float[]{ 1 }, perturbation.getPredictions());
+	}
 }
@@ -0,0 +1,175 @@
+package eu.druglogics.drabme.perturbation;
+
+import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.gitsbe.util.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ResponseCheckpointTest {
+
+	private static final String SETTINGS = "synergy_method: hsa\nattractor_tool: biolqm_stable_states";
+
+	@TempDir
+	File tempDir;
+
+	private Logger mockLogger;
+	private PerturbationPanel panel;
+
+	@BeforeEach
+	void init_panel() throws Exception {
+		mockLogger = mock(Logger.class);
+		panel = newPanel("A", "B");
+	}
+
+	private PerturbationPanel newPanel(String drugNameA, String drugNameB) throws Exception {
+		Drug drugA = new Drug(drugNameA, mockLogger);
+		drugA.addTargets(new String[]{"AA1"});
+		drugA.addEffect(false);
+
+		Drug drugB = new Drug(drugNameB, mockLogger);
+		drugB.addTargets(new String[]{"BB1"});
+		drugB.addEffect(false);
+
+		return new PerturbationPanel(new Drug[][]{ {drugA}, {drugB}, {drugA, drugB} }, mockLogger);
+	}
+
+	/**
+	 * Reads the checkpoint back as a resumed run does (and closes it again).
+	 */
+	private ArrayList<ModelResponses> load(PerturbationPanel perturbationPanel, String settings)
+		throws IOException {
+		ResponseCheckpoint resumed = ResponseCheckpoint.resume(tempDir.getPath(), perturbationPanel, settings);
+		resumed.close();
+		return resumed.getRestoredResponses();
+	}
+
+	private ModelResponses newModelResponses(String modelName, float responseA, String prediction) {
+		// [A]-[B] is the only drug combination of the panel
+		ModelPredictions modelPredictions = new ModelPredictions(modelName, panel.getCombinationIndex());
+		if (prediction.equals("1"))
+			modelPredictions.addSynergyPrediction(panel.getCombinationOrdinal(2));
+		else if (prediction.equals("0"))
+			modelPredictions.addNonSynergyPrediction(panel.getCombinationOrdinal(2));
+		else
+			modelPredictions.addNAPrediction(panel.getCombinationOrdinal(2));
+
+		return new ModelResponses(new float[]{ responseA, 2, Float.NaN }, modelPredictions);
+	}
+
+	@Test
+	void test_write_and_load() throws IOException {
+		ResponseCheckpoint checkpoint = new ResponseCheckpoint(tempDir.getPath(), panel, SETTINGS);
+		checkpoint.write(newModelResponses("model_1", 1, "1"));
+		checkpoint.write(newModelResponses("model_2", -1, "0"));
+		checkpoint.write(newModelResponses("model_3", 0, "NA"));
+		assertEquals(3, checkpoint.size());
+		checkpoint.close();
+
+		ArrayList<ModelResponses> loaded = load(panel, SETTINGS);
+		assertEquals(3, loaded.size());
+
+		assertEquals("model_1", loaded.get(0).getModelName());
+		assertArrayEquals(new float[]{ 1, 2, Float.NaN }, loaded.get(0).getResponses());
+		assertEquals(ModelPredictions.SYNERGY, loaded.get(0).getModelPredictions().getPrediction(0));
+		assertEquals(ModelPredictions.NO_PREDICTION,
+			loaded.get(0).getModelPredictions().getPrediction(panel.getCombinationOrdinal(0)));
+
+		assertEquals("model_2", loaded.get(1).getModelName());
+		assertEquals(ModelPredictions.NON_SYNERGY, loaded.get(1).getModelPredictions().getPrediction(0));
+		assertEquals("model_3", loaded.get(2).getModelName());
+		assertEquals(ModelPredictions.NA, loaded.get(2).getModelPredictions().getPrediction(0));
+	}
+
+	@Test
+	void test_load_without_checkpoint() throws IOException {
+		assertTrue(load(panel, SETTINGS).isEmpty());
+	}
+
+	@Test
+	void test_incomplete_last_record_is_ignored() throws IOException {
+		ResponseCheckpoint checkpoint = new ResponseCheckpoint(tempDir.getPath(), panel, SETTINGS);
+		checkpoint.write(newModelResponses("model_1", 1, "1"));
+		checkpoint.write(newModelResponses("model_2", -1, "0"));
+		checkpoint.close();
+
+		File file = new File(tempDir, ResponseCheckpoint.FILENAME);
+		try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+			truncated.setLength(file.length() - 3);
+		}
+
+		ArrayList<ModelResponses> loaded = load(panel, SETTINGS);
+		assertEquals(1, loaded.size());
+		assertEquals("model_1", loaded.get(0).getModelName());
+	}
+
+	@Test
+	void test_checkpoint_of_another_panel() throws Exception {
+		ResponseCheckpoint checkpoint = new ResponseCheckpoint(tempDir.getPath(), panel, SETTINGS);
+		checkpoint.write(newModelResponses("model_1", 1, "1"));
+		checkpoint.close();
+
+		PerturbationPanel otherPanel = newPanel("A", "C");
+		assertThrows(IOException.class, () -> load(otherPanel, SETTINGS));
+	}
+
+	@Test
+	void test_checkpoint_with_other_settings() throws Exception {
+		ResponseCheckpoint checkpoint = new ResponseCheckpoint(tempDir.getPath(), panel, SETTINGS);
+		checkpoint.write(newModelResponses("model_1", 1, "1"));
+		checkpoint.close();
+
+		assertThrows(IOException.class, () -> load(panel,
+			"synergy_method: bliss\nattractor_tool: biolqm_stable_states"));
+		assertThrows(IOException.class, () -> ResponseCheckpoint.resume(tempDir.getPath(), panel,
+			"synergy_method: hsa\nattractor_tool: mpbn_trapspaces"));
+	}
+
+	@Test
+	void test_resume_appends_after_the_last_complete_record() throws IOException {
+		ResponseCheckpoint checkpoint = new ResponseCheckpoint(tempDir.getPath(), panel, SETTINGS);
+		checkpoint.write(newModelResponses("model_1", 1, "1"));
+		checkpoint.write(newModelResponses("model_2", -1, "0"));
+		checkpoint.close();
+
+		File file = new File(tempDir, ResponseCheckpoint.FILENAME);
+		try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+			truncated.setLength(file.length() - 3);
+		}
+
+		ResponseCheckpoint resumed = ResponseCheckpoint.resume(tempDir.getPath(), panel, SETTINGS);
+		assertEquals(1, resumed.getRestoredResponses().size());
+		assertEquals("model_1", resumed.getRestoredResponses().get(0).getModelName());
+		resumed.write(newModelResponses("model_3", 0, "NA"));
+		assertEquals(2, resumed.size());
+		resumed.close();
+
+		ArrayList<ModelResponses> loaded = load(panel, SETTINGS);
+		assertEquals(2, loaded.size());
+		assertEquals("model_1", loaded.get(0).getModelName());
+		assertEquals("model_3", loaded.get(1).getModelName());
+		assertEquals(ModelPredictions.NA, loaded.get(1).getModelPredictions().getPrediction(0));
+	}
+
+	@Test
+	void test_replay() {
+		ModelResponses modelResponses = newModelResponses("model_1", 1, "1");
+		ModelResponses replayed = modelResponses.replay(panel, 1, "model_2");
+
+		assertEquals("model_2", replayed.getModelName());
+		assertEquals(ModelPredictions.SYNERGY, replayed.getModelPredictions().getPrediction(0));
+		assertEquals(1, panel.getPerturbations()[0].getPrediction(1));
+		assertTrue(Float.isNaN(panel.getPerturbations()[0].getPrediction(0)));
+		assertTrue(Float.isNaN(panel.getPerturbations()[2].getPrediction(1)));
+		assertEquals(1, panel.getPerturbations()[2].getSynergyPredictions());
+		assertEquals(0, panel.getPerturbations()[2].getNonSynergyPredictions());
+	}
+}
@@ -0,0 +1,88 @@
+package eu.druglogics.drabme.perturbation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseMatrixTest {
+
+	@Test
+	void test_set_and_get() {
+		for (boolean offHeap : new boolean[]{ false, true }) {
+			ResponseMatrix matrix = new ResponseMatrix(3, 4, offHeap);
+			assertEquals(4, matrix.getModelsNumber());
+			assertEquals(3, matrix.getPerturbationsNumber());
+			assertEquals(offHeap, matrix.isOffHeap());
+
+			assertTrue(Float.isNaN(matrix.get(0, 0)));
+			assertTrue(Float.isNaN(matrix.get(10, 2)));
+
+			matrix.set(2, 1, (float) 0.5);
+			matrix.set(0, 1, -1);
+			matrix.set(3, 1, Float.NaN);
+			matrix.set(1, 0, 2);
+
+			assertEquals(0.5, matrix.get(2, 1), 0.0001);
+			assertEquals(2, matrix.get(1, 0), 0.0001);
+			assertArrayEquals(new float[]{ -1, (float) 0.5 }, matrix.getResponses(1));
+			assertArrayEquals(new float[]{ 2 }, matrix.getResponses(0));
+			assertArrayEquals(new float[]{}, matrix.getResponses(2));
+		}
+	}
+
+	@Test
+	void test_off_heap_rows_are_views_of_one_buffer() {
+		ResponseMatrix matrix = new ResponseMatrix(3, 100, true);
+
+		for (int model = 0; model < 100; model++) {
+			matrix.set(model, 0, model);
+			matrix.set(model, 2, -model);
+		}
+
+		for (int model = 0; model < 100; model++) {
+			assertEquals(model, matrix.get(model, 0), 0.0001);
+			assertTrue(Float.isNaN(matrix.get(model, 1)));
+			assertEquals(-model, matrix.get(model, 2), 0.0001);
+		}
+		assertEquals(100, matrix.getResponses(2).length);
+
+		// a model beyond the allocated ones gets a row of its own
+		matrix.set(100, 1, 7);
+		assertArrayEquals(new float[]{ 7 }, matrix.getResponses(1));
+	}
+
+	@Test
+	void test_rows_are_added() {
+		ResponseMatrix matrix = new ResponseMatrix(2);
+		assertEquals(0, matrix.getModelsNumber());
+
+		matrix.set(0, 0, 1);
+		matrix.set(4, 0, 3);
+		matrix.set(2, 1, 2);
+
+		assertTrue(matrix.getModelsNumber() >= 5);
+		assertArrayEquals(new float[]{ 1, 3 }, matrix.getResponses(0));
+		assertArrayEquals(new float[]{ 2 }, matrix.getResponses(1));
+	}
+
+	@Test
+	void test_concurrent_writes() {
+		ResponseMatrix matrix = new ResponseMatrix(50);
+
+		IntStream.range(0, 1000).parallel().forEach(model -> {
+			for (int perturbation = 0; perturbation < 50; perturbation++) {
+				matrix.set(model, perturbation, model);
+			}
+		});
+
+		for (int perturbation = 0; perturbation < 50; perturbation++) {
+			float[] responses = matrix.getResponses(perturbation);
+			assertEquals(1000, responses.length);
+			for (int model = 0; model < 1000; model++) {
+				assertEquals(model, responses[model], 0.0001);
+			}
+		}
+	}
+}
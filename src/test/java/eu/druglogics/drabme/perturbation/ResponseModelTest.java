@@ -0,0 +1,229 @@
+package eu.druglogics.drabme.perturbation;
+
+import eu.druglogics.drabme.drug.DrugPanel;
+import eu.druglogics.drabme.input.Config;
+import eu.druglogics.drabme.util.IoExecutors;
+import eu.druglogics.gitsbe.input.ModelOutputs;
+import eu.druglogics.gitsbe.model.BooleanModel;
+import eu.druglogics.gitsbe.util.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.commons.util.ClassLoaderUtils;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ResponseModelTest {
+
+	private Logger mockLogger = mock(Logger.class);
+
+	@BeforeAll
+	static void init_model_outputs() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+		ModelOutputs.init("example_run_ags/toy_ags_modeloutputs.tab", mockLogger);
+	}
+
+	@AfterAll
+	static void reset_model_outputs() throws IllegalAccessException, NoSuchFieldException {
+		Field instance = ModelOutputs.class.getDeclaredField("modeloutputs");
+		instance.setAccessible(true);
+		instance.set(null, null);
+	}
+
+	@BeforeAll
+	static void init_config() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+
+		ClassLoader classLoader = ClassLoaderUtils.getDefaultClassLoader();
+		String filename = new File(classLoader.getResource("test_config").getFile()).getPath();
+
+		Config.init(filename, mockLogger);
+	}
+
+	@AfterAll
+	static void reset_config() throws IllegalAccessException, NoSuchFieldException {
+		Field instance = Config.class.getDeclaredField("config");
+		instance.setAccessible(true);
+		instance.set(null, null);
+	}
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	void test_async_simulation_is_same_as_serial() throws Exception {
+		DrugPanel drugPanel = new DrugPanel("example_run_ags/toy_ags_drugpanel.tab", mockLogger);
+		BooleanModel booleanModel = new BooleanModel(
+			"example_run_ags/models/toy_ags_network_run_0__G9_M1.gitsbe", "biolqm_stable_states", mockLogger);
+
+		PerturbationPanel serialPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+		ResponseModel serialModel = new ResponseModel(booleanModel, serialPanel, mockLogger);
+		serialModel.initializeResponseModel();
+		serialModel.simulateResponses(tempDir.getAbsolutePath());
+
+		PerturbationPanel asyncPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+		ResponseModel asyncModel = new ResponseModel(booleanModel, asyncPanel, mockLogger);
+		asyncModel.initializeResponseModel();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			asyncModel.simulateResponsesAsync(tempDir.getAbsolutePath(), pool).join();
+		} finally {
+			pool.shutdown();
+		}
+
+		// predictions are only added after the simulation
+		assertEquals(0, asyncPanel.getPerturbations()[0].getPredictions().length);
+		asyncModel.addPredictions();
+
+		for (int index = 0; index < serialPanel.getNumberOfPerturbations(); index++) {
+			Perturbation serialPerturbation = serialPanel.getPerturbations()[index];
+			Perturbation asyncPerturbation = asyncPanel.getPerturbations()[index];
+
+			assertEquals(serialPerturbation.getName(), asyncPerturbation.getName());
+			assertArrayEquals(serialPerturbation.getPredictions(), asyncPerturbation.getPredictions());
+			assertEquals(serialPerturbation.getSynergyPredictions(), asyncPerturbation.getSynergyPredictions());
+			assertEquals(serialPerturbation.getNonSynergyPredictions(), asyncPerturbation.getNonSynergyPredictions());
+		}
+
+		assertEquals(serialModel.getModelPredictions().getPredictions(),
+			asyncModel.getModelPredictions().getPredictions());
+		assertEquals(serialModel.getPerturbationsResolvedByPropagation(),
+			asyncModel.getPerturbationsResolvedByPropagation());
+	}
+
+	@Test
+	void test_cpu_limited_simulation_is_same_as_serial() throws Exception {
+		DrugPanel drugPanel = new DrugPanel("example_run_ags/toy_ags_drugpanel.tab", mockLogger);
+		BooleanModel booleanModel = new BooleanModel(
+			"example_run_ags/models/toy_ags_network_run_0__G9_M1.gitsbe", "biolqm_stable_states", mockLogger);
+
+		PerturbationPanel serialPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+		ResponseModel serialModel = new ResponseModel(booleanModel, serialPanel, mockLogger);
+		serialModel.initializeResponseModel();
+		serialModel.simulateResponses(tempDir.getAbsolutePath());
+
+		// the tasks run on an unbounded I/O executor, a single one on the CPU at a time
+		PerturbationPanel ioPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+		ResponseModel ioModel = new ResponseModel(booleanModel, ioPanel, mockLogger);
+		Semaphore cpuSlots = new Semaphore(1);
+		ioModel.setCpuLimit(cpuSlots);
+		ioModel.initializeResponseModel();
+
+		ExecutorService executor = IoExecutors.newIoExecutor(8);
+		try {
+			ioModel.simulateResponsesAsync(tempDir.getAbsolutePath(), executor).join();
+		} finally {
+			executor.shutdown();
+		}
+		ioModel.addPredictions();
+
+		assertEquals(1, cpuSlots.availablePermits());
+		assertEquals(serialModel.getModelPredictions().getPredictions(),
+			ioModel.getModelPredictions().getPredictions());
+		for (int index = 0; index < serialPanel.getNumberOfPerturbations(); index++) {
+			assertArrayEquals(serialPanel.getPerturbations()[index].getPredictions(),
+				ioPanel.getPerturbations()[index].getPredictions());
+		}
+	}
+
+	@Test
+	void test_deduplicated_perturbations_have_the_same_responses() throws Exception {
+		DrugPanel drugPanel = new DrugPanel("example_run_ags/toy_ags_drugpanel.tab", mockLogger);
+		BooleanModel booleanModel = new BooleanModel(
+			"example_run_ags/models/toy_ags_network_run_0__G9_M1.gitsbe", "biolqm_stable_states", mockLogger);
+
+		Config.getInstance().deduplicate_perturbations = false;
+		PerturbationPanel panel = new PerturbationPanel(drugPanel.getDrugCombinations(2), mockLogger);
+		ResponseModel responseModel = new ResponseModel(booleanModel, panel, mockLogger);
+		responseModel.initializeResponseModel();
+		responseModel.simulateResponses(tempDir.getAbsolutePath());
+
+		Config.getInstance().deduplicate_perturbations = true;
+		PerturbationPanel dedupPanel = new PerturbationPanel(drugPanel.getDrugCombinations(2), mockLogger);
+		ResponseModel dedupModel = new ResponseModel(booleanModel, dedupPanel, mockLogger);
+		try {
+			dedupModel.initializeResponseModel();
+			dedupModel.simulateResponses(tempDir.getAbsolutePath());
+		} finally {
+			Config.getInstance().deduplicate_perturbations = false;
+		}
+
+		assertEquals(panel.getNumberOfPerturbations(), responseModel.getNumberOfPerturbationModels());
+		assertTrue(dedupModel.getNumberOfPerturbationModels() <= dedupPanel.getNumberOfPerturbations());
+
+		for (int index = 0; index < panel.getNumberOfPerturbations(); index++) {
+			Perturbation perturbation = panel.getPerturbations()[index];
+			Perturbation dedupPerturbation = dedupPanel.getPerturbations()[index];
+
+			assertArrayEquals(perturbation.getPredictions(), dedupPerturbation.getPredictions());
+			assertEquals(perturbation.getSynergyPredictions(), dedupPerturbation.getSynergyPredictions());
+		}
+
+		assertEquals(responseModel.getModelPredictions().getPredictions(),
+			dedupModel.getModelPredictions().getPredictions());
+	}
+
+	@Test
+	void test_skipped_na_combinations_have_the_same_synergies() throws Exception {
+		DrugPanel drugPanel = new DrugPanel("example_run_ags/toy_ags_drugpanel.tab", mockLogger);
+		BooleanModel booleanModel = new BooleanModel(
+			"example_run_ags/models/toy_ags_network_run_0__G9_M1.gitsbe", "biolqm_stable_states", mockLogger);
+
+		PerturbationPanel panel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+		ResponseModel responseModel = new ResponseModel(booleanModel, panel, mockLogger);
+		responseModel.initializeResponseModel();
+		responseModel.simulateResponses(tempDir.getAbsolutePath());
+
+		Config.getInstance().skip_na_combinations = true;
+		try {
+			PerturbationPanel serialPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+			ResponseModel serialModel = new ResponseModel(booleanModel, serialPanel, mockLogger);
+			serialModel.initializeResponseModel();
+			serialModel.simulateResponses(tempDir.getAbsolutePath());
+
+			PerturbationPanel asyncPanel = new PerturbationPanel(drugPanel.getDrugCombinations(3), mockLogger);
+			ResponseModel asyncModel = new ResponseModel(booleanModel, asyncPanel, mockLogger);
+			asyncModel.initializeResponseModel();
+			ForkJoinPool pool = new ForkJoinPool(4);
+			try {
+				asyncModel.simulateResponsesAsync(tempDir.getAbsolutePath(), pool).join();
+			} finally {
+				pool.shutdown();
+			}
+			asyncModel.addPredictions();
+
+			// skipping only changes the responses of the drug combinations that are NA
+			assertEquals(responseModel.getModelPredictions().getPredictions(),
+				serialModel.getModelPredictions().getPredictions());
+			assertEquals(responseModel.getModelPredictions().getPredictions(),
+				asyncModel.getModelPredictions().getPredictions());
+			assertEquals(serialModel.getNACombinations(), asyncModel.getNACombinations());
+
+			int skippedResponses = 0;
+			for (int index = 0; index < panel.getNumberOfPerturbations(); index++) {
+				Perturbation perturbation = panel.getPerturbations()[index];
+				Perturbation serialPerturbation = serialPanel.getPerturbations()[index];
+
+				assertArrayEquals(serialPerturbation.getPredictions(),
+					asyncPanel.getPerturbations()[index].getPredictions());
+				if (serialPerturbation.getPredictions().length == 0 && perturbation.getPredictions().length > 0) {
+					skippedResponses++;
+				} else {
+					assertArrayEquals(perturbation.getPredictions(), serialPerturbation.getPredictions());
+				}
+			}
+			assertTrue(skippedResponses <= serialModel.getNACombinations());
+		} finally {
+			Config.getInstance().skip_na_combinations = false;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package eu.druglogics.drabme.perturbation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseStatisticsTest {
+
+	@Test
+	void test_mean_and_standard_deviation() {
+		ResponseStatistics statistics = new ResponseStatistics();
+		assertEquals(0, statistics.getCount());
+		assertEquals(0, statistics.getMean());
+		assertEquals(0, statistics.getStandardDeviation());
+
+		statistics.add(2);
+		assertEquals(2, statistics.getMean());
+		assertEquals(0, statistics.getStandardDeviation());
+
+		for (double response : new double[]{ 4, 4, 4, 5, 5, 7, 9 }) {
+			statistics.add(response);
+		}
+
+		assertEquals(8, statistics.getCount());
+		assertEquals(5, statistics.getMean(), 1e-12);
+		assertEquals(Math.sqrt(32.0 / 7), statistics.getStandardDeviation(), 1e-12);
+	}
+
+	@Test
+	void test_remove() {
+		double[] responses = new double[]{ 0, -0.1, -1.1, 0.3, 1.5, 0.7, -2, 1.2 };
+
+		ResponseStatistics all = new ResponseStatistics();
+		ResponseStatistics withoutLast = new ResponseStatistics();
+		for (int index = 0; index < responses.length; index++) {
+			all.add(responses[index]);
+			if (index < responses.length - 1)
+				withoutLast.add(responses[index]);
+		}
+
+		all.remove(1.2);
+		assertEquals(withoutLast.getCount(), all.getCount());
+		assertEquals(withoutLast.getMean(), all.getMean(), 1e-12);
+		assertEquals(withoutLast.getStandardDeviation(), all.getStandardDeviation(), 1e-12);
+
+		ResponseStatistics single = new ResponseStatistics();
+		single.add(3);
+		single.remove(3);
+		assertEquals(0, single.getCount());
+		assertEquals(0, single.getMean());
+	}
+
+	@Test
+	void test_confined_to_one_thread() throws InterruptedException {
+		ResponseStatistics statistics = new ResponseStatistics();
+		statistics.add(1);
+
+		AtomicReference<Exception> exception = new AtomicReference<>();
+		Thread other = new Thread(() -> {
+			try {
+				statistics.add(2);
+			} catch (Exception e) {
+				exception.set(e);
+			}
+		});
+		other.start();
+		other.join();
+
+		assertTrue(exception.get() instanceof IllegalStateException);
+		assertEquals(1, statistics.getCount());
+
+		statistics.add(3);
+		assertEquals(2, statistics.getMean(), 1e-12);
+	}
+}
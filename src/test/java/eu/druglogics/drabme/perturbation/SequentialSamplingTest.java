@@ -0,0 +1,51 @@
+package eu.druglogics.drabme.perturbation;
+
+import eu.druglogics.drabme.drug.Drug;
+import eu.druglogics.gitsbe.util.Logger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SequentialSamplingTest {
+
+	@Test
+	void test_sampling_stops_when_confident() throws Exception {
+		Logger mockLogger = mock(Logger.class);
+		Drug drugA = new Drug("A", mockLogger);
+		Drug drugB = new Drug("B", mockLogger);
+		PerturbationPanel panel = new PerturbationPanel(new Drug[][]{ new Drug[]{ drugA },
+			new Drug[]{ drugB }, new Drug[]{ drugA, drugB } }, mockLogger);
+
+		SequentialSampling sequentialSampling = new SequentialSampling(panel, (float) 0.1, 20, 1);
+
+		// A has a response of 0 or 1, B always 1 and A + B always 0 (synergy)
+		for (int model = 0; model < 40; model++) {
+			ModelPredictions modelPredictions = new ModelPredictions("model_" + model, panel.getCombinationIndex());
+			modelPredictions.addSynergyPrediction(panel.getCombinationOrdinal(2));
+			sequentialSampling.addModel(new ModelResponses(new float[]{ model % 2, 1, 0 }, modelPredictions));
+
+			if (model == 18) {
+				// not enough models yet
+				assertEquals(0, sequentialSampling.getConfidentPerturbations());
+			} else if (model == 19) {
+				// B is confident, but still needed for the synergy of A + B
+				assertTrue(sequentialSampling.isConfident(1));
+				assertFalse(sequentialSampling.isConfident(2));
+				assertArrayEquals(new boolean[]{ false, false, false }, sequentialSampling.getStoppedPerturbations());
+			}
+		}
+
+		assertEquals(40, sequentialSampling.getModels());
+		assertEquals(40, sequentialSampling.getResponses(0));
+		assertEquals(40, sequentialSampling.getSynergyPredictions(2));
+		assertEquals(1.0, sequentialSampling.getSynergyFraction(2));
+		assertTrue(sequentialSampling.getSynergyFractionInterval(2) > 0);
+
+		// the response of A varies too much, the estimates of B and A + B are confident
+		assertFalse(sequentialSampling.isConfident(0));
+		assertTrue(sequentialSampling.isConfident(2));
+		assertArrayEquals(new boolean[]{ false, true, true }, sequentialSampling.getStoppedPerturbations());
+		assertFalse(sequentialSampling.isFinished());
+	}
+}
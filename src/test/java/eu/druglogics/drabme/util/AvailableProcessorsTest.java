@@ -0,0 +1,78 @@
+package eu.druglogics.drabme.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailableProcessorsTest {
+
+	@TempDir
+	File tempDir;
+
+	private void write(String path, String content) throws IOException {
+		File file = new File(tempDir, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), (content + "\n").getBytes());
+	}
+
+	@Test
+	void test_count_cpus() {
+		assertEquals(1, AvailableProcessors.countCpus("0"));
+		assertEquals(4, AvailableProcessors.countCpus("0-3"));
+		assertEquals(7, AvailableProcessors.countCpus("0-3,6,8-9\n"));
+		assertEquals(Integer.MAX_VALUE, AvailableProcessors.countCpus(""));
+		assertEquals(Integer.MAX_VALUE, AvailableProcessors.countCpus(null));
+	}
+
+	@Test
+	void test_no_cgroups() {
+		assertEquals(8, AvailableProcessors.detect(tempDir, new ArrayList<>(), 8));
+		assertEquals(1, AvailableProcessors.detect(tempDir, new ArrayList<>(), 0));
+	}
+
+	@Test
+	void test_cgroup_v2() throws IOException {
+		write("cpu.max", "250000 100000");
+		write("cpuset.cpus.effective", "0-15");
+		assertEquals(3, AvailableProcessors.detect(tempDir, newArrayList("0::/"), 16));
+
+		write("cpu.max", "max 100000");
+		write("cpuset.cpus.effective", "2-3");
+		assertEquals(2, AvailableProcessors.detect(tempDir, newArrayList("0::/"), 16));
+	}
+
+	@Test
+	void test_cgroup_v2_own_cgroup() throws IOException {
+		write("user.slice/drabme.scope/cpu.max", "100000 100000");
+		assertEquals(1, AvailableProcessors.detect(tempDir, newArrayList("0::/user.slice/drabme.scope"), 16));
+	}
+
+	@Test
+	void test_cgroup_v1() throws IOException {
+		write("cpu,cpuacct/docker/abc/cpu.cfs_quota_us", "400000");
+		write("cpu,cpuacct/docker/abc/cpu.cfs_period_us", "100000");
+		write("cpuset/cpuset.cpus", "0-5");
+
+		ArrayList<String> cgroups = newArrayList("12:memory:/docker/abc", "4:cpu,cpuacct:/docker/abc",
+			"3:cpuset:/");
+		assertEquals(4, AvailableProcessors.detect(tempDir, cgroups, 16));
+		assertEquals(2, AvailableProcessors.detect(tempDir, cgroups, 2));
+
+		// no quota
+		write("cpu,cpuacct/docker/abc/cpu.cfs_quota_us", "-1");
+		assertEquals(6, AvailableProcessors.detect(tempDir, cgroups, 16));
+	}
+
+	@Test
+	void test_unreadable_values_are_ignored() throws IOException {
+		write("cpu.max", "not a quota");
+		assertEquals(8, AvailableProcessors.detect(tempDir, newArrayList("0::/"), 8));
+	}
+}
@@ -0,0 +1,61 @@
+package eu.druglogics.drabme.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IoExecutorsTest {
+
+	@Test
+	void test_io_executor_runs_waiting_tasks_concurrently() throws InterruptedException {
+		int tasks = 16;
+		ExecutorService executor = IoExecutors.newIoExecutor(tasks);
+		CountDownLatch started = new CountDownLatch(tasks);
+		CountDownLatch release = new CountDownLatch(1);
+
+		for (int task = 0; task < tasks; task++) {
+			executor.execute(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		// every task waits at the same time
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void test_elastic_executor() throws InterruptedException {
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) IoExecutors.newElasticExecutor(3);
+		assertEquals(3, executor.getMaximumPoolSize());
+		assertTrue(executor.allowsCoreThreadTimeOut());
+
+		CountDownLatch done = new CountDownLatch(10);
+		AtomicInteger daemonThreadTasks = new AtomicInteger();
+		for (int task = 0; task < 10; task++) {
+			executor.execute(() -> {
+				if (Thread.currentThread().isDaemon())
+					daemonThreadTasks.incrementAndGet();
+				done.countDown();
+			});
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(10, daemonThreadTasks.get());
+		assertTrue(executor.getLargestPoolSize() <= 3);
+		executor.shutdown();
+	}
+}
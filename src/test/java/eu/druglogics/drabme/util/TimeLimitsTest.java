@@ -0,0 +1,117 @@
+package eu.druglogics.drabme.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TimeLimitsTest {
+
+	@Test
+	void test_call_in_time() throws Exception {
+		assertEquals("done", TimeLimits.call(() -> "done", 10000));
+
+		// no time limit: runs in the calling thread
+		Thread caller = Thread.currentThread();
+		assertEquals(caller, TimeLimits.call(Thread::currentThread, 0));
+		assertNotEquals(caller, TimeLimits.call(Thread::currentThread, 10000));
+	}
+
+	@Test
+	void test_timeout_interrupts_the_computation() throws Exception {
+		CountDownLatch interrupted = new CountDownLatch(1);
+
+		assertThrows(TimeoutException.class, () -> TimeLimits.call(() -> {
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return null;
+		}, 50));
+
+		assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void test_exception_of_the_computation() {
+		IOException exception = assertThrows(IOException.class, () -> TimeLimits.call(() -> {
+			throw new IOException("failed");
+		}, 10000));
+		assertEquals("failed", exception.getMessage());
+	}
+
+	@Test
+	void test_timeout_destroys_the_marked_processes() throws Exception {
+		// the processes are found with the process handles of Java 9+
+		assumeTrue(!System.getProperty("java.specification.version").startsWith("1."));
+
+		AtomicReference<Process> process = new AtomicReference<>();
+		assertThrows(TimeoutException.class, () -> TimeLimits.call(() -> {
+			process.set(new ProcessBuilder("sh", "-c", "sleep 60; true", "drabme_test_marker").start());
+			return process.get().waitFor();
+		}, 500, "drabme_test_marker"));
+
+		assertTrue(process.get().waitFor(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void test_process_marker_is_a_token() {
+		assertTrue(TimeLimits.containsToken("python3 tool.py /tmp/model_2_timed_1.bnet", "model_2_timed_1"));
+		assertTrue(TimeLimits.containsToken("tool model_2_timed_1", "model_2_timed_1"));
+		assertFalse(TimeLimits.containsToken("tool /tmp/model_2_timed_12.bnet", "model_2_timed_1"));
+		assertFalse(TimeLimits.containsToken("tool /tmp/model_12_timed_1.bnet", "2_timed_1"));
+		assertTrue(TimeLimits.containsToken("tool /tmp/model_2_timed_12 /tmp/model_2_timed_1", "model_2_timed_1"));
+	}
+
+	@Test
+	void test_computation_abandoned_before_it_started_does_not_run() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<Boolean> ran = new AtomicReference<>(false);
+
+		Thread caller = new Thread(() -> {
+			try {
+				TimeLimits.call(() -> ran.getAndSet(true), 10000);
+			} catch (Exception e) {
+				// interrupted while waiting for a thread
+			}
+		});
+
+		// keep every thread of the pool busy, so that the computation of the caller waits
+		Thread[] blockers = new Thread[TimeLimits.MAX_THREADS];
+		CountDownLatch busy = new CountDownLatch(blockers.length);
+		for (int i = 0; i < blockers.length; i++) {
+			blockers[i] = new Thread(() -> {
+				try {
+					TimeLimits.call(() -> {
+						busy.countDown();
+						release.await();
+						return null;
+					}, 60000);
+				} catch (Exception e) {
+					// released
+				}
+			});
+			blockers[i].start();
+		}
+		assertTrue(busy.await(10, TimeUnit.SECONDS));
+
+		caller.start();
+		Thread.sleep(100);
+		caller.interrupt();
+		caller.join(10000);
+
+		release.countDown();
+		for (Thread blocker : blockers) {
+			blocker.join(10000);
+		}
+		Thread.sleep(100);
+		assertFalse(ran.get());
+	}
+}